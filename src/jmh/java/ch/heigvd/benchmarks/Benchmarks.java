@@ -0,0 +1,22 @@
+package ch.heigvd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of benchmarks.jar. Runs JMH with the given arguments, writing the results as JSON to
+ * {@value #RESULT_FILE} unless another result format or file is given.
+ */
+public class Benchmarks {
+  /** File receiving the results, in the working directory. */
+  public static final String RESULT_FILE = "jmh-result.json";
+
+  public static void main(String[] args) throws Exception {
+    List<String> options = new ArrayList<>(List.of(args));
+    if (!options.contains("-rf") && !options.contains("-rff")) {
+      options.addAll(0, List.of("-rf", "json", "-rff", RESULT_FILE));
+    }
+    Main.main(options.toArray(String[]::new));
+  }
+}
@@ -0,0 +1,146 @@
+package ch.heigvd.benchmarks;
+
+import ch.heigvd.client.Client;
+import ch.heigvd.common.Frames;
+import ch.heigvd.server.ChannelReader;
+import ch.heigvd.server.Command;
+import ch.heigvd.server.CommandReader;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of the commands received by the server: {@code readLine()}, {@code split}, {@code
+ * valueOf} and {@code parseInt} against {@link CommandReader}, reading characters or, as in NIO
+ * mode, the lines or the frames decoded by a {@link ChannelReader}.
+ *
+ * <p>Run with {@code -prof gc} to compare the bytes allocated per command ({@code
+ * gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandParsingBenchmark {
+  /** Commands of a busy client, mostly moves. */
+  private static final String COMMANDS =
+      "PLAY 3 4\n"
+          + "PLAY 10 12\n"
+          + "CHALLENGE alice 7 7 4\n"
+          + "PLAY 0 0\n"
+          + "PLAYERS sort=wins limit=20\n"
+          + "PLAY 5 6\n"
+          + "ACCEPT bob\n"
+          + "PLAY 2 1\n";
+
+  private BufferedReader lines;
+  private CommandReader commands;
+
+  /** Bytes of the commands, as a selector thread reads them into its direct buffer. */
+  private ByteBuffer received;
+
+  private ChannelReader channel;
+  private CommandReader channelCommands;
+
+  /** Frames of the commands, received once the binary protocol is negotiated. */
+  private ByteBuffer receivedFrames;
+
+  private ChannelReader frames;
+  private CommandReader frameCommands;
+
+  @Setup
+  public void setUp() throws IOException {
+    lines = new BufferedReader(new RepeatingReader(COMMANDS));
+    commands = new CommandReader(new RepeatingReader(COMMANDS));
+    byte[] bytes = COMMANDS.getBytes(StandardCharsets.UTF_8);
+    received = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    channel = new ChannelReader();
+    channelCommands = new CommandReader(channel);
+
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    Frames.encodeLines(COMMANDS, encoded);
+    receivedFrames = ByteBuffer.allocateDirect(encoded.size()).put(encoded.toByteArray()).flip();
+    frames = new ChannelReader();
+    frames.receive(StandardCharsets.UTF_8.encode(Frames.NEGOTIATION + "\n"));
+    frameCommands = new CommandReader(frames);
+  }
+
+  @Benchmark
+  public int split() throws IOException {
+    String[] parts = lines.readLine().split(" ", 3);
+    Client.Message message = Client.Message.valueOf(parts[0]);
+    if (message == Client.Message.PLAY) {
+      return Integer.parseInt(parts[1]) + Integer.parseInt(parts[2]);
+    }
+    return message.ordinal() + parts[1].length();
+  }
+
+  @Benchmark
+  public int commandReader() throws IOException {
+    return run(commands.next());
+  }
+
+  @Benchmark
+  public int channelReader() throws IOException {
+    if (!channel.ready()) {
+      // one read of the selector thread brings all the commands
+      received.rewind();
+      channel.receive(received);
+    }
+    return run(channelCommands.next());
+  }
+
+  @Benchmark
+  public int channelFrames() throws IOException {
+    if (!frames.ready()) {
+      receivedFrames.rewind();
+      frames.receive(receivedFrames);
+    }
+    return run(frameCommands.next());
+  }
+
+  private static int run(Command command) {
+    Client.Message message = command.verb();
+    if (message == Client.Message.PLAY) {
+      return command.intArgument(0) + command.intArgument(1);
+    }
+    return message.ordinal() + command.rest(0).length();
+  }
+
+  /** Reader serving the same text over and over, so that the input never ends. */
+  private static class RepeatingReader extends Reader {
+    private final char[] text;
+    private int position;
+
+    RepeatingReader(String text) {
+      this.text = text.toCharArray();
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) {
+      int count = Math.min(length, text.length - position);
+      System.arraycopy(text, position, chars, offset, count);
+      position = (position + count) % text.length;
+      return count;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,80 @@
+package ch.heigvd.benchmarks;
+
+import ch.heigvd.server.CredentialStore;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Credential check done by {@code Login.login}, against a generated logins.txt of several sizes.
+ * Only known accounts are looked up: a new account waits for its fsync, which measures the disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CredentialsBenchmark {
+  @Param({"1000", "100000", "1000000"})
+  public int accounts;
+
+  private Path file;
+  private CredentialStore store;
+  private String[] usernames;
+  private String[] passwords;
+
+  @Setup
+  public void setUp() throws IOException {
+    file = Files.createTempFile("logins", ".txt");
+    usernames = new String[accounts];
+    passwords = new String[accounts];
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (int i = 0; i < accounts; i++) {
+        usernames[i] = "user" + i;
+        passwords[i] = "password" + i;
+        writer.write(usernames[i] + " " + passwords[i] + "\n");
+      }
+    }
+    store = CredentialStore.open(file);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  /** Lookups of the accounts in a scattered order, one per call. */
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+  }
+
+  @Benchmark
+  public CredentialStore.Result authenticate(Cursor cursor) throws IOException {
+    // a prime step visits every account, out of insertion order
+    cursor.next = (cursor.next + 7919) % accounts;
+    return store.authenticate(usernames[cursor.next], passwords[cursor.next]);
+  }
+
+  @Benchmark
+  public CredentialStore.Result wrongPassword(Cursor cursor) throws IOException {
+    cursor.next = (cursor.next + 7919) % accounts;
+    return store.authenticate(usernames[cursor.next], "wrong");
+  }
+}
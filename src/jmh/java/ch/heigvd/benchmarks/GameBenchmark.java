@@ -0,0 +1,98 @@
+package ch.heigvd.benchmarks;
+
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Player;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Moves and win detection of {@link Game} on boards of several sizes.
+ *
+ * <p>{@link #playGame()} plays a whole game from a fixed random order of the cells, so every call
+ * includes the {@code checkWin} run after each move; {@link #completesLine()} isolates the win
+ * detection on a half filled board.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameBenchmark {
+  /** Rows, columns and k. */
+  @Param({"3,3,3", "15,15,5", "32,32,5"})
+  public String size;
+
+  private final Player player1 = new Player("alice");
+  private final Player player2 = new Player("bob");
+
+  private int rows;
+  private int columns;
+  private int k;
+
+  /** Order in which the cells are played. */
+  private int[] moves;
+
+  /** Cells of the first player after half of the moves, and the positions it played. */
+  private long[] cells;
+
+  private int[] played;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    String[] parts = size.split(",");
+    rows = Integer.parseInt(parts[0]);
+    columns = Integer.parseInt(parts[1]);
+    k = Integer.parseInt(parts[2]);
+    moves = new int[rows * columns];
+    for (int i = 0; i < moves.length; i++) {
+      moves[i] = i;
+    }
+    Random random = new Random(42);
+    for (int i = moves.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = moves[i];
+      moves[i] = moves[j];
+      moves[j] = swap;
+    }
+    // every other cell of the first half, without caring about the turns
+    Game board = new Game(rows, columns, k);
+    played = new int[moves.length / 4];
+    for (int i = 0; i < played.length; i++) {
+      played[i] = moves[2 * i];
+      board.setCell(played[i], board.player1Symbol);
+    }
+    cells = board.getCells(board.player1Symbol);
+  }
+
+  @Benchmark
+  public Player playGame() {
+    Game game = new Game(player1, player2, rows, columns, k);
+    for (int move : moves) {
+      Player player = game.isPlayer1Turn.get() ? player1 : player2;
+      if (!game.makeMove(move, player.username)) {
+        break;
+      }
+    }
+    return game.winner;
+  }
+
+  @Benchmark
+  public boolean completesLine() {
+    int position = played[next];
+    next = next + 1 == played.length ? 0 : next + 1;
+    return Game.completesLine(cells, position, rows, columns, k);
+  }
+}
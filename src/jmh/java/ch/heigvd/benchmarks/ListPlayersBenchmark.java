@@ -0,0 +1,69 @@
+package ch.heigvd.benchmarks;
+
+import ch.heigvd.common.Player;
+import ch.heigvd.server.PlayerRegistry;
+import ch.heigvd.server.functions.Matchmaking;
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of the lobby by {@link Matchmaking#sendListPlayers}, written to a writer that
+ * discards everything so that only the listing and the formatting are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ListPlayersBenchmark {
+  @Param({"10", "1000", "100000"})
+  public int players;
+
+  private final PlayerRegistry registry = new PlayerRegistry();
+  private final BufferedWriter out = new BufferedWriter(Writer.nullWriter());
+  private final Socket socket = new Socket();
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    for (int i = 0; i < players; i++) {
+      Player player =
+          new Player(
+              "player" + i,
+              random.nextInt(1000),
+              random.nextInt(1000),
+              random.nextInt(100),
+              random.nextInt(10));
+      if (random.nextBoolean()) {
+        player.status = Player.Status.IN_GAME;
+      }
+      registry.add(player);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    socket.close();
+  }
+
+  @Benchmark
+  public void sendListPlayers() {
+    Matchmaking.sendListPlayers(socket, out, registry);
+  }
+}
@@ -0,0 +1,64 @@
+package ch.heigvd.benchmarks;
+
+import ch.heigvd.server.Pairings;
+import ch.heigvd.server.Standings;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pairing of a Swiss round by {@link Pairings#swiss}, on standings that already went through a few
+ * rounds of random results so that the players have points and opponents to avoid.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PairingBenchmark {
+  @Param({"1000", "10000"})
+  public int players;
+
+  /** Rounds played before the measured pairing. */
+  private static final int ROUNDS = 5;
+
+  private final Standings standings = new Standings();
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    for (int i = 0; i < players; i++) {
+      standings.add("player" + i, random.nextInt(3000));
+    }
+    for (int round = 0; round < ROUNDS; round++) {
+      for (Pairings.Pair pair : Pairings.swiss(standings)) {
+        if (pair.second() == null) {
+          standings.bye(pair.first());
+        } else {
+          switch (random.nextInt(3)) {
+            case 0 -> standings.win(pair.first(), pair.second());
+            case 1 -> standings.win(pair.second(), pair.first());
+            default -> standings.draw(pair.first(), pair.second());
+          }
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public List<Pairings.Pair> swiss() {
+    return Pairings.swiss(standings);
+  }
+}
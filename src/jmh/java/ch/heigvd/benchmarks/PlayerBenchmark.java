@@ -0,0 +1,40 @@
+package ch.heigvd.benchmarks;
+
+import ch.heigvd.common.Player;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Player records as sent in the lobby: {@link Player#toString()} and {@link Player#parse}. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlayerBenchmark {
+  private final Player player = new Player("alice", 1234, 567, 89, 12);
+  private final String record = player.toString();
+
+  @Benchmark
+  public String format() {
+    return player.toString();
+  }
+
+  @Benchmark
+  public Player parse() {
+    return Player.parse(record);
+  }
+
+  @Benchmark
+  public Player roundTrip() {
+    return Player.parse(player.toString());
+  }
+}
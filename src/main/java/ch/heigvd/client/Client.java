@@ -1,10 +1,19 @@
 package ch.heigvd.client;
 
 import static ch.heigvd.client.functions.GameFunctions.gameloop;
+import static ch.heigvd.client.functions.Lobby.applyPending;
+import static ch.heigvd.client.functions.Lobby.subscribe;
 import static ch.heigvd.client.functions.Login.login;
+import static ch.heigvd.client.functions.Login.resume;
 import static ch.heigvd.client.functions.Matchmaking.*;
+import static ch.heigvd.client.functions.Spectating.listGames;
+import static ch.heigvd.client.functions.Spectating.watchGame;
+import static ch.heigvd.client.functions.Tournaments.*;
 import static ch.heigvd.client.functions.UI.*;
 
+import ch.heigvd.common.FrameReader;
+import ch.heigvd.common.FrameWriter;
+import ch.heigvd.common.Frames;
 import ch.heigvd.common.Game;
 import ch.heigvd.common.Norms;
 import ch.heigvd.common.Player;
@@ -13,6 +22,8 @@ import java.io.*;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import picocli.CommandLine;
 
@@ -25,12 +36,21 @@ import picocli.CommandLine;
  */
 @CommandLine.Command(name = "client", description = "Start the client part of the network game.")
 public class Client implements Callable<Integer> {
-  /** List of players currently known in the lobby (refreshed by the server). */
-  public static ArrayList<Player> players = new ArrayList<>();
+  /** Players currently known in the lobby by username, kept up to date by the lobby feed. */
+  public static TreeMap<String, Player> players = new TreeMap<>();
 
-  /** List of challenges received by this client. */
+  /** List of challenges received by this client, kept up to date by the lobby feed. */
   public static ArrayList<Player> challenges = new ArrayList<>();
 
+  /** Board proposed by each challenger, when it is not the classic 3x3 board. */
+  public static HashMap<String, String> challengeBoards = new HashMap<>();
+
+  /** Players returned by the last SEARCH. */
+  public static ArrayList<Player> searchResults = new ArrayList<>();
+
+  /** Filters of the next page of the last SEARCH, null if it was the last page. */
+  public static String searchNext = null;
+
   /** Flag indicating whether the client is currently inside a game. */
   public static boolean inGame = false;
 
@@ -40,9 +60,36 @@ public class Client implements Callable<Integer> {
   /** Local copy of the current game state while in a match. */
   public static Game game = null;
 
+  /**
+   * Symbol of the local player in a rejoined game, as given by the server. Null in a new game,
+   * where the player who starts plays X.
+   */
+  public static String symbol = null;
+
   /** Message shown by the UI (status, errors, etc.). */
   public static String message = "";
 
+  /** Session token given by the server at login, sent with RESUME after a lost connection. */
+  public static String token = null;
+
+  /** Set when the connection to the server is found lost, the session is then resumed. */
+  public static boolean connectionLost = false;
+
+  /** Number of reconnection attempts before giving up. */
+  static final int MAX_RECONNECTS = 5;
+
+  /** Milliseconds waited before the first reconnection attempt, then twice as long each time. */
+  static final int RECONNECT_DELAY_MS = 500;
+
+  /** Milliseconds between two PINGs, which keep the connection alive while the player is idle. */
+  static final int HEARTBEAT_MS = 5000;
+
+  /**
+   * Milliseconds a read waits for the server before the connection is considered lost. The server
+   * answers every PING, and pings the client itself while a command such as CHALLENGE runs.
+   */
+  static final int READ_TIMEOUT_MS = 60_000;
+
   /**
    * Enumeration of client-side commands/messages sent to the server.
    *
@@ -58,12 +105,38 @@ public class Client implements Callable<Integer> {
     CHALLENGE,
     ACCEPT,
     REFUSE,
-    PLAY
+    PLAY,
+    SUBSCRIBE,
+    GAMES,
+    WATCH,
+    UNWATCH,
+    QUEUE,
+    REJOIN,
+    RESUME,
+    PING,
+    PONG,
+    TOURNAMENTS,
+    REGISTER,
+    ROUND,
+    STANDINGS
   }
 
   /** Valid options shown in the lobby UI. */
   public static final String[] lobbyOptions = {
-    "CHALLENGE", "ACCEPT", "REFUSE", "REFRESH", "HELP", "QUIT"
+    "CHALLENGE",
+    "QUEUE",
+    "ACCEPT",
+    "REFUSE",
+    "SEARCH",
+    "GAMES",
+    "WATCH",
+    "TOURNAMENTS",
+    "REGISTER",
+    "ROUND",
+    "STANDINGS",
+    "REFRESH",
+    "HELP",
+    "QUIT"
   };
 
   @CommandLine.Option(
@@ -78,94 +151,193 @@ public class Client implements Callable<Integer> {
       defaultValue = "42069")
   protected int port;
 
+  /** Uses the binary protocol instead of text lines. */
+  @CommandLine.Option(
+      names = {"--binary"},
+      description = "Use the compact binary protocol.")
+  private boolean binary;
+
   /**
    * Main client execution method invoked by Picocli. Connects to the server, performs login and
    * drives the lobby / game loops until the application exits.
    *
+   * <p>When the connection is lost, the client connects again and resumes its session with the
+   * token of its login, back in the lobby or in the game it was playing. It only asks for the
+   * credentials again if the server no longer knows the session.
+   *
    * @return exit code for the process (0 on success)
    */
   @Override
   public Integer call() {
-    try (Socket socket = new Socket(host, port);
-        Reader reader = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
-        BufferedReader in = new BufferedReader(reader);
-        Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
-        BufferedWriter out = new BufferedWriter(writer);
-        BufferedReader consoleReader = new BufferedReader(new InputStreamReader(System.in))) {
-      System.out.println("[Client] Connected to " + host + ":" + port);
-      // checking connection
-      String serverResponse = in.readLine();
-      Server.Message message = Server.Message.valueOf(serverResponse.split(" ")[0]);
-      if (message != Server.Message.OK) {
-        System.out.println("[Client] Server is full");
-        socket.close();
-        return 1;
-      }
-      // login
-      final String username = login(socket, in, out);
-      if (username == null) {
-        return 1;
-      }
+    BufferedReader consoleReader = new BufferedReader(new InputStreamReader(System.in));
+    String username = null;
+    int attempts = 0;
+    while (true) {
+      connectionLost = false;
+      try (Socket socket = new Socket(host, port);
+          Reader reader = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+          BufferedReader textIn = new BufferedReader(reader);
+          Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+          BufferedWriter textOut = new BufferedWriter(writer)) {
+        System.out.println("[Client] Connected to " + host + ":" + port);
+        // checking connection
+        String serverResponse = textIn.readLine();
+        Server.Message message = Server.Message.valueOf(serverResponse.split(" ")[0]);
+        if (message != Server.Message.OK) {
+          System.out.println("[Client] Server is full");
+          socket.close();
+          return 1;
+        }
+        BufferedReader in = textIn;
+        BufferedWriter out = textOut;
+        if (binary) {
+          // the frames may only be sent once the server has answered
+          out.write(Frames.NEGOTIATION + Norms.END_OF_LINE);
+          out.flush();
+          if (!Server.Message.OK.name().equals(in.readLine())) {
+            System.out.println("[Client] The server does not support the binary protocol");
+            return 1;
+          }
+          in = new FrameReader(socket.getInputStream(), Frames.MAX_SERVER_PAYLOAD);
+          out = new BufferedWriter(new FrameWriter(socket.getOutputStream()));
+        }
+        // a server that vanished is noticed instead of being waited for forever
+        socket.setSoTimeout(READ_TIMEOUT_MS);
+        startHeartbeat(socket, out);
+        // the lobby feed is subscribed to once the player is in the lobby
+        boolean subscribed = false;
+        if (token == null || !resume(in, out, username)) {
+          // login
+          username = login(socket, in, out);
+          if (username == null) {
+            return 1;
+          }
+          subscribe(in, out);
+          subscribed = true;
+          // a game interrupted by a restart of the server goes on where it stopped
+          inGame = rejoinGame(socket, in, out, username);
+        }
+        attempts = 0;
 
-      while (!socket.isClosed()) {
-        while (!inGame) {
-          fetchData(socket, in, out);
-          drawLobby(username);
-          String input = consoleReader.readLine();
-          if (input == null) {
-            break;
+        while (!socket.isClosed() && !connectionLost) {
+          if (!inGame && !subscribed) {
+            subscribe(in, out);
+            subscribed = true;
           }
-          switch (input.split(" ")[0].toUpperCase()) {
-            case "CHALLENGE":
-              inGame = challengePlayer(socket, in, out, consoleReader, username);
-              break;
-            case "ACCEPT":
-              inGame = acceptChallenge(socket, in, out, consoleReader, challenges);
-              break;
-            case "REFUSE":
-              refuseChallenge(socket, in, out, consoleReader, challenges);
-              break;
-            case "":
-            case "REFRESH":
-              break;
-            case "QUIT":
-              out.write(Client.Message.QUIT + " " + Norms.END_OF_LINE);
-              out.flush();
-              System.out.println("Quitting...");
-              socket.close();
-              in.close();
-              out.close();
-              consoleReader.close();
-              return 0;
-            default:
-              help();
+          while (!inGame && !connectionLost) {
+            applyPending(in);
+            drawLobby(username);
+            String input = consoleReader.readLine();
+            if (input == null) {
               break;
+            }
+            switch (input.split(" ")[0].toUpperCase()) {
+              case "CHALLENGE":
+                inGame = challengePlayer(socket, in, out, consoleReader, username);
+                break;
+              case "QUEUE":
+                inGame = joinQueue(socket, in, out, input.substring("QUEUE".length()).trim());
+                break;
+              case "ACCEPT":
+                inGame = acceptChallenge(socket, in, out, consoleReader, challenges);
+                break;
+              case "REFUSE":
+                refuseChallenge(socket, in, out, consoleReader, challenges);
+                break;
+              case "SEARCH":
+                searchPlayers(socket, in, out, input.substring("SEARCH".length()).trim());
+                break;
+              case "GAMES":
+                listGames(socket, in, out);
+                break;
+              case "WATCH":
+                watchGame(socket, in, out, consoleReader, input.substring("WATCH".length()).trim());
+                break;
+              case "TOURNAMENTS":
+                listTournaments(socket, in, out);
+                break;
+              case "REGISTER":
+                register(socket, in, out, input.substring("REGISTER".length()).trim());
+                break;
+              case "ROUND":
+                inGame =
+                    playRound(socket, in, out, input.substring("ROUND".length()).trim(), username);
+                break;
+              case "STANDINGS":
+                showStandings(socket, in, out, input.substring("STANDINGS".length()).trim());
+                break;
+              case "":
+              case "REFRESH":
+                break;
+              case "QUIT":
+                out.write(Client.Message.QUIT + " " + Norms.END_OF_LINE);
+                out.flush();
+                System.out.println("Quitting...");
+                socket.close();
+                in.close();
+                out.close();
+                consoleReader.close();
+                return 0;
+              default:
+                help();
+                break;
+            }
+          }
+          // Game loop
+          if (inGame && !connectionLost) {
+            gameloop(socket, in, out, consoleReader, username);
+            inGame = false;
           }
         }
-        // Game loop
-        if (inGame) {
-          gameloop(socket, in, out, consoleReader, username);
-          inGame = false;
+        if (!connectionLost) {
+          return 0;
+        }
+      } catch (Exception e) {
+        if (token == null) {
+          System.out.println("[Client] Exception: " + e);
+          return 1;
         }
       }
-
-    } catch (Exception e) {
-      System.out.println("[Client] Exception: " + e);
-      return 1;
+      if (token == null || ++attempts > MAX_RECONNECTS) {
+        System.out.println("[Client] Connection to the server lost");
+        return 1;
+      }
+      System.out.println("[Client] Connection lost, reconnecting...");
+      try {
+        Thread.sleep((long) RECONNECT_DELAY_MS << (attempts - 1));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return 1;
+      }
     }
-    return 0;
   }
 
   /**
-   * Refreshes lobby data by requesting challenges and the current player list from the server.
+   * Sends PING every {@link #HEARTBEAT_MS} milliseconds until the connection is closed, so that the
+   * server does not take a player idle at the prompt for a vanished client. The answers are skipped
+   * by {@link ch.heigvd.client.functions.Lobby#readResponse}.
    *
-   * @param socket server socket
-   * @param in server input stream
-   * @param out server output stream
+   * @param socket connection to the server
+   * @param out server output stream, whose writes are whole lines
    */
-  public static void fetchData(Socket socket, BufferedReader in, BufferedWriter out) {
-    Client.challenges.clear();
-    Client.challenges.addAll(getChallenges(socket, in, out));
-    getAllPlayers(socket, in, out);
+  private static void startHeartbeat(Socket socket, BufferedWriter out) {
+    Thread.ofPlatform()
+        .name("heartbeat")
+        .daemon()
+        .start(
+            () -> {
+              try {
+                while (!socket.isClosed()) {
+                  Thread.sleep(HEARTBEAT_MS);
+                  // a single write, so the line never lands inside another one
+                  out.write(Client.Message.PING + Norms.END_OF_LINE);
+                  out.flush();
+                }
+              } catch (IOException e) {
+                // the lost connection is noticed by the next read
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
   }
 }
@@ -36,12 +36,14 @@ public class GameFunctions {
       BufferedWriter out,
       BufferedReader consoleReader,
       String username) {
-    Game game = new Game();
+    Game game = Client.game != null ? Client.game : new Game();
     // instantiate player symbols
-    String playerSymbol = Client.myTurn ? "X" : "O";
-    String opponentSymbol = Client.myTurn ? "O" : "X";
+    String playerSymbol = Client.symbol != null ? Client.symbol : Client.myTurn ? "X" : "O";
+    String opponentSymbol = playerSymbol.equals("X") ? "O" : "X";
+    Client.symbol = null;
 
-    while (!socket.isClosed())
+    // a lost connection is resumed by the caller, with the game if it is still going on
+    while (!socket.isClosed() && !Client.connectionLost)
       try {
         // Draw the game state
         drawGame(username, game, Client.myTurn);
@@ -68,7 +70,7 @@ public class GameFunctions {
           out.write(Client.Message.PLAY + " " + row + " " + column + Norms.END_OF_LINE);
           out.flush();
 
-          String serverResponse = in.readLine();
+          String serverResponse = Lobby.readResponse(in);
           String[] serverResponseParts = serverResponse.split(" ", 3);
           Server.Message message = Server.Message.valueOf(serverResponseParts[0]);
 
@@ -76,12 +78,12 @@ public class GameFunctions {
             Client.message = "Invalid move! That cell is occupied or out of bounds. Try again.";
             continue;
           } else if (message == Server.Message.OK) {
-            game.board[row * 3 + column] = playerSymbol;
+            game.setCell(game.position(row, column), playerSymbol);
             Client.myTurn = false;
           }
 
         } else {
-          String serverResponse = in.readLine();
+          String serverResponse = Lobby.readResponse(in);
           String[] serverResponseParts = serverResponse.split(" ", 3);
           Server.Message message = Server.Message.valueOf(serverResponseParts[0]);
           switch (message) {
@@ -89,7 +91,7 @@ public class GameFunctions {
               int row = Integer.parseInt(serverResponseParts[1]);
               int column = Integer.parseInt(serverResponseParts[2]);
 
-              game.board[row * 3 + column] = opponentSymbol;
+              game.setCell(game.position(row, column), opponentSymbol);
 
               Client.message = "Opponent played at (" + row + ", " + column + ")";
               Client.myTurn = true;
@@ -109,6 +111,7 @@ public class GameFunctions {
               System.out.println("\nPress Enter to return to lobby...");
               consoleReader.readLine();
               Client.inGame = false;
+              Client.game = null;
               return;
             default:
               Client.message = "An error occurred try again";
@@ -0,0 +1,153 @@
+package ch.heigvd.client.functions;
+
+import ch.heigvd.client.Client;
+import ch.heigvd.common.Norms;
+import ch.heigvd.common.Player;
+import ch.heigvd.server.Server;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+/**
+ * Client-side lobby feed: subscribes to the server's lobby changes and applies the pushed LOBBY and
+ * CHALLENGES lines to {@link Client#players} and {@link Client#challenges}.
+ *
+ * <p>Pushed lines may arrive at any time, also before the response to a command or during a game,
+ * so every response must be read through {@link #readResponse(BufferedReader)}. The heartbeats,
+ * PING and PONG, are skipped the same way.
+ */
+public class Lobby {
+  /** Version of the last lobby line applied. */
+  public static long version = -1;
+
+  /**
+   * Subscribes to the lobby feed and waits for the initial snapshot and challenges.
+   *
+   * @param in server input stream
+   * @param out server output stream
+   * @throws IOException if the server cannot be reached
+   */
+  public static void subscribe(BufferedReader in, BufferedWriter out) throws IOException {
+    out.write(Client.Message.SUBSCRIBE + Norms.END_OF_LINE);
+    out.flush();
+    String line;
+    do {
+      line = readLine(in);
+    } while (line != null && apply(line) != Server.Message.CHALLENGES);
+  }
+
+  /**
+   * Applies the lines pushed since the last call without waiting for new ones.
+   *
+   * @param in server input stream
+   * @throws IOException if the server cannot be reached
+   */
+  public static void applyPending(BufferedReader in) throws IOException {
+    while (in.ready()) {
+      String line = readLine(in);
+      if (line == null) {
+        return;
+      }
+      // a line that is not a push answers a command that did not wait for it, e.g. REFUSE
+      apply(line);
+    }
+  }
+
+  /**
+   * Reads the next line that is not a push, applying the pushed lines met on the way.
+   *
+   * @param in server input stream
+   * @return the response, or null when the connection is closed
+   * @throws IOException if the server cannot be reached
+   */
+  public static String readResponse(BufferedReader in) throws IOException {
+    String line;
+    do {
+      line = readLine(in);
+    } while (line != null && apply(line) != null);
+    return line;
+  }
+
+  /** Reads a line, noting in {@link Client#connectionLost} that the connection is gone. */
+  private static String readLine(BufferedReader in) throws IOException {
+    try {
+      String line = in.readLine();
+      if (line == null) {
+        Client.connectionLost = true;
+      }
+      return line;
+    } catch (IOException e) {
+      Client.connectionLost = true;
+      throw e;
+    }
+  }
+
+  /**
+   * Applies a pushed line.
+   *
+   * @param line line received from the server
+   * @return the type of the pushed line, or null if the line is not a push
+   */
+  private static Server.Message apply(String line) {
+    if (line.equals(Server.Message.PING.name()) || line.equals(Server.Message.PONG.name())) {
+      // heartbeats, the PINGs sent by the client keep it alive without answering the server's
+      return Server.Message.valueOf(line);
+    }
+    if (line.startsWith(Server.Message.LOBBY + " ")) {
+      applyLobby(line);
+      return Server.Message.LOBBY;
+    }
+    if (line.startsWith(Server.Message.CHALLENGES + " ")) {
+      applyChallenges(line);
+      return Server.Message.CHALLENGES;
+    }
+    return null;
+  }
+
+  /**
+   * Applies LOBBY version SNAPSHOT|DELTA entries, where each entry is either
+   * +username,wins,losses,draws,winStreak,rating,status or -username.
+   */
+  private static void applyLobby(String line) {
+    String[] parts = line.split(" ", 4);
+    version = Long.parseLong(parts[1]);
+    if (parts[2].equals("SNAPSHOT")) {
+      Client.players.clear();
+    }
+    if (parts.length < 4) {
+      return;
+    }
+    for (String entry : parts[3].split(Norms.OBJECT_SEPARATOR)) {
+      if (entry.isEmpty()) {
+        continue;
+      }
+      if (entry.charAt(0) == '-') {
+        Client.players.remove(entry.substring(1));
+        continue;
+      }
+      Player player = Player.parse(entry.substring(1));
+      Client.players.put(player.username, player);
+    }
+  }
+
+  /**
+   * Applies CHALLENGES challenger1;challenger2; where a challenge on a board other than the classic
+   * one is sent as challenger,rows,columns,k; The boards are stored in {@link
+   * Client#challengeBoards}.
+   */
+  private static void applyChallenges(String line) {
+    Client.challenges.clear();
+    Client.challengeBoards.clear();
+    for (String entry : line.split(" ", 2)[1].split(Norms.OBJECT_SEPARATOR)) {
+      String[] entryParts = entry.split(Norms.ELEMENT_SEPARATOR);
+      if (!entryParts[0].isEmpty()) {
+        Client.challenges.add(new Player(entryParts[0]));
+      }
+      if (entryParts.length == 4) {
+        Client.challengeBoards.put(
+            entryParts[0],
+            entryParts[1] + "x" + entryParts[2] + ", " + entryParts[3] + " in a row");
+      }
+    }
+  }
+}
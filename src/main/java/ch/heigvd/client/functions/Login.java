@@ -14,7 +14,8 @@ import java.nio.charset.StandardCharsets;
  * Client-side login helper.
  *
  * <p>Prompts the user for username and password and forwards credentials to the server using the
- * LOGIN protocol message.
+ * LOGIN protocol message. After a lost connection, the session is resumed with the token of the
+ * login instead.
  */
 public class Login {
   /**
@@ -43,7 +44,7 @@ public class Login {
         out.write(request);
         out.flush();
         // read server response
-        String serverResponse = in.readLine();
+        String serverResponse = Lobby.readResponse(in);
         if (serverResponse == null) {
           System.out.println(ERROR_MESSAGE);
           socket.close();
@@ -61,6 +62,8 @@ public class Login {
 
         switch (message) {
           case OK:
+            // OK token, the token resumes the session if the connection is lost
+            Client.token = serverResponseParts.length > 1 ? serverResponseParts[1] : null;
             return username;
           case ERROR:
             int errorCode = Integer.parseInt(serverResponseParts[1]);
@@ -87,4 +90,39 @@ public class Login {
     }
     return null;
   }
+
+  /**
+   * Takes the place of the player back after a lost connection, with the token of its login. The
+   * server answers with OK in the lobby, or with the BOARD line of the game still being played.
+   *
+   * @param in server input stream
+   * @param out server output stream
+   * @param username username of the local player
+   * @return true if the session has been resumed, false if the player must log in again
+   * @throws IOException if the server cannot be reached
+   */
+  public static boolean resume(BufferedReader in, BufferedWriter out, String username)
+      throws IOException {
+    out.write(Client.Message.RESUME + " " + Client.token + Norms.END_OF_LINE);
+    out.flush();
+    String serverResponse = Lobby.readResponse(in);
+    if (serverResponse == null) {
+      throw new IOException("Connection closed by the server");
+    }
+    if (serverResponse.startsWith(Server.Message.BOARD.name())) {
+      Matchmaking.loadBoard(serverResponse, username);
+      Client.inGame = true;
+      Client.message = "Connection restored, your game goes on.";
+      return true;
+    }
+    if (serverResponse.equals(Server.Message.OK.name())) {
+      Client.inGame = false;
+      Client.message = "Connection restored.";
+      return true;
+    }
+    // the grace period is over, the player has been logged out
+    Client.token = null;
+    System.out.println("Your session has expired, please log in again.");
+    return false;
+  }
 }
@@ -1,6 +1,7 @@
 package ch.heigvd.client.functions;
 
 import ch.heigvd.client.Client;
+import ch.heigvd.common.Game;
 import ch.heigvd.common.Norms;
 import ch.heigvd.common.Player;
 import ch.heigvd.server.Server;
@@ -10,48 +11,14 @@ import java.net.Socket;
 import java.util.ArrayList;
 
 /**
- * Client-side matchmaking helpers: request challenges, send/accept/refuse challenges and fetch the
- * list of players.
+ * Client-side matchmaking helpers: send/accept/refuse challenges and join the queue. The challenges
+ * and the list of players are pushed by the server, see {@link Lobby}.
  */
 public class Matchmaking {
 
   /**
-   * Request the list of pending challenges from the server and parse them into Player objects.
-   *
-   * @param socket server socket
-   * @param in server input stream
-   * @param out server output stream
-   * @return list of challengers (may be empty)
-   */
-  public static ArrayList<Player> getChallenges(
-      Socket socket, BufferedReader in, BufferedWriter out) {
-    if (!socket.isClosed()) {
-      try {
-        out.write(Client.Message.CHALLENGES + Norms.END_OF_LINE);
-        out.flush();
-        String serverResponse = in.readLine();
-        String[] serverResponseParts = serverResponse.split(" ", 2);
-        Server.Message message = Server.Message.valueOf(serverResponseParts[0]);
-        if (message != Server.Message.CHALLENGES) {
-          return new ArrayList<>();
-        }
-        String[] challengersUsernames = serverResponseParts[1].split(Norms.OBJECT_SEPARATOR);
-        ArrayList<Player> challengers = new ArrayList<>();
-        for (String username : challengersUsernames) {
-          if (!username.isEmpty()) {
-            challengers.add(new Player(username));
-          }
-        }
-        return challengers;
-      } catch (Exception e) {
-        return new ArrayList<>();
-      }
-    }
-    return new ArrayList<>();
-  }
-
-  /**
-   * Send a challenge to another player by username using interactive console input.
+   * Send a challenge to another player by username using interactive console input. The username
+   * may be followed by the board size as rows, columns and number of aligned symbols to win.
    *
    * @return true if the client should enter the game loop (challenge accepted)
    */
@@ -64,8 +31,15 @@ public class Matchmaking {
     if (!socket.isClosed()) {
       try {
         // sending challenge request to server
-        System.out.print("Enter the username of the player you want to challenge: ");
-        String challengedUsername = consoleReader.readLine().split(" ")[0];
+        System.out.print(
+            "Enter the username of the player you want to challenge"
+                + " (optionally followed by <rows> <columns> <k>): ");
+        String[] inputParts = consoleReader.readLine().trim().split(" +");
+        String challengedUsername = inputParts[0];
+        String size = "";
+        if (inputParts.length == 4) {
+          size = " " + inputParts[1] + " " + inputParts[2] + " " + inputParts[3];
+        }
 
         if (challengedUsername.equals(username)) {
           Client.message +=
@@ -73,22 +47,23 @@ public class Matchmaking {
           return false;
         }
 
-        out.write(Client.Message.CHALLENGE + " " + challengedUsername + Norms.END_OF_LINE);
+        out.write(Client.Message.CHALLENGE + " " + challengedUsername + size + Norms.END_OF_LINE);
         out.flush();
 
         // wait for server response
         System.out.println("Challenge sent to " + challengedUsername + ", waiting for response...");
 
         // read server response
-        String serverResponse = in.readLine();
+        String serverResponse = Lobby.readResponse(in);
         Server.Message message = Server.Message.valueOf(serverResponse.split(" ")[0]);
         if (message == Server.Message.GAMESTART) {
-          Client.myTurn = Integer.parseInt(serverResponse.split(" ")[1]) == 1;
+          startGame(serverResponse);
           return true;
         } else if (message == Server.Message.ERROR) {
           switch (Integer.parseInt(serverResponse.split(" ")[1])) {
             case 1 -> Client.message += "Player " + challengedUsername + " does not exist.";
             case 2 -> Client.message += "Player " + challengedUsername + " is not available.";
+            case 3 -> Client.message += "Invalid board size.";
           }
         } else if (message == Server.Message.REFUSE) {
           Client.message += challengedUsername + " refused your challenge.";
@@ -101,6 +76,104 @@ public class Matchmaking {
     return false;
   }
 
+  /**
+   * Joins the matchmaking queue and waits for the server to find an opponent of a similar rating.
+   *
+   * @param size empty for the classic board, or rows, columns and number of aligned symbols to win
+   * @return true if the client should enter the game loop (opponent found)
+   */
+  public static boolean joinQueue(
+      Socket socket, BufferedReader in, BufferedWriter out, String size) {
+    if (!socket.isClosed()) {
+      try {
+        out.write(Client.Message.QUEUE + (size.isEmpty() ? "" : " " + size) + Norms.END_OF_LINE);
+        out.flush();
+        System.out.println("Looking for an opponent...");
+        String serverResponse = Lobby.readResponse(in);
+        Server.Message message = Server.Message.valueOf(serverResponse.split(" ")[0]);
+        if (message == Server.Message.GAMESTART) {
+          startGame(serverResponse);
+          return true;
+        } else if (message == Server.Message.ERROR) {
+          Client.message += "Invalid board size.";
+        } else if (message == Server.Message.REFUSE) {
+          Client.message += "No opponent found, try again later.";
+        }
+      } catch (Exception e) {
+        System.out.println("Something went wrong while joining the queue.");
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Asks the server for the game the player was playing when the server restarted, if any, and
+   * prepares the local game from its BOARD line.
+   *
+   * @param username username of the local player
+   * @return true if the client should enter the game loop (game rejoined)
+   */
+  public static boolean rejoinGame(
+      Socket socket, BufferedReader in, BufferedWriter out, String username) {
+    if (!socket.isClosed()) {
+      try {
+        out.write(Client.Message.REJOIN + Norms.END_OF_LINE);
+        out.flush();
+        String response = Lobby.readResponse(in);
+        if (!response.startsWith(Server.Message.BOARD.name())) {
+          // no interrupted game
+          return false;
+        }
+        loadBoard(response, username);
+        Client.message = "Your game was interrupted by a restart of the server, it goes on.";
+        return true;
+      } catch (Exception e) {
+        Client.message = "Something went wrong while rejoining your game.";
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Prepares the local game from the BOARD line of a game the player comes back to: {@code BOARD id
+   * player1 player2 rows columns k next cells}, player1 playing X.
+   *
+   * @param board BOARD line received from the server
+   * @param username username of the local player
+   */
+  public static void loadBoard(String board, String username) {
+    String[] parts = board.split(" ");
+    Game game =
+        new Game(
+            Integer.parseInt(parts[4]), Integer.parseInt(parts[5]), Integer.parseInt(parts[6]));
+    for (int position = 0; position < game.cells(); position++) {
+      char cell = parts[8].charAt(position);
+      if (cell != '.') {
+        game.setCell(position, String.valueOf(cell));
+      }
+    }
+    Client.game = game;
+    Client.symbol = parts[2].equals(username) ? game.player1Symbol : game.player2Symbol;
+    Client.myTurn = parts[7].equals(username);
+  }
+
+  /**
+   * Prepares the local game from a GAMESTART message: GAMESTART firstPlayer [rows columns k]
+   *
+   * @param serverResponse GAMESTART message received from the server
+   */
+  private static void startGame(String serverResponse) {
+    String[] parts = serverResponse.split(" ");
+    Client.myTurn = Integer.parseInt(parts[1]) == 1;
+    if (parts.length >= 5) {
+      Client.game =
+          new Game(
+              Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+    } else {
+      Client.game = new Game();
+    }
+  }
+
   /**
    * Accept an incoming challenge using interactive console input and notify the server.
    *
@@ -124,17 +197,12 @@ public class Matchmaking {
           Client.message = "No challenge from " + challengerUsername + " found.";
           return false;
         }
-        for (Player challenger : challengers) {
-          if (!challenger.username.equals(challengerUsername)) {
-            refuseChallenge(socket, in, out, challenger.username, challengers);
-          }
-        }
         out.write(Client.Message.ACCEPT + " " + challengerUsername + Norms.END_OF_LINE);
         out.flush();
-        String serverResponse = in.readLine();
+        String serverResponse = Lobby.readResponse(in);
         Server.Message message = Server.Message.valueOf(serverResponse.split(" ")[0]);
         if (message == Server.Message.GAMESTART) {
-          Client.myTurn = Integer.parseInt(serverResponse.split(" ")[1]) == 1;
+          startGame(serverResponse);
           return true;
         } else if (message == Server.Message.ERROR) {
           Client.message = "Error while accepting challenge.";
@@ -194,43 +262,40 @@ public class Matchmaking {
     }
   }
 
-  /** Request the list of all players and populate Client.players from the server response. */
-  public static void getAllPlayers(Socket socket, BufferedReader in, BufferedWriter out) {
-
+  /**
+   * Asks the server for one page of the players matching the filters and stores it in {@link
+   * Client#searchResults}. Empty filters show the next page of the previous search.
+   *
+   * @param filters space separated key=value filters typed after SEARCH
+   */
+  public static void searchPlayers(
+      Socket socket, BufferedReader in, BufferedWriter out, String filters) {
     if (!socket.isClosed()) {
       try {
-        Client.players.clear();
-
-        out.write(Client.Message.PLAYERS + " " + Norms.END_OF_LINE);
+        if (filters.isEmpty()) {
+          filters = Client.searchNext != null ? Client.searchNext : "offset=0";
+        }
+        out.write(Client.Message.PLAYERS + " " + filters + Norms.END_OF_LINE);
         out.flush();
-
-        String serverResponse = in.readLine();
-        if (serverResponse == null) {
+        String serverResponse = Lobby.readResponse(in);
+        String[] serverResponseParts = serverResponse.split(" ", 3);
+        if (Server.Message.valueOf(serverResponseParts[0]) != Server.Message.PLAYERS) {
+          Client.message = "Invalid filters.";
           return;
         }
-
-        String[] raw = serverResponse.split(Norms.ELEMENT_SEPARATOR);
-
-        int fieldsPerPlayer = 5;
-        for (int i = 0; i + fieldsPerPlayer - 1 < raw.length; i += fieldsPerPlayer) {
-
-          String username = raw[i];
-          String wins = raw[i + 1];
-          String losses = raw[i + 2];
-          String draws = raw[i + 3];
-          String winStreak = raw[i + 4];
-
-          Client.players.add(
-              new Player(
-                  username,
-                  Integer.parseInt(wins),
-                  Integer.parseInt(losses),
-                  Integer.parseInt(draws),
-                  Integer.parseInt(winStreak)));
+        Client.searchResults.clear();
+        for (String entry : serverResponseParts[2].split(Norms.OBJECT_SEPARATOR)) {
+          if (entry.isEmpty()) {
+            continue;
+          }
+          Player player = Player.parse(entry);
+          Client.searchResults.add(player);
         }
-
+        int next = Integer.parseInt(serverResponseParts[1]);
+        Client.searchNext =
+            next < 0 ? null : filters.replaceAll("(?i)offset=\\d+", "").trim() + " offset=" + next;
       } catch (Exception e) {
-        System.out.println("Error while reading players list: " + e);
+        Client.message = "Something went wrong while searching players.";
       }
     }
   }
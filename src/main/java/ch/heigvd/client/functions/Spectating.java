@@ -0,0 +1,134 @@
+package ch.heigvd.client.functions;
+
+import static ch.heigvd.client.functions.UI.drawWatchedGame;
+
+import ch.heigvd.client.Client;
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Norms;
+import ch.heigvd.server.Server;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.net.Socket;
+
+/**
+ * Client-side spectator mode: lists the games being played and shows one of them move by move.
+ *
+ * <p>The server answers WATCH with a BOARD snapshot, then pushes a MOVE line for every move and an
+ * END line once the game is over. A new BOARD line may arrive at any time if the client was too
+ * slow to read the moves, and replaces the whole board.
+ */
+public class Spectating {
+  /**
+   * Asks the server for the games being played and stores them in {@link Client#message}.
+   *
+   * @param socket connection to the server
+   * @param in server input stream
+   * @param out server output stream
+   */
+  public static void listGames(Socket socket, BufferedReader in, BufferedWriter out) {
+    if (socket.isClosed()) {
+      return;
+    }
+    try {
+      out.write(Client.Message.GAMES + Norms.END_OF_LINE);
+      out.flush();
+      String[] parts = Lobby.readResponse(in).split(" ", 2);
+      StringBuilder sb = new StringBuilder("== Games being played ==\n");
+      boolean empty = true;
+      for (String entry :
+          parts.length > 1 ? parts[1].split(Norms.OBJECT_SEPARATOR) : new String[0]) {
+        String[] game = entry.split(Norms.ELEMENT_SEPARATOR);
+        if (game.length < 7) {
+          continue;
+        }
+        empty = false;
+        sb.append(game[0])
+            .append(": ")
+            .append(game[1])
+            .append(" (X) vs ")
+            .append(game[2])
+            .append(" (O), ")
+            .append(game[3])
+            .append('x')
+            .append(game[4])
+            .append(", ")
+            .append(game[5])
+            .append(" in a row, ")
+            .append(game[6])
+            .append(" moves\n");
+      }
+      Client.message = empty ? "No game is being played." : sb.toString();
+    } catch (Exception e) {
+      Client.message = "Something went wrong while listing the games.";
+    }
+  }
+
+  /**
+   * Shows a game until it is over, then waits for Enter.
+   *
+   * @param socket connection to the server
+   * @param in server input stream
+   * @param out server output stream
+   * @param consoleReader reader to obtain local user input (system in)
+   * @param id id of the game, as listed by GAMES
+   */
+  public static void watchGame(
+      Socket socket,
+      BufferedReader in,
+      BufferedWriter out,
+      BufferedReader consoleReader,
+      String id) {
+    if (socket.isClosed()) {
+      return;
+    }
+    try {
+      out.write(Client.Message.WATCH + " " + id + Norms.END_OF_LINE);
+      out.flush();
+      Game game = null;
+      String title = "";
+      String line;
+      while ((line = Lobby.readResponse(in)) != null) {
+        String[] parts = line.split(" ");
+        Server.Message message = Server.Message.valueOf(parts[0]);
+        if (message == Server.Message.ERROR) {
+          Client.message = "There is no game " + id + ", list them with GAMES.";
+          return;
+        }
+        if (message == Server.Message.BOARD) {
+          // BOARD id player1 player2 rows columns k next cells
+          game =
+              new Game(
+                  Integer.parseInt(parts[4]),
+                  Integer.parseInt(parts[5]),
+                  Integer.parseInt(parts[6]));
+          for (int position = 0; position < game.cells(); position++) {
+            char cell = parts[8].charAt(position);
+            if (cell != '.') {
+              game.setCell(position, String.valueOf(cell));
+            }
+          }
+          title = parts[2] + " (X) vs " + parts[3] + " (O)";
+        } else if (message == Server.Message.MOVE && game != null) {
+          // MOVE id symbol row column
+          int row = Integer.parseInt(parts[3]);
+          int column = Integer.parseInt(parts[4]);
+          game.setCell(game.position(row, column), parts[2]);
+          Client.message = parts[2] + " played at (" + row + ", " + column + ")";
+        } else if (message == Server.Message.END) {
+          Client.message = parts[2].equals("-") ? "The game ended in a draw." : parts[2] + " won.";
+          if (game != null) {
+            drawWatchedGame(title, game);
+          }
+          System.out.println("\nPress Enter to return to lobby...");
+          consoleReader.readLine();
+          return;
+        }
+        if (game != null) {
+          drawWatchedGame(title, game);
+        }
+      }
+    } catch (Exception e) {
+      Client.message = "Something went wrong while watching the game.";
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package ch.heigvd.client.functions;
+
+import ch.heigvd.client.Client;
+import ch.heigvd.common.Norms;
+import ch.heigvd.server.Server;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.net.Socket;
+
+/**
+ * Client-side tournaments: lists them, registers the player and plays its games round after round.
+ *
+ * <p>The server answers ROUND with the BOARD line of the player's game once its round is paired, so
+ * a game of a tournament is entered like a rejoined game.
+ */
+public class Tournaments {
+  /** Number of players shown by STANDINGS. */
+  private static final int STANDINGS_SHOWN = 20;
+
+  /**
+   * Asks the server for its tournaments and stores them in {@link Client#message}.
+   *
+   * @param socket connection to the server
+   * @param in server input stream
+   * @param out server output stream
+   */
+  public static void listTournaments(Socket socket, BufferedReader in, BufferedWriter out) {
+    if (socket.isClosed()) {
+      return;
+    }
+    try {
+      out.write(Client.Message.TOURNAMENTS + Norms.END_OF_LINE);
+      out.flush();
+      String[] parts = Lobby.readResponse(in).split(" ", 2);
+      StringBuilder sb = new StringBuilder("== Tournaments ==\n");
+      boolean empty = true;
+      for (String entry :
+          parts.length > 1 ? parts[1].split(Norms.OBJECT_SEPARATOR) : new String[0]) {
+        // id,format,state,players,round,rounds
+        String[] tournament = entry.split(Norms.ELEMENT_SEPARATOR);
+        if (tournament.length < 6) {
+          continue;
+        }
+        empty = false;
+        sb.append(tournament[0])
+            .append(": ")
+            .append(tournament[1].toLowerCase())
+            .append(", ")
+            .append(tournament[3])
+            .append(" players, ");
+        switch (tournament[2]) {
+          case "REGISTERING" -> sb.append("open for registration");
+          case "RUNNING" ->
+              sb.append("round ").append(tournament[4]).append(" of ").append(tournament[5]);
+          default -> sb.append("over");
+        }
+        sb.append('\n');
+      }
+      Client.message = empty ? "No tournament is planned." : sb.toString();
+    } catch (Exception e) {
+      Client.message = "Something went wrong while listing the tournaments.";
+    }
+  }
+
+  /**
+   * Registers the player in a tournament.
+   *
+   * @param socket connection to the server
+   * @param in server input stream
+   * @param out server output stream
+   * @param id id of the tournament, as listed by TOURNAMENTS
+   */
+  public static void register(Socket socket, BufferedReader in, BufferedWriter out, String id) {
+    if (socket.isClosed()) {
+      return;
+    }
+    try {
+      out.write(Client.Message.REGISTER + " " + id + Norms.END_OF_LINE);
+      out.flush();
+      if (Lobby.readResponse(in).startsWith(Server.Message.OK.name())) {
+        Client.message =
+            "Registered in tournament " + id + ", type ROUND " + id + " once it starts.";
+      } else {
+        Client.message = "Could not register in tournament " + id + ".";
+      }
+    } catch (Exception e) {
+      Client.message = "Something went wrong while registering.";
+    }
+  }
+
+  /**
+   * Waits for the player's game of the next round of a tournament and prepares the local game from
+   * its BOARD line.
+   *
+   * @param socket connection to the server
+   * @param in server input stream
+   * @param out server output stream
+   * @param id id of the tournament
+   * @param username username of the local player
+   * @return true if the client should enter the game loop
+   */
+  public static boolean playRound(
+      Socket socket, BufferedReader in, BufferedWriter out, String id, String username) {
+    if (socket.isClosed()) {
+      return false;
+    }
+    try {
+      out.write(Client.Message.ROUND + " " + id + Norms.END_OF_LINE);
+      out.flush();
+      System.out.println("Waiting for the round to be paired...");
+      String response = Lobby.readResponse(in);
+      Server.Message message = Server.Message.valueOf(response.split(" ")[0]);
+      if (message == Server.Message.BOARD) {
+        Matchmaking.loadBoard(response, username);
+        return true;
+      } else if (message == Server.Message.REFUSE) {
+        Client.message =
+            "You have no game left in tournament " + id + ", see STANDINGS " + id + ".";
+      } else {
+        Client.message = "You are not registered in tournament " + id + ".";
+      }
+    } catch (Exception e) {
+      Client.message = "Something went wrong while waiting for the round.";
+    }
+    return false;
+  }
+
+  /**
+   * Asks the server for the standings of a tournament and stores the leading players in {@link
+   * Client#message}.
+   *
+   * @param socket connection to the server
+   * @param in server input stream
+   * @param out server output stream
+   * @param id id of the tournament
+   */
+  public static void showStandings(
+      Socket socket, BufferedReader in, BufferedWriter out, String id) {
+    if (socket.isClosed()) {
+      return;
+    }
+    try {
+      out.write(Client.Message.STANDINGS + " " + id + Norms.END_OF_LINE);
+      out.flush();
+      // STANDINGS id state round rounds entries
+      String[] parts = Lobby.readResponse(in).split(" ", 6);
+      if (parts.length < 5 || !parts[0].equals(Server.Message.STANDINGS.name())) {
+        Client.message = "There is no tournament " + id + ", list them with TOURNAMENTS.";
+        return;
+      }
+      StringBuilder sb =
+          new StringBuilder("== Tournament ")
+              .append(id)
+              .append(", round ")
+              .append(parts[3])
+              .append(" of ")
+              .append(parts[4])
+              .append(parts[2].equals("FINISHED") ? ", over" : "")
+              .append(" ==\n");
+      String[] entries = parts.length > 5 ? parts[5].split(Norms.OBJECT_SEPARATOR) : new String[0];
+      for (int rank = 1; rank <= Math.min(entries.length, STANDINGS_SHOWN); rank++) {
+        // username,points,wins,draws,losses,buchholz
+        String[] entry = entries[rank - 1].split(Norms.ELEMENT_SEPARATOR);
+        if (entry.length < 6) {
+          continue;
+        }
+        sb.append(
+            String.format(
+                "%3d. %-20s %5s pts  %s-%s-%s  (Buchholz %s)%n",
+                rank, entry[0], entry[1], entry[2], entry[3], entry[4], entry[5]));
+      }
+      Client.message = sb.toString();
+    } catch (Exception e) {
+      Client.message = "Something went wrong while fetching the standings.";
+    }
+  }
+}
@@ -11,6 +11,8 @@ import ch.heigvd.common.Player;
  * contains only minimal presentation logic for the terminal UI.
  */
 public class UI {
+  /** Number of connected players listed in the lobby, the others are reached with SEARCH. */
+  private static final int LOBBY_PAGE_SIZE = 20;
 
   /** Append a short help message to the client message buffer (displayed on next render). */
   public static void help() {
@@ -19,15 +21,36 @@ public class UI {
             + "Here are the commands you can use in the lobby:\n\n"
             + "  HELP\n"
             + "      Show this help menu.\n\n"
-            + "  CHALLENGE <username>\n"
-            + "      Send a challenge request to the specified player.\n"
-            + "      Example: CHALLENGE alice\n\n"
+            + "  CHALLENGE <username> [<rows> <columns> <k>]\n"
+            + "      Send a challenge request to the specified player, optionally on a\n"
+            + "      rows x columns board where k aligned symbols win (default 3 3 3).\n"
+            + "      Example: CHALLENGE alice 15 15 5\n\n"
+            + "  QUEUE [<rows> <columns> <k>]\n"
+            + "      Wait for an opponent of a similar rating, optionally on a larger board.\n"
+            + "      Example: QUEUE 15 15 5\n\n"
             + "  ACCEPT <username>\n"
             + "      Accept a challenge received from the given player.\n"
             + "      Example: ACCEPT bob\n\n"
             + "  REFUSE <username>\n"
             + "      Refuse a challenge from the given player.\n"
             + "      Example: REFUSE charlie\n\n"
+            + "  SEARCH [prefix=<text>] [status=ONLINE|IN_GAME] [sort=name|wins|winstreak]\n"
+            + "         [offset=<n>] [limit=<n>]\n"
+            + "      List the players matching the filters, a page at a time.\n"
+            + "      An empty search shows the next page. Example: SEARCH sort=wins\n\n"
+            + "  GAMES\n"
+            + "      List the games being played.\n\n"
+            + "  WATCH <id>\n"
+            + "      Watch a game listed by GAMES until it is over. Example: WATCH 12\n\n"
+            + "  TOURNAMENTS\n"
+            + "      List the tournaments of the server.\n\n"
+            + "  REGISTER <id>\n"
+            + "      Register in a tournament open for registration. Example: REGISTER 1\n\n"
+            + "  ROUND <id>\n"
+            + "      Wait for your game of the next round of a tournament and play it.\n"
+            + "      Send it again after each game. Example: ROUND 1\n\n"
+            + "  STANDINGS <id>\n"
+            + "      Show the leading players of a tournament. Example: STANDINGS 1\n\n"
             + "  QUIT\n"
             + "      Disconnect from the server and exit the game.\n\n"
             + "====================================\n";
@@ -52,25 +75,31 @@ public class UI {
 
     System.out.println("\n=== Connected Players ===");
 
-    for (Player p : Client.players) {
-
-      System.out.println(
-          "- "
-              + p.username
-              + " | Wins: "
-              + p.wins
-              + " | Losses: "
-              + p.losses
-              + " | Draws: "
-              + p.draws
-              + " | WinStreak: "
-              + p.winStreak);
+    int shown = 0;
+    for (Player p : Client.players.values()) {
+      if (shown++ == LOBBY_PAGE_SIZE) {
+        System.out.println(
+            "... and " + (Client.players.size() - LOBBY_PAGE_SIZE) + " more, use SEARCH");
+        break;
+      }
+      printPlayer(p);
+    }
+
+    if (!Client.searchResults.isEmpty()) {
+      System.out.println("\n== Search results ==");
+      for (Player p : Client.searchResults) {
+        printPlayer(p);
+      }
+      if (Client.searchNext != null) {
+        System.out.println("(empty SEARCH for the next page)");
+      }
     }
 
     if (!Client.challenges.isEmpty()) {
       System.out.println("\n== Challenges ==:");
       for (Player p : Client.challenges) {
-        System.out.println(p.username);
+        String board = Client.challengeBoards.get(p.username);
+        System.out.println(board == null ? p.username : p.username + " (" + board + ")");
       }
     }
     System.out.println("\n== Commands ==:");
@@ -80,6 +109,24 @@ public class UI {
     System.out.print("Please enter a command: ");
   }
 
+  /** Print one line describing a player of the lobby. */
+  private static void printPlayer(Player p) {
+    System.out.println(
+        "- "
+            + p.username
+            + " | Wins: "
+            + p.wins
+            + " | Losses: "
+            + p.losses
+            + " | Draws: "
+            + p.draws
+            + " | WinStreak: "
+            + p.winStreak
+            + " | Rating: "
+            + p.rating
+            + (p.status == Player.Status.IN_GAME ? " | In game" : ""));
+  }
+
   /**
    * Render the game view showing the current board and prompt state.
    *
@@ -94,7 +141,7 @@ public class UI {
     System.out.println("Welcome to the Game " + username + " !");
     Client.message = "";
     System.out.println("\n== Game State ==");
-    printBoard(game.board);
+    printBoard(game);
     if (yourTurn) {
       System.out.println("It's your turn to play!");
       System.out.println("\n== Commands ==");
@@ -106,18 +153,43 @@ public class UI {
     }
   }
 
-  /** Print the tic-tac-toe board to the console. */
-  private static void printBoard(String[] gameState) {
+  /**
+   * Render a game watched as a spectator.
+   *
+   * @param title the players of the game (displayed in the header)
+   * @param game the watched game model containing the board
+   */
+  public static void drawWatchedGame(String title, Game game) {
+    System.out.print("\033\143");
+    if (!Client.message.isEmpty()) System.out.print(Client.message + "\n\n");
+
+    System.out.println("Watching " + title);
+    Client.message = "";
+    System.out.println("\n== Game State ==");
+    printBoard(game);
+  }
+
+  /** Print the board to the console, row and column indices included. */
+  private static void printBoard(Game game) {
+    String[] gameState = game.getBoard();
+    int rowWidth = String.valueOf(game.rows - 1).length();
+    int cellWidth = String.valueOf(game.columns - 1).length();
     System.out.println("Current Board:");
-    System.out.println("  0 1 2");
-    for (int i = 0; i < 3; i++) {
-      System.out.print(i + " ");
-      for (int j = 0; j < 3; j++) {
-        System.out.print(gameState[i * 3 + j]);
-        if (j < 2) System.out.print("|");
+    StringBuilder header = new StringBuilder(" ".repeat(rowWidth + 1));
+    for (int j = 0; j < game.columns; j++) {
+      header.append(String.format("%-" + cellWidth + "d", j));
+      if (j < game.columns - 1) header.append(" ");
+    }
+    System.out.println(header);
+    String separator = " ".repeat(rowWidth + 1) + "-".repeat(game.columns * (cellWidth + 1) - 1);
+    for (int i = 0; i < game.rows; i++) {
+      StringBuilder row = new StringBuilder(String.format("%" + rowWidth + "d ", i));
+      for (int j = 0; j < game.columns; j++) {
+        row.append(String.format("%-" + cellWidth + "s", gameState[i * game.columns + j]));
+        if (j < game.columns - 1) row.append("|");
       }
-      System.out.println();
-      if (i < 2) System.out.println("  -----");
+      System.out.println(row);
+      if (i < game.rows - 1) System.out.println(separator);
     }
   }
 }
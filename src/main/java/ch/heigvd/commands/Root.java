@@ -1,6 +1,8 @@
 package ch.heigvd.commands;
 
 import ch.heigvd.client.Client;
+import ch.heigvd.loadtest.LoadTest;
+import ch.heigvd.router.Router;
 import ch.heigvd.server.Server;
 import picocli.CommandLine;
 
@@ -10,6 +12,8 @@ import picocli.CommandLine;
     subcommands = {
       Client.class,
       Server.class,
+      LoadTest.class,
+      Router.class,
     },
     scope = CommandLine.ScopeType.INHERIT,
     mixinStandardHelpOptions = true)
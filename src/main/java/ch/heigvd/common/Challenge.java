@@ -1,23 +1,38 @@
 package ch.heigvd.common;
 
+import ch.heigvd.server.GameSession;
 import ch.heigvd.server.Server;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents a challenge issued by a player to another player.
  *
  * <p>A Challenge contains a reference to the challenger (resolved through the server's player
- * registry), the status of the challenge (pending, accepted or refused) and a Game instance when
- * the challenge is accepted.
+ * registry), the status of the challenge (pending, accepted or refused) and the session of the game
+ * when the challenge is accepted. The outcome is also published through {@link #result}, which lets
+ * the challenger wait for the answer without polling.
  */
 public class Challenge {
   /** Player who issued the challenge (resolved from Server.players). */
   public volatile Player challenger;
 
+  /** Player who received the challenge. */
+  public volatile Player challenged;
+
   /** Current status of the challenge. */
   public volatile Status status;
 
-  /** Assigned game when the challenge is accepted. */
-  public volatile Game game;
+  /** Session of the game started when the challenge is accepted. */
+  public volatile GameSession session;
+
+  /** Board size proposed by the challenger. */
+  public final int rows, columns, k;
+
+  /**
+   * Completed with the game's session once accepted and started, or with null when refused, timed
+   * out or cancelled.
+   */
+  public final CompletableFuture<GameSession> result = new CompletableFuture<>();
 
   /**
    * Create a new Challenge for the provided challenger username. The challenger Player instance is
@@ -26,8 +41,65 @@ public class Challenge {
    * @param challengerUsername username of the challenger
    */
   public Challenge(String challengerUsername) {
+    this(challengerUsername, Game.DEFAULT_SIZE, Game.DEFAULT_SIZE, Game.DEFAULT_SIZE);
+  }
+
+  /**
+   * Create a new Challenge proposing a board of the given size.
+   *
+   * @param challengerUsername username of the challenger
+   * @param rows number of rows of the proposed board
+   * @param columns number of columns of the proposed board
+   * @param k number of aligned symbols needed to win
+   */
+  public Challenge(String challengerUsername, int rows, int columns, int k) {
     challenger = Server.getPlayerByUsername(challengerUsername);
+    this.rows = rows;
+    this.columns = columns;
+    this.k = k;
     this.status = Status.PENDING;
+    Server.metrics.challengeSent();
+  }
+
+  /**
+   * Accepts the challenge if it is still pending. The challenger only gets the session once {@link
+   * #start} is called, so that the game can be set up first.
+   *
+   * @param session session of the game created for the two players
+   * @return true if the challenge was pending and is now accepted
+   */
+  public synchronized boolean accept(GameSession session) {
+    if (status != Status.PENDING) {
+      return false;
+    }
+    this.session = session;
+    status = Status.ACCEPTED;
+    Server.metrics.challengeAnswered();
+    return true;
+  }
+
+  /** Hands the session of the accepted challenge to the challenger. */
+  public void start() {
+    result.complete(session);
+  }
+
+  /**
+   * Refuses the challenge if it is still pending. Also used for timeouts and disconnections.
+   *
+   * @return true if the challenge was pending and is now refused
+   */
+  public synchronized boolean refuse() {
+    if (status != Status.PENDING) {
+      return false;
+    }
+    status = Status.REFUSED;
+    Server.metrics.challengeAnswered();
+    result.complete(null);
+    if (challenged != null) {
+      challenged.challenges.remove(this);
+      Server.lobby.challengesChanged(challenged);
+    }
+    return true;
   }
 
   /** Challenge states. */
@@ -0,0 +1,123 @@
+package ch.heigvd.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader turning the frames of the binary protocol back into lines, see {@link Frames}.
+ *
+ * <p>Each frame is decoded in place into a character buffer reused for every line. {@link
+ * #read(char[], int, int)} hands out the characters of one line at most, its end of line included,
+ * so that a consumer reading characters never takes more than the line it is waiting for, and only
+ * {@link #readLine()} creates a String.
+ */
+public class FrameReader extends BufferedReader {
+  /** Initial size of the buffers, enough for most lines. */
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final InputStream in;
+  private final int maxPayload;
+  private final CharsetDecoder decoder =
+      StandardCharsets.UTF_8
+          .newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  /** Bytes of the last frame read. */
+  private ByteBuffer frame = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+  /** Characters of the current line not handed out yet, its end of line included. */
+  private CharBuffer line = CharBuffer.allocate(INITIAL_CAPACITY).limit(0);
+
+  /**
+   * Creates a reader over the frames sent by a client.
+   *
+   * @param in stream delivering frames
+   */
+  public FrameReader(InputStream in) {
+    this(in, Frames.MAX_PAYLOAD);
+  }
+
+  /**
+   * Creates a reader over a stream of frames.
+   *
+   * @param in stream delivering frames
+   * @param maxPayload largest payload accepted
+   */
+  public FrameReader(InputStream in, int maxPayload) {
+    super(Reader.nullReader());
+    this.in = new BufferedInputStream(in);
+    this.maxPayload = maxPayload;
+  }
+
+  @Override
+  public String readLine() throws IOException {
+    if (!line.hasRemaining() && !nextLine()) {
+      return null;
+    }
+    // without its end of line
+    String text = new String(line.array(), line.position(), line.remaining() - 1);
+    line.position(line.limit());
+    return text;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!line.hasRemaining() && !nextLine()) {
+      return -1;
+    }
+    return line.get();
+  }
+
+  @Override
+  public int read(char[] chars, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (!line.hasRemaining() && !nextLine()) {
+      return -1;
+    }
+    int count = Math.min(length, line.remaining());
+    line.get(chars, offset, count);
+    return count;
+  }
+
+  @Override
+  public boolean ready() throws IOException {
+    return line.hasRemaining() || in.available() > 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /**
+   * Reads the next frame and decodes its line.
+   *
+   * @return false at the end of the stream
+   */
+  private boolean nextLine() throws IOException {
+    ByteBuffer read = Frames.read(in, frame, maxPayload);
+    if (read == null) {
+      return false;
+    }
+    frame = read;
+    int room = Frames.maxLineLength(frame.remaining()) + 1;
+    if (line.capacity() < room) {
+      line = CharBuffer.allocate(room);
+    }
+    line.clear();
+    Frames.decode(frame, line, decoder);
+    line.put('\n').flip();
+    return true;
+  }
+}
@@ -0,0 +1,51 @@
+package ch.heigvd.common;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writer sending every line written to it as a frame of the binary protocol, see {@link Frames}.
+ * Lines are encoded as soon as their end of line is written and sent on {@link #flush()}.
+ */
+public class FrameWriter extends Writer {
+  private final OutputStream out;
+  private final StringBuilder line = new StringBuilder();
+
+  /**
+   * Creates a writer sending frames to a stream.
+   *
+   * @param out stream receiving the frames
+   */
+  public FrameWriter(OutputStream out) {
+    this.out = new BufferedOutputStream(out);
+  }
+
+  @Override
+  public void write(char[] chars, int offset, int length) throws IOException {
+    synchronized (lock) {
+      for (int i = offset; i < offset + length; i++) {
+        if (chars[i] == '\n') {
+          Frames.encode(line.toString(), out);
+          line.setLength(0);
+        } else {
+          line.append(chars[i]);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    synchronized (lock) {
+      out.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    out.close();
+  }
+}
@@ -0,0 +1,372 @@
+package ch.heigvd.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary encoding of the protocol lines, negotiated with a BINARY line right after the server's
+ * initial OK.
+ *
+ * <p>Every line becomes a frame: one opcode byte naming the message, the length of the payload as
+ * an unsigned varint, then the payload. The integers of PLAY (row and column), GAMESTART (first
+ * player, rows, columns, k), GAMEOVER and ERROR (code) are sent as single bytes. The arguments of
+ * the other messages are sent as UTF-8 text, and a line that cannot be encoded this way is sent
+ * whole with the {@link #TEXT} opcode, so that any line survives the round trip unchanged.
+ *
+ * <p>{@code PLAY 10 12} thus takes 4 bytes instead of 11. The rest of the code keeps reading and
+ * writing lines: {@link FrameReader} and {@link FrameWriter} translate at the socket. A frame is
+ * decoded into the characters of its line in place, so the server's command decoder reads it
+ * without any String being created.
+ */
+public final class Frames {
+  /** Line sent to switch to frames. The server answers OK, then both sides only send frames. */
+  public static final String NEGOTIATION = "BINARY";
+
+  /** Opcode of a line sent unchanged as UTF-8. */
+  public static final int TEXT = 0;
+
+  /**
+   * Largest payload of a frame sent to a server, as long as the longest text line it accepts.
+   * Larger frames are a protocol error.
+   */
+  public static final int MAX_PAYLOAD = 8192;
+
+  /** Largest payload of a frame sent by a server, whose lobby and standings lines can be long. */
+  public static final int MAX_SERVER_PAYLOAD = 1 << 24;
+
+  /** Message names by opcode. New messages are appended so that the opcodes never change. */
+  private static final String[] KEYWORDS = {
+    null,
+    "OK",
+    "ERROR",
+    "CHALLENGES",
+    "REFUSE",
+    "GAMESTART",
+    "PLAY",
+    "GAMEOVER",
+    "LOBBY",
+    "PLAYERS",
+    "QUIT",
+    "LOGIN",
+    "CHALLENGE",
+    "ACCEPT",
+    "SUBSCRIBE",
+    "GAMES",
+    "WATCH",
+    "UNWATCH",
+    "BOARD",
+    "MOVE",
+    "END",
+    "QUEUE",
+    "REJOIN",
+    "RESUME",
+    "PING",
+    "PONG",
+    "TOURNAMENTS",
+    "REGISTER",
+    "ROUND",
+    "STANDINGS"
+  };
+
+  /** Characters of the message names, copied into the decoded lines. */
+  private static final char[][] KEYWORD_CHARS = new char[KEYWORDS.length][];
+
+  /** Length of the longest message name. */
+  private static final int MAX_KEYWORD_LENGTH;
+
+  /** Number of single byte integers making the payload of the fixed-width messages. */
+  private static final int[] FIXED_WIDTH = new int[KEYWORDS.length];
+
+  /** Largest number of integers of a fixed-width message. */
+  private static final int MAX_FIXED_WIDTH = 4;
+
+  private static final Map<String, Integer> OPCODES = new HashMap<>();
+
+  static {
+    int longest = 0;
+    for (int opcode = 1; opcode < KEYWORDS.length; opcode++) {
+      OPCODES.put(KEYWORDS[opcode], opcode);
+      KEYWORD_CHARS[opcode] = KEYWORDS[opcode].toCharArray();
+      longest = Math.max(longest, KEYWORDS[opcode].length());
+    }
+    MAX_KEYWORD_LENGTH = longest;
+    FIXED_WIDTH[OPCODES.get("PLAY")] = 2;
+    FIXED_WIDTH[OPCODES.get("GAMESTART")] = 4;
+    // 0 or 1 integer
+    FIXED_WIDTH[OPCODES.get("GAMEOVER")] = -1;
+    FIXED_WIDTH[OPCODES.get("ERROR")] = -1;
+  }
+
+  private Frames() {}
+
+  /**
+   * Writes the frame of one line.
+   *
+   * @param line line without its end of line
+   * @param out stream receiving the frame
+   * @throws IOException if the stream cannot be written
+   */
+  public static void encode(String line, OutputStream out) throws IOException {
+    int space = line.indexOf(' ');
+    String keyword = space < 0 ? line : line.substring(0, space);
+    String arguments = space < 0 ? "" : line.substring(space + 1);
+    Integer opcode = OPCODES.get(keyword);
+    if (opcode != null && FIXED_WIDTH[opcode] != 0) {
+      byte[] integers = smallIntegers(arguments, FIXED_WIDTH[opcode]);
+      if (integers != null) {
+        out.write(opcode);
+        writeVarint(integers.length, out);
+        out.write(integers);
+        return;
+      }
+      // out of range or malformed, e.g. an invalid move typed by the player
+      opcode = null;
+    }
+    if (opcode == null || (space >= 0 && arguments.isEmpty())) {
+      writeFrame(TEXT, line.getBytes(StandardCharsets.UTF_8), out);
+    } else {
+      writeFrame(opcode, arguments.getBytes(StandardCharsets.UTF_8), out);
+    }
+  }
+
+  /**
+   * Encodes every complete line of the text.
+   *
+   * @param text lines, each ending with {@link Norms#END_OF_LINE}
+   * @param out stream receiving the frames
+   * @return the number of characters consumed, the incomplete last line is left out
+   */
+  public static int encodeLines(CharSequence text, ByteArrayOutputStream out) {
+    int start = 0;
+    try {
+      for (int i = 0; i < text.length(); i++) {
+        if (text.charAt(i) == '\n') {
+          encode(text.subSequence(start, i).toString(), out);
+          start = i + 1;
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // not thrown by ByteArrayOutputStream
+    }
+    return start;
+  }
+
+  /**
+   * Reads the bytes of one frame.
+   *
+   * @param in stream delivering frames
+   * @param frame buffer to read the frame into, replaced by a larger one if it is too small
+   * @param maxPayload largest payload accepted, {@link #MAX_PAYLOAD} for the frames of a client
+   * @return the buffer holding the whole frame, in read mode, or null at the end of the stream
+   * @throws IOException if the stream cannot be read or does not contain a valid frame
+   */
+  public static ByteBuffer read(InputStream in, ByteBuffer frame, int maxPayload)
+      throws IOException {
+    int opcode = in.read();
+    if (opcode < 0) {
+      return null;
+    }
+    frame.clear().put((byte) opcode);
+    int length = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      frame.put((byte) b);
+      length |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+      checkShift(shift);
+    }
+    checkLength(length, maxPayload);
+    if (frame.remaining() < length) {
+      frame = ByteBuffer.allocate(frame.position() + length).put(frame.flip());
+    }
+    if (in.readNBytes(frame.array(), frame.position(), length) < length) {
+      throw new EOFException();
+    }
+    return frame.position(frame.position() + length).flip();
+  }
+
+  /**
+   * Returns the length of the frame starting at the buffer's position, if it is complete.
+   *
+   * @param buffer bytes received, in read mode; left unchanged
+   * @param maxPayload largest payload accepted, {@link #MAX_PAYLOAD} for the frames of a client
+   * @return the length of the frame, header included, or -1 if the frame is not complete yet
+   * @throws ProtocolException if the frame is too long
+   */
+  public static int length(ByteBuffer buffer, int maxPayload) throws ProtocolException {
+    int start = buffer.position();
+    int length = 0;
+    for (int i = start + 1, shift = 0; i < buffer.limit(); i++, shift += 7) {
+      int b = buffer.get(i) & 0xff;
+      length |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        checkLength(length, maxPayload);
+        int end = i + 1 + length;
+        return end <= buffer.limit() ? end - start : -1;
+      }
+      checkShift(shift);
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the number of characters a frame decodes to at most.
+   *
+   * @param length length of the frame, header included
+   * @return the largest length of its line, without the end of line
+   */
+  public static int maxLineLength(int length) {
+    // the message name, then at worst four digits per byte of a fixed-width payload
+    return MAX_KEYWORD_LENGTH + Math.max(length, 4 * MAX_FIXED_WIDTH);
+  }
+
+  /**
+   * Decodes the complete frame at the buffer's position into its line, written in place without
+   * creating Strings. The message name is copied from a table, the single byte integers are written
+   * as digits and a text payload is decoded straight from the buffer.
+   *
+   * @param buffer bytes received, in read mode, starting with a complete frame which is consumed
+   * @param line receives the line without its end of line, with room for {@link #maxLineLength}
+   *     characters
+   * @param decoder UTF-8 decoder for the text payloads that are not ASCII
+   * @throws ProtocolException if the frame is not valid
+   */
+  public static void decode(ByteBuffer buffer, CharBuffer line, CharsetDecoder decoder)
+      throws ProtocolException {
+    int opcode = buffer.get() & 0xff;
+    int length = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = buffer.get() & 0xff;
+      length |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+    }
+    if (opcode >= KEYWORDS.length) {
+      throw new ProtocolException("Unknown opcode " + opcode);
+    }
+    int width = FIXED_WIDTH[opcode];
+    if (width != 0 && (width < 0 ? length > 1 : length != width)) {
+      throw new ProtocolException("Frame of " + length + " bytes for " + KEYWORDS[opcode]);
+    }
+    if (opcode != TEXT) {
+      line.put(KEYWORD_CHARS[opcode]);
+      if (length == 0) {
+        return;
+      }
+      line.put(' ');
+    }
+    int end = buffer.position() + length;
+    if (width != 0) {
+      for (int i = buffer.position(); i < end; i++) {
+        if (i > buffer.position()) {
+          line.put(' ');
+        }
+        putDigits(buffer.get(i) & 0xff, line);
+      }
+      buffer.position(end);
+      return;
+    }
+    // the decoder only takes over from the first byte that is not ASCII
+    int i = buffer.position();
+    for (; i < end && buffer.get(i) >= 0; i++) {
+      line.put((char) buffer.get(i));
+    }
+    if (i < end) {
+      int limit = buffer.limit();
+      buffer.limit(end).position(i);
+      decoder.reset();
+      decoder.decode(buffer, line, true);
+      decoder.flush(line);
+      buffer.limit(limit);
+    }
+    buffer.position(end);
+  }
+
+  /** Writes an integer between 0 and 255 in decimal. */
+  private static void putDigits(int value, CharBuffer line) {
+    if (value >= 100) {
+      line.put((char) ('0' + value / 100));
+    }
+    if (value >= 10) {
+      line.put((char) ('0' + value / 10 % 10));
+    }
+    line.put((char) ('0' + value % 10));
+  }
+
+  /**
+   * Parses the space separated integers of a fixed-width message.
+   *
+   * @param arguments text after the message name
+   * @param count number of integers expected, -1 for 0 or 1
+   * @return the integers, or null if they do not fit in single bytes or would not be decoded to the
+   *     same text
+   */
+  private static byte[] smallIntegers(String arguments, int count) {
+    String[] parts = arguments.isEmpty() ? new String[0] : arguments.split(" ", -1);
+    if (count < 0 ? parts.length > 1 : parts.length != count) {
+      return null;
+    }
+    byte[] integers = new byte[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      String part = parts[i];
+      if (part.isEmpty() || part.length() > 3 || (part.length() > 1 && part.charAt(0) == '0')) {
+        return null;
+      }
+      int value = 0;
+      for (int j = 0; j < part.length(); j++) {
+        char c = part.charAt(j);
+        if (c < '0' || c > '9') {
+          return null;
+        }
+        value = value * 10 + c - '0';
+      }
+      if (value > 255) {
+        return null;
+      }
+      integers[i] = (byte) value;
+    }
+    return integers;
+  }
+
+  private static void writeFrame(int opcode, byte[] payload, OutputStream out) throws IOException {
+    out.write(opcode);
+    writeVarint(payload.length, out);
+    out.write(payload);
+  }
+
+  private static void writeVarint(int value, OutputStream out) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static void checkShift(int shift) throws ProtocolException {
+    if (shift >= 28) {
+      throw new ProtocolException("Frame length too long");
+    }
+  }
+
+  private static void checkLength(int length, int maxPayload) throws ProtocolException {
+    if (length < 0 || length > maxPayload) {
+      throw new ProtocolException("Frame of " + length + " bytes");
+    }
+  }
+}
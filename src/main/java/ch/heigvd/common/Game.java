@@ -2,21 +2,68 @@ package ch.heigvd.common;
 
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Simple model of a Tic-Tac-Toe game used by the server and client.
+ * Model of an m,n,k game (k in a row on a board of m rows and n columns) used by the server and
+ * client. The default board is the classic 3x3 Tic-Tac-Toe; larger variants such as 15x15 Gomoku
+ * are negotiated with the CHALLENGE command.
  *
  * <p>The Game object stores references to the two participating players, the board state and
- * concurrency-safe flags used by the server to coordinate turns and game termination.
+ * concurrency-safe flags used by the server to coordinate turns and game termination. Moves and
+ * disconnections are applied under a per-game lock, so a bot reading the board never sees half a
+ * move.
+ *
+ * <p>The board is two bitsets, one per symbol, cell {@code row * columns + column} being one bit.
+ * Only the lines going through the last move can have been completed by it, so a move is checked by
+ * counting the mover's cells along the four directions from the last move, which costs O(k)
+ * whatever the board size. The classic board keeps a table of its eight lines instead. Validating a
+ * move allocates nothing. {@link #getBoard()} gives a {@code String[]} view for display.
  */
 public class Game {
-  public String[] board = new String[9];
+  /** Size of the classic Tic-Tac-Toe board, used when no size is negotiated. */
+  public static final int DEFAULT_SIZE = 3;
+
+  /** Largest number of rows or columns accepted. */
+  public static final int MAX_SIZE = 32;
+
+  /** Empty cell as shown in the board view. */
+  public static final String EMPTY = " ";
+
+  /** Rows, columns and diagonals of the classic board as bitmasks, bit {@code i} being cell i. */
+  private static final long[] CLASSIC_WIN_MASKS = {
+    0b000_000_111, 0b000_111_000, 0b111_000_000, // rows
+    0b001_001_001, 0b010_010_010, 0b100_100_100, // columns
+    0b100_010_001, 0b001_010_100 // diagonals
+  };
+
+  /** Row and column steps of the four line directions: horizontal, vertical and diagonals. */
+  private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+  /** Number of rows of the board. */
+  public final int rows;
+
+  /** Number of columns of the board. */
+  public final int columns;
+
+  /** Number of aligned symbols needed to win. */
+  public final int k;
+
+  /** Cells taken by the X symbol. */
+  private final long[] xCells;
+
+  /** Cells taken by the O symbol. */
+  private final long[] oCells;
+
   public Player player1;
   public Player player2;
 
   /** True when it is player1's turn. */
   public AtomicBoolean isPlayer1Turn = new AtomicBoolean(true);
 
+  /** True when player1 played the first move. Unlike isPlayer1Turn, it never changes. */
+  public boolean player1Starts = true;
+
   /** True when the game has finished (winner set or draw). */
   public AtomicBoolean isOver = new AtomicBoolean(false);
 
@@ -32,14 +79,41 @@ public class Game {
   /** Index of the last move played (-1 if none). */
   public AtomicInteger lastMove = new AtomicInteger(-1);
 
+  /** Value of {@link System#nanoTime()} when the last move was made. */
+  public volatile long lastMoveNanos;
+
   /** True if a player disconnected and the other player should be credited with the win. */
   public AtomicBoolean hasDisconnect = new AtomicBoolean(false);
 
-  /** Create an empty game with an empty board. Players must be set later. */
+  /** Number of moves played so far. */
+  public AtomicInteger moveCount = new AtomicInteger(0);
+
+  /** Guards the board and the end of the game. */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Create an empty classic game. Players must be set later. */
   public Game() {
-    for (int i = 0; i < 9; i++) {
-      board[i] = " ";
+    this(DEFAULT_SIZE, DEFAULT_SIZE, DEFAULT_SIZE);
+  }
+
+  /**
+   * Create an empty game with the given board size. Players must be set later.
+   *
+   * @param rows number of rows
+   * @param columns number of columns
+   * @param k number of aligned symbols needed to win
+   * @throws IllegalArgumentException if the size is not valid
+   */
+  public Game(int rows, int columns, int k) {
+    if (!isValidSize(rows, columns, k)) {
+      throw new IllegalArgumentException("Invalid board size " + rows + "x" + columns + "," + k);
     }
+    this.rows = rows;
+    this.columns = columns;
+    this.k = k;
+    int words = (rows * columns + Long.SIZE - 1) / Long.SIZE;
+    this.xCells = new long[words];
+    this.oCells = new long[words];
   }
 
   /**
@@ -49,81 +123,265 @@ public class Game {
    * @param player2 second player (will use the O symbol)
    */
   public Game(Player player1, Player player2) {
+    this(player1, player2, DEFAULT_SIZE, DEFAULT_SIZE, DEFAULT_SIZE);
+  }
+
+  /**
+   * Create a game with two players on a board of the given size. The starting player is chosen
+   * randomly.
+   *
+   * @param player1 first player (will use the X symbol)
+   * @param player2 second player (will use the O symbol)
+   * @param rows number of rows
+   * @param columns number of columns
+   * @param k number of aligned symbols needed to win
+   * @throws IllegalArgumentException if the size is not valid
+   */
+  public Game(Player player1, Player player2, int rows, int columns, int k) {
+    this(rows, columns, k);
     this.player1 = player1;
     this.player2 = player2;
-    this.isPlayer1Turn.set(Math.random() < 0.5);
-    for (int i = 0; i < 9; i++) {
-      board[i] = " ";
+    this.player1Starts = Math.random() < 0.5;
+    this.isPlayer1Turn.set(player1Starts);
+  }
+
+  /**
+   * Returns a copy of the cells taken by one symbol.
+   *
+   * @param symbol {@link #player1Symbol} or {@link #player2Symbol}
+   * @return bitset of the cells, bit {@code row * columns + column} per cell
+   */
+  public long[] getCells(String symbol) {
+    lock.lock();
+    try {
+      return (symbol.equals(player1Symbol) ? xCells : oCells).clone();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns whether a board size is supported.
+   *
+   * @param rows number of rows
+   * @param columns number of columns
+   * @param k number of aligned symbols needed to win
+   * @return true if both dimensions are between 3 and {@link #MAX_SIZE} and a line of k fits
+   */
+  public static boolean isValidSize(int rows, int columns, int k) {
+    return rows >= DEFAULT_SIZE
+        && rows <= MAX_SIZE
+        && columns >= DEFAULT_SIZE
+        && columns <= MAX_SIZE
+        && k >= DEFAULT_SIZE
+        && k <= Math.max(rows, columns);
+  }
+
+  /**
+   * Returns whether this game is played on the classic 3x3 board.
+   *
+   * @return true for the classic board
+   */
+  public boolean isClassic() {
+    return rows == DEFAULT_SIZE && columns == DEFAULT_SIZE && k == DEFAULT_SIZE;
+  }
+
+  /**
+   * Returns the number of cells of the board.
+   *
+   * @return rows times columns
+   */
+  public int cells() {
+    return rows * columns;
+  }
+
+  /**
+   * Converts a row and a column to a board position.
+   *
+   * @param row row index
+   * @param column column index
+   * @return the position, or -1 if the cell is outside the board
+   */
+  public int position(int row, int column) {
+    if (row < 0 || row >= rows || column < 0 || column >= columns) {
+      return -1;
     }
+    return row * columns + column;
   }
 
   /**
    * Attempt to make a move on behalf of the player identified by username.
    *
-   * @param position board position (0..8)
+   * @param position board position (0..rows*columns-1)
    * @param username username of the player making the move
    * @return true if the move has been accepted and applied, false otherwise
    */
   public boolean makeMove(int position, String username) {
     Player player = username.equals(player1.username) ? player1 : player2;
-    if (isOver.get() || position < 0 || position > 8 || !board[position].equals(" ")) {
+    lock.lock();
+    try {
+      if (isOver.get() || position < 0 || position >= cells() || isTaken(position)) {
+        return false;
+      }
+      if ((isPlayer1Turn.get() && player.equals(player1))
+          || (!isPlayer1Turn.get() && player.equals(player2))) {
+        boolean isPlayer1 = isPlayer1Turn.get();
+        long[] cells = isPlayer1 ? xCells : oCells;
+        set(cells, position);
+        lastMove.set(position);
+        lastMoveNanos = System.nanoTime();
+        // the count is published before the turn flips so a player seeing its turn sees the move
+        moveCount.incrementAndGet();
+        checkWin(cells, position, isPlayer1 ? player1 : player2);
+        isPlayer1Turn.set(!isPlayer1);
+        return true;
+      }
       return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Places a symbol without any check. Used by the client to mirror the moves confirmed by the
+   * server.
+   *
+   * @param position board position (0..rows*columns-1)
+   * @param symbol {@link #player1Symbol} or {@link #player2Symbol}
+   */
+  public void setCell(int position, String symbol) {
+    set(symbol.equals(player1Symbol) ? xCells : oCells, position);
+  }
+
+  /**
+   * Returns the symbol in a cell.
+   *
+   * @param position board position (0..rows*columns-1)
+   * @return {@link #player1Symbol}, {@link #player2Symbol} or {@link #EMPTY}
+   */
+  public String getCell(int position) {
+    if (isSet(xCells, position)) {
+      return player1Symbol;
     }
-    if ((isPlayer1Turn.get() && player.equals(player1))
-        || (!isPlayer1Turn.get() && player.equals(player2))) {
-      board[position] = isPlayer1Turn.get() ? player1Symbol : player2Symbol;
-      checkWin();
-      lastMove.set(position);
-      isPlayer1Turn.set(!isPlayer1Turn.get());
-      return true;
+    return isSet(oCells, position) ? player2Symbol : EMPTY;
+  }
+
+  /**
+   * Returns a copy of the board, one symbol per cell, row after row.
+   *
+   * @return array of rows*columns cells, {@link #EMPTY} for empty cells
+   */
+  public String[] getBoard() {
+    String[] board = new String[cells()];
+    for (int i = 0; i < board.length; i++) {
+      board[i] = getCell(i);
     }
-    return false;
+    return board;
   }
 
-  /** Check current board for a winning condition or a draw and update isOver/winner accordingly. */
-  private void checkWin() {
-    String[][] winConditions = {
-      {board[0], board[1], board[2]},
-      {board[3], board[4], board[5]},
-      {board[6], board[7], board[8]},
-      {board[0], board[3], board[6]},
-      {board[1], board[4], board[7]},
-      {board[2], board[5], board[8]},
-      {board[0], board[4], board[8]},
-      {board[2], board[4], board[6]}
-    };
-    for (String[] condition : winConditions) {
-      if (condition[0].equals(player1Symbol)
-          && condition[1].equals(player1Symbol)
-          && condition[2].equals(player1Symbol)) {
-        isOver.set(true);
-        winner = player1;
-        return;
-      }
-      if (condition[0].equals(player2Symbol)
-          && condition[1].equals(player2Symbol)
-          && condition[2].equals(player2Symbol)) {
-        isOver.set(true);
-        winner = player2;
+  /**
+   * Ends the game because the given player left. The opponent is credited with the win.
+   *
+   * @param username username of the player who disconnected
+   */
+  public void abandon(String username) {
+    lock.lock();
+    try {
+      if (isOver.get()) {
         return;
       }
+      winner = username.equals(player1.username) ? player2 : player1;
+      hasDisconnect.set(true);
+      isOver.set(true);
+    } finally {
+      lock.unlock();
     }
-    if (isBoardFull()) {
+  }
+
+  /**
+   * Check whether the last move won or filled the board and update isOver/winner accordingly. Only
+   * the lines going through the last move can have been completed by it.
+   *
+   * @param cells cells of the player who just moved
+   * @param position position of the last move
+   * @param mover player who just moved
+   */
+  private void checkWin(long[] cells, int position, Player mover) {
+    if (completesLine(cells, position, rows, columns, k)) {
+      isOver.set(true);
+      winner = mover;
+      return;
+    }
+    if (moveCount.get() == cells()) {
       isOver.set(true);
     }
   }
 
   /**
-   * Returns whether the board is full (no empty cells left).
+   * Returns whether the cells of a player contain k aligned cells through the given position. Also
+   * used by the server bots to evaluate positions without building a Game.
    *
-   * @return true when no cell equals " "
+   * @param cells bitset of the player's cells, bit {@code row * columns + column} per cell
+   * @param position position of the player's last move
+   * @param rows number of rows of the board
+   * @param columns number of columns of the board
+   * @param k number of aligned symbols needed to win
+   * @return true if a line of k cells goes through position
    */
-  private boolean isBoardFull() {
-    for (String cell : board) {
-      if (cell.equals(" ")) {
-        return false;
+  public static boolean completesLine(long[] cells, int position, int rows, int columns, int k) {
+    if (rows == DEFAULT_SIZE && columns == DEFAULT_SIZE && k == DEFAULT_SIZE) {
+      return isClassicWin(cells[0]);
+    }
+    int row = position / columns;
+    int column = position % columns;
+    for (int[] direction : DIRECTIONS) {
+      int aligned = 1;
+      // both directions from the last move, at most k - 1 cells each
+      for (int sign = -1; sign <= 1; sign += 2) {
+        int r = row + sign * direction[0];
+        int c = column + sign * direction[1];
+        while (aligned < k && r >= 0 && r < rows && c >= 0 && c < columns) {
+          if (!isSet(cells, r * columns + c)) {
+            break;
+          }
+          aligned++;
+          r += sign * direction[0];
+          c += sign * direction[1];
+        }
+      }
+      if (aligned >= k) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns whether a classic board mask covers one of the eight lines. */
+  private static boolean isClassicWin(long cells) {
+    for (long mask : CLASSIC_WIN_MASKS) {
+      if ((cells & mask) == mask) {
+        return true;
       }
     }
-    return true;
+    return false;
+  }
+
+  private boolean isTaken(int position) {
+    return isSet(xCells, position) || isSet(oCells, position);
+  }
+
+  /**
+   * Returns whether a cell is set in a bitset of cells.
+   *
+   * @param cells bitset of cells
+   * @param position board position
+   * @return true if the bit of the position is set
+   */
+  public static boolean isSet(long[] cells, int position) {
+    return (cells[position >>> 6] & (1L << position)) != 0;
+  }
+
+  private static void set(long[] cells, int position) {
+    cells[position >>> 6] |= 1L << position;
   }
 }
@@ -0,0 +1,139 @@
+package ch.heigvd.common;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram safe to record into from many threads at once.
+ *
+ * <p>Values are counted in log-linear buckets: every power of two is split into {@link
+ * #SUB_BUCKETS} buckets of equal width, so percentiles are exact to about 6% whatever the
+ * magnitude, from nanoseconds to minutes. Every bucket is a {@link LongAdder}, so concurrent
+ * recordings do not contend on a shared counter.
+ */
+public final class Histogram {
+  /** Buckets per power of two. */
+  public static final int SUB_BUCKETS = 16;
+
+  private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+  private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /** Creates an empty histogram. */
+  public Histogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records one value.
+   *
+   * @param value value to record, usually nanoseconds; negative values count as 0
+   */
+  public void record(long value) {
+    value = Math.max(value, 0);
+    buckets[index(value)].increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  /**
+   * Records the time elapsed since a start time.
+   *
+   * @param startNanos value of {@link System#nanoTime()} at the start
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Returns the number of values recorded.
+   *
+   * @return number of values
+   */
+  public long count() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /**
+   * Returns the mean of the values recorded.
+   *
+   * @return the mean, 0 if nothing has been recorded
+   */
+  public double mean() {
+    long count = count();
+    return count == 0 ? 0 : (double) sum.sum() / count;
+  }
+
+  /**
+   * Returns the largest value recorded.
+   *
+   * @return the maximum, 0 if nothing has been recorded
+   */
+  public long max() {
+    return max.get();
+  }
+
+  /**
+   * Returns a value such that the given fraction of the recorded values is lower or equal.
+   *
+   * @param quantile fraction between 0 and 1, e.g. 0.99 for the 99th percentile
+   * @return the upper bound of the bucket holding the quantile, 0 if nothing has been recorded
+   */
+  public long percentile(double quantile) {
+    long[] counts = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets[i].sum();
+      count += counts[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(upperBound(i), max());
+      }
+    }
+    return max();
+  }
+
+  /** Clears the histogram. Values recorded concurrently may be lost or kept. */
+  public void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    sum.reset();
+    max.reset();
+  }
+
+  private static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  private static long upperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+    long width = 1L << (exponent - SUB_BITS);
+    long lower = (SUB_BUCKETS + index % SUB_BUCKETS) * width;
+    return lower + width - 1;
+  }
+}
@@ -6,14 +6,27 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * Represents a player connected to the server.
  *
  * <p>The Player object stores a username, its current status, a list of incoming challenges and
- * simple statistics tracked by the server.
+ * simple statistics tracked by the server, including an Elo rating used by the matchmaking queue.
  */
 public class Player {
+  /** Rating of a player who has not played yet. */
+  public static final int INITIAL_RATING = 1200;
+
   public String username;
   public Status status;
   public CopyOnWriteArrayList<Challenge> challenges;
+
+  /** Challenge sent by this player and still waiting for an answer (server side only). */
+  public volatile Challenge sentChallenge;
+
+  /** True for the players played by the server itself (server side only). */
+  public boolean isBot;
+
   public int wins, losses, draws, winStreak;
 
+  /** Elo rating, updated at the end of every game. */
+  public int rating = INITIAL_RATING;
+
   /** Create a player with zeroed statistics. */
   public Player(String username) {
     this(username, 0, 0, 0, 0);
@@ -48,7 +61,35 @@ public class Player {
         + Norms.ELEMENT_SEPARATOR
         + draws
         + Norms.ELEMENT_SEPARATOR
-        + winStreak;
+        + winStreak
+        + Norms.ELEMENT_SEPARATOR
+        + rating;
+  }
+
+  /**
+   * Parses the representation returned by {@link #toString()}, optionally followed by the status.
+   *
+   * @param record username,wins,losses,draws,winStreak,rating[,status]
+   * @return the player
+   * @throws IllegalArgumentException if the record is malformed
+   */
+  public static Player parse(String record) {
+    String[] fields = record.split(Norms.ELEMENT_SEPARATOR);
+    if (fields.length < 6) {
+      throw new IllegalArgumentException("Invalid player record: " + record);
+    }
+    Player player =
+        new Player(
+            fields[0],
+            Integer.parseInt(fields[1]),
+            Integer.parseInt(fields[2]),
+            Integer.parseInt(fields[3]),
+            Integer.parseInt(fields[4]));
+    player.rating = Integer.parseInt(fields[5]);
+    if (fields.length > 6) {
+      player.status = Status.valueOf(fields[6]);
+    }
+    return player;
   }
 
   public enum Status {
@@ -0,0 +1,243 @@
+package ch.heigvd.loadtest;
+
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Histogram;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import picocli.CommandLine;
+
+/**
+ * Headless load generator. Every simulated player is a {@link ScriptedPlayer} on its own virtual
+ * thread, so thousands of them can run from one process.
+ *
+ * <p>Players are paired: the first of each pair challenges the second, which polls its challenges
+ * and accepts, then both play random legal moves until the game is over. Every command is timed
+ * from the moment it is sent until its answer arrives, and the latencies are reported per command
+ * at the end of the run.
+ *
+ * <p>The server must accept as many connections as there are players, e.g. with {@code
+ * --virtual-threads} or {@code --io nio}.
+ */
+@CommandLine.Command(
+    name = "loadtest",
+    description = "Simulate many players against a local server and report the latencies.")
+public class LoadTest implements Callable<Integer> {
+  /** Seconds between two progress lines. */
+  static final int PROGRESS_INTERVAL = 5;
+
+  /** Commands timed by the load test. */
+  public enum Command {
+    /** From LOGIN to OK. */
+    LOGIN,
+    /** From PLAYERS to the list. */
+    PLAYERS,
+    /** From CHALLENGES to the list. */
+    CHALLENGES,
+    /** From CHALLENGE to GAMESTART, which includes the time the opponent takes to accept. */
+    CHALLENGE,
+    /** From ACCEPT to GAMESTART. */
+    ACCEPT,
+    /** From PLAY to OK. */
+    PLAY,
+    /** From GAMES to the list, sent by the spectators. */
+    GAMES,
+    /** From WATCH to the BOARD snapshot, sent by the spectators. */
+    WATCH
+  }
+
+  @CommandLine.Option(
+      names = {"-p", "--port"},
+      description = "Port of the local server (default: ${DEFAULT-VALUE}).",
+      defaultValue = "42069")
+  protected int port;
+
+  @CommandLine.Option(
+      names = {"-n", "--players"},
+      description =
+          "Number of simulated players, rounded up to an even number (default: ${DEFAULT-VALUE}).",
+      defaultValue = "100")
+  protected int playerCount;
+
+  @CommandLine.Option(
+      names = {"-g", "--games"},
+      description = "Games played by each pair of players (default: ${DEFAULT-VALUE}).",
+      defaultValue = "10")
+  protected int games;
+
+  @CommandLine.Option(
+      names = {"--size"},
+      description = "Board as rows,columns,k (default: ${DEFAULT-VALUE}).",
+      defaultValue = "3,3,3")
+  protected String size;
+
+  @CommandLine.Option(
+      names = {"--think"},
+      description = "Milliseconds a player waits before each command (default: ${DEFAULT-VALUE}).",
+      defaultValue = "0")
+  protected int thinkTime;
+
+  @CommandLine.Option(
+      names = {"--spectators"},
+      description =
+          "Number of simulated clients watching the games being played (default: ${DEFAULT-VALUE}).",
+      defaultValue = "0")
+  protected int spectatorCount;
+
+  @CommandLine.Option(
+      names = {"--prefix"},
+      description = "Prefix of the usernames of the simulated players (default: ${DEFAULT-VALUE}).",
+      defaultValue = "load")
+  protected String prefix;
+
+  /** Latencies of every command, shared by all the players. */
+  final EnumMap<Command, Histogram> latencies = new EnumMap<>(Command.class);
+
+  /** Commands answered with an error, or not answered at all. */
+  final EnumMap<Command, LongAdder> errors = new EnumMap<>(Command.class);
+
+  /** Games played to the end, counted once per player. */
+  final LongAdder gamesOver = new LongAdder();
+
+  /** Players that could not connect or lost their connection. */
+  final LongAdder connectionErrors = new LongAdder();
+
+  /** Moves received by the spectators. */
+  final LongAdder spectatorMoves = new LongAdder();
+
+  /** Set once every player has played its games, the spectators then quit. */
+  volatile boolean playersDone;
+
+  int rows;
+  int columns;
+  int k;
+
+  @Override
+  public Integer call() throws Exception {
+    String[] board = size.split(",");
+    try {
+      rows = Integer.parseInt(board[0].trim());
+      columns = Integer.parseInt(board[1].trim());
+      k = Integer.parseInt(board[2].trim());
+    } catch (RuntimeException e) {
+      rows = -1;
+    }
+    if (!Game.isValidSize(rows, columns, k)) {
+      System.out.println("[LoadTest] Invalid board size " + size);
+      return 1;
+    }
+    for (Command command : Command.values()) {
+      latencies.put(command, new Histogram());
+      errors.put(command, new LongAdder());
+    }
+    int pairs = (playerCount + 1) / 2;
+    System.out.println(
+        "[LoadTest] "
+            + pairs * 2
+            + " players, "
+            + games
+            + " games per pair, "
+            + spectatorCount
+            + " spectators on port "
+            + port);
+
+    ScheduledExecutorService progress =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("loadtest-progress").daemon().factory());
+    long start = System.nanoTime();
+    progress.scheduleAtFixedRate(
+        () -> printProgress(start), PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.SECONDS);
+    try (ExecutorService spectators = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < spectatorCount; i++) {
+        spectators.execute(new ScriptedSpectator(this, prefix + "-watch" + i));
+      }
+      try (ExecutorService players = Executors.newVirtualThreadPerTaskExecutor()) {
+        for (int pair = 0; pair < pairs; pair++) {
+          String challenger = prefix + (2 * pair);
+          String challenged = prefix + (2 * pair + 1);
+          players.execute(new ScriptedPlayer(this, challenger, challenged, true));
+          players.execute(new ScriptedPlayer(this, challenged, challenger, false));
+        }
+      } // waits for every player
+      playersDone = true;
+    } // waits for every spectator to see the end of its last game
+    progress.shutdownNow();
+    printReport(System.nanoTime() - start);
+    return 0;
+  }
+
+  /**
+   * Waits for the think time before a command.
+   *
+   * @throws InterruptedException if the player is interrupted
+   */
+  void think() throws InterruptedException {
+    if (thinkTime > 0) {
+      Thread.sleep(thinkTime);
+    }
+  }
+
+  private long totalCommands() {
+    long total = 0;
+    for (Histogram histogram : latencies.values()) {
+      total += histogram.count();
+    }
+    return total;
+  }
+
+  private void printProgress(long start) {
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf(
+        Locale.ROOT,
+        "[LoadTest] %.0f s: %d commands, %.0f commands/s, %d games over%n",
+        seconds,
+        totalCommands(),
+        totalCommands() / seconds,
+        gamesOver.sum() / 2);
+  }
+
+  private void printReport(long elapsedNanos) {
+    double seconds = elapsedNanos / 1e9;
+    long commands = totalCommands();
+    System.out.printf(
+        Locale.ROOT,
+        "[LoadTest] %d commands in %.2f s: %.0f commands/s, %.1f games/s, %d connection errors,"
+            + " %d moves watched, latencies in microseconds%n",
+        commands,
+        seconds,
+        commands / seconds,
+        gamesOver.sum() / 2 / seconds,
+        connectionErrors.sum(),
+        spectatorMoves.sum());
+    List<String[]> table = new ArrayList<>();
+    table.add(new String[] {"Command", "Count", "Errors", "Mean", "p50", "p90", "p99", "Max"});
+    for (Command command : Command.values()) {
+      Histogram histogram = latencies.get(command);
+      table.add(
+          new String[] {
+            command.name(),
+            Long.toString(histogram.count()),
+            Long.toString(errors.get(command).sum()),
+            micros(histogram.mean()),
+            micros(histogram.percentile(0.5)),
+            micros(histogram.percentile(0.9)),
+            micros(histogram.percentile(0.99)),
+            micros(histogram.max())
+          });
+    }
+    for (String[] row : table) {
+      System.out.printf(Locale.ROOT, "%-11s %9s %7s %9s %9s %9s %9s %9s%n", (Object[]) row);
+    }
+  }
+
+  private static String micros(double nanos) {
+    return String.format(Locale.ROOT, "%.0f", nanos / 1000);
+  }
+}
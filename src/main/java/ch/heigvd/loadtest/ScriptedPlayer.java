@@ -0,0 +1,251 @@
+package ch.heigvd.loadtest;
+
+import ch.heigvd.client.Client;
+import ch.heigvd.common.Norms;
+import ch.heigvd.common.Player;
+import ch.heigvd.server.Server;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One simulated player of a {@link LoadTest}: logs in, then plays the games of its pair and quits.
+ *
+ * <p>The challenger looks at the lobby and challenges its partner; the other player polls its
+ * challenges until the partner's one shows up and accepts it. A failed challenge ends the session
+ * of both players, since the pair cannot meet anymore.
+ */
+class ScriptedPlayer implements Runnable {
+  /** Milliseconds between two polls of the challenges. */
+  static final int POLL_INTERVAL = 10;
+
+  /**
+   * Milliseconds a player waits for its partner before giving up, the server's challenge timeout.
+   */
+  static final int CHALLENGE_WAIT = 30_000;
+
+  /** Milliseconds without any answer after which the server is considered stuck. */
+  static final int READ_TIMEOUT = 60_000;
+
+  private static final String PASSWORD = "loadtest";
+
+  private final LoadTest test;
+  private final String username;
+  private final String partner;
+  private final boolean challenger;
+
+  private BufferedReader in;
+  private BufferedWriter out;
+
+  ScriptedPlayer(LoadTest test, String username, String partner, boolean challenger) {
+    this.test = test;
+    this.username = username;
+    this.partner = partner;
+    this.challenger = challenger;
+  }
+
+  @Override
+  public void run() {
+    try (Socket socket = new Socket("localhost", test.port)) {
+      socket.setSoTimeout(READ_TIMEOUT);
+      // small commands must leave at once, not wait to be merged by the client
+      socket.setTcpNoDelay(true);
+      in =
+          new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      out =
+          new BufferedWriter(
+              new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      if (!Server.Message.OK.name().equals(in.readLine())) {
+        // the server is full
+        test.connectionErrors.increment();
+        return;
+      }
+      // answered with OK and the session token
+      if (!request(LoadTest.Command.LOGIN, Client.Message.LOGIN + " " + username + " " + PASSWORD)
+          .startsWith(Server.Message.OK.name())) {
+        test.errors.get(LoadTest.Command.LOGIN).increment();
+        return;
+      }
+      for (int i = 0; i < test.games; i++) {
+        request(LoadTest.Command.PLAYERS, Client.Message.PLAYERS.name());
+        String start = challenger ? challenge() : accept();
+        if (start == null) {
+          return;
+        }
+        play(start);
+      }
+      send(Client.Message.QUIT.name());
+    } catch (IOException e) {
+      test.connectionErrors.increment();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Challenges the partner once it is in the lobby, returning the GAMESTART line or null if the
+   * challenge failed. A partner still finishing the previous game is challenged again.
+   */
+  private String challenge() throws IOException, InterruptedException {
+    String arguments = partner;
+    if (test.rows != 3 || test.columns != 3 || test.k != 3) {
+      arguments += " " + test.rows + " " + test.columns + " " + test.k;
+    }
+    long deadline = System.currentTimeMillis() + CHALLENGE_WAIT;
+    while (System.currentTimeMillis() <= deadline) {
+      if (!isPartnerOnline()) {
+        Thread.sleep(POLL_INTERVAL);
+        continue;
+      }
+      String answer =
+          request(LoadTest.Command.CHALLENGE, Client.Message.CHALLENGE + " " + arguments);
+      if (answer.startsWith(Server.Message.GAMESTART.name())) {
+        return answer;
+      }
+      test.errors.get(LoadTest.Command.CHALLENGE).increment();
+      if (!answer.startsWith(Server.Message.ERROR.name())) {
+        // refused: the partner did not answer in time
+        return null;
+      }
+      Thread.sleep(POLL_INTERVAL);
+    }
+    // the partner never showed up
+    test.errors.get(LoadTest.Command.CHALLENGE).increment();
+    return null;
+  }
+
+  /** Returns whether the partner is logged in and not playing, using a filtered PLAYERS query. */
+  private boolean isPartnerOnline() throws IOException, InterruptedException {
+    // sorted by name, the partner comes before the longer usernames sharing its prefix
+    String answer =
+        request(
+            LoadTest.Command.PLAYERS, Client.Message.PLAYERS + " prefix=" + partner + " limit=1");
+    return answer.contains(" " + partner + Norms.ELEMENT_SEPARATOR)
+        && answer.endsWith(Norms.ELEMENT_SEPARATOR + Player.Status.ONLINE + Norms.OBJECT_SEPARATOR);
+  }
+
+  /** Waits for the partner's challenge and accepts it, returning the GAMESTART line or null. */
+  private String accept() throws IOException, InterruptedException {
+    long deadline = System.currentTimeMillis() + CHALLENGE_WAIT;
+    while (!isChallengedBy(
+        request(LoadTest.Command.CHALLENGES, Client.Message.CHALLENGES.name()))) {
+      if (System.currentTimeMillis() > deadline) {
+        test.errors.get(LoadTest.Command.ACCEPT).increment();
+        return null;
+      }
+      Thread.sleep(POLL_INTERVAL);
+    }
+    String answer = request(LoadTest.Command.ACCEPT, Client.Message.ACCEPT + " " + partner);
+    if (!answer.startsWith(Server.Message.GAMESTART.name())) {
+      test.errors.get(LoadTest.Command.ACCEPT).increment();
+      return null;
+    }
+    return answer;
+  }
+
+  /** Returns whether a CHALLENGES line contains the partner's challenge. */
+  private boolean isChallengedBy(String challenges) {
+    String[] parts = challenges.split(" ", 2);
+    if (parts.length < 2) {
+      return false;
+    }
+    for (String entry : parts[1].split(Norms.OBJECT_SEPARATOR)) {
+      if (entry.split(Norms.ELEMENT_SEPARATOR)[0].equals(partner)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Plays random legal moves until the game is over.
+   *
+   * @param start GAMESTART firstPlayer [rows columns k]
+   */
+  private void play(String start) throws IOException, InterruptedException {
+    String[] parts = start.split(" ");
+    boolean myTurn = Integer.parseInt(parts[1]) == 1;
+    int rows = parts.length >= 5 ? Integer.parseInt(parts[2]) : 3;
+    int columns = parts.length >= 5 ? Integer.parseInt(parts[3]) : 3;
+    boolean[] taken = new boolean[rows * columns];
+    int free = taken.length;
+    while (true) {
+      String line;
+      if (myTurn && free > 0) {
+        int cell = randomFreeCell(taken, free);
+        taken[cell] = true;
+        free--;
+        line =
+            request(
+                LoadTest.Command.PLAY,
+                Client.Message.PLAY + " " + cell / columns + " " + cell % columns);
+        if (line.equals(Server.Message.OK.name())) {
+          myTurn = false;
+          continue;
+        }
+        if (line.startsWith(Server.Message.ERROR.name())) {
+          test.errors.get(LoadTest.Command.PLAY).increment();
+          continue;
+        }
+      } else {
+        line = readLine();
+      }
+      if (line.startsWith(Server.Message.GAMEOVER.name())) {
+        test.gamesOver.increment();
+        return;
+      }
+      if (line.startsWith(Server.Message.PLAY.name())) {
+        String[] move = line.split(" ");
+        int cell = Integer.parseInt(move[1]) * columns + Integer.parseInt(move[2]);
+        if (!taken[cell]) {
+          taken[cell] = true;
+          free--;
+        }
+        myTurn = true;
+      }
+    }
+  }
+
+  private static int randomFreeCell(boolean[] taken, int free) {
+    int skip = ThreadLocalRandom.current().nextInt(free);
+    for (int cell = 0; ; cell++) {
+      if (!taken[cell] && skip-- == 0) {
+        return cell;
+      }
+    }
+  }
+
+  /** Sends a command and returns its answer, recording the latency. */
+  private String request(LoadTest.Command command, String line)
+      throws IOException, InterruptedException {
+    test.think();
+    long start = System.nanoTime();
+    send(line);
+    String answer = readLine();
+    test.latencies.get(command).recordSince(start);
+    return answer;
+  }
+
+  private void send(String line) throws IOException {
+    out.write(line + Norms.END_OF_LINE);
+    out.flush();
+  }
+
+  private String readLine() throws IOException {
+    String line;
+    while ((line = in.readLine()) != null && line.equals(Server.Message.PING.name())) {
+      // answered, so that a long wait for the opponent does not look like a dead client
+      send(Client.Message.PONG.name());
+    }
+    if (line == null) {
+      throw new IOException("Connection closed by the server");
+    }
+    return line;
+  }
+}
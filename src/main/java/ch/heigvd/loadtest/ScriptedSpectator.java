@@ -0,0 +1,125 @@
+package ch.heigvd.loadtest;
+
+import ch.heigvd.client.Client;
+import ch.heigvd.common.Norms;
+import ch.heigvd.server.Server;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One simulated spectator of a {@link LoadTest}: logs in, then watches random games of the players
+ * until they are all done.
+ *
+ * <p>Each game is watched from its BOARD snapshot to its END line, and the MOVE lines received are
+ * counted. A spectator never plays, so it only adds the broadcast of the moves to the server's
+ * load.
+ */
+class ScriptedSpectator implements Runnable {
+  private static final String PASSWORD = "loadtest";
+
+  private final LoadTest test;
+  private final String username;
+
+  private BufferedReader in;
+  private BufferedWriter out;
+
+  ScriptedSpectator(LoadTest test, String username) {
+    this.test = test;
+    this.username = username;
+  }
+
+  @Override
+  public void run() {
+    try (Socket socket = new Socket("localhost", test.port)) {
+      socket.setSoTimeout(ScriptedPlayer.READ_TIMEOUT);
+      socket.setTcpNoDelay(true);
+      in =
+          new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      out =
+          new BufferedWriter(
+              new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      if (!Server.Message.OK.name().equals(in.readLine())) {
+        test.connectionErrors.increment();
+        return;
+      }
+      // answered with OK and the session token
+      if (!request(LoadTest.Command.LOGIN, Client.Message.LOGIN + " " + username + " " + PASSWORD)
+          .startsWith(Server.Message.OK.name())) {
+        test.errors.get(LoadTest.Command.LOGIN).increment();
+        return;
+      }
+      while (!test.playersDone) {
+        String id = pickGame(request(LoadTest.Command.GAMES, Client.Message.GAMES.name()));
+        if (id == null) {
+          Thread.sleep(ScriptedPlayer.POLL_INTERVAL);
+          continue;
+        }
+        watch(id);
+      }
+      send(Client.Message.QUIT.name());
+    } catch (IOException e) {
+      test.connectionErrors.increment();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Returns the id of a random game of a GAMES line, or null if there is none. */
+  private static String pickGame(String games) {
+    String[] parts = games.split(" ", 2);
+    if (parts.length < 2 || parts[1].isEmpty()) {
+      return null;
+    }
+    String[] entries = parts[1].split(Norms.OBJECT_SEPARATOR);
+    String entry = entries[ThreadLocalRandom.current().nextInt(entries.length)];
+    return entry.split(Norms.ELEMENT_SEPARATOR)[0];
+  }
+
+  /** Watches a game until its END line. A game over before the WATCH is answered with an error. */
+  private void watch(String id) throws IOException, InterruptedException {
+    String line = request(LoadTest.Command.WATCH, Client.Message.WATCH + " " + id);
+    if (!line.startsWith(Server.Message.BOARD.name())) {
+      return;
+    }
+    while (!line.startsWith(Server.Message.END.name())) {
+      line = readLine();
+      if (line.startsWith(Server.Message.MOVE.name())) {
+        test.spectatorMoves.increment();
+      }
+    }
+  }
+
+  private String request(LoadTest.Command command, String line)
+      throws IOException, InterruptedException {
+    test.think();
+    long start = System.nanoTime();
+    send(line);
+    String answer = readLine();
+    test.latencies.get(command).recordSince(start);
+    return answer;
+  }
+
+  private void send(String line) throws IOException {
+    out.write(line + Norms.END_OF_LINE);
+    out.flush();
+  }
+
+  private String readLine() throws IOException {
+    String line;
+    while ((line = in.readLine()) != null && line.equals(Server.Message.PING.name())) {
+      // answered, so that a long wait for the opponent does not look like a dead client
+      send(Client.Message.PONG.name());
+    }
+    if (line == null) {
+      throw new IOException("Connection closed by the server");
+    }
+    return line;
+  }
+}
@@ -0,0 +1,125 @@
+package ch.heigvd.router;
+
+import ch.heigvd.common.Player;
+import ch.heigvd.server.PlayerRegistry;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import picocli.CommandLine;
+
+/**
+ * Front of a cluster of servers running on the same machine, each one owning a shard of the
+ * players.
+ *
+ * <p>Clients connect to the router as they would to a server. On LOGIN the router picks the home
+ * shard of the player from a hash of the username and then relays every line between the client and
+ * that shard, one {@link RouterSession} per client on its own virtual thread.
+ *
+ * <p>The router knows the shard of every logged in player. A CHALLENGE to a player of another shard
+ * moves the challenger to that shard before it is forwarded, so the game is hosted by the shard of
+ * the challenged player and the ACCEPT is local. The statistics follow the player through the admin
+ * ports, and a player's home shard always keeps its latest ones.
+ *
+ * <p>PLAYERS is answered by the router from the players of every shard. The lobby pushed after
+ * SUBSCRIBE only shows the players of the current shard of the player.
+ */
+@CommandLine.Command(
+    name = "router",
+    description = "Spread the players over several local servers started with --admin-port.")
+public class Router implements Callable<Integer> {
+  /** Milliseconds during which the merged list of players is reused by PLAYERS. */
+  static final int LOBBY_CACHE_MS = 100;
+
+  /** Length of the queue of connections waiting to be accepted. */
+  static final int ACCEPT_BACKLOG = 1024;
+
+  @CommandLine.Option(
+      names = {"-p", "--port"},
+      description = "Port to use (default: ${DEFAULT-VALUE}).",
+      defaultValue = "42069")
+  protected int port;
+
+  @CommandLine.Option(
+      names = {"-s", "--shard"},
+      description = "Game port and admin port of a local server, as port:adminPort. Repeatable.",
+      required = true)
+  protected List<String> shardSpecs;
+
+  /** Shards of the cluster, in the order given on the command line. */
+  final List<Shard> shards = new ArrayList<>();
+
+  /** Shard currently serving every logged in player. */
+  final ConcurrentHashMap<String, Shard> directory = new ConcurrentHashMap<>();
+
+  private PlayerRegistry lobby = new PlayerRegistry();
+  private long lobbyTime;
+
+  @Override
+  public Integer call() {
+    try {
+      for (String spec : shardSpecs) {
+        shards.add(Shard.parse(shards.size(), spec));
+      }
+    } catch (IllegalArgumentException e) {
+      System.out.println("[Router] Invalid shard: " + e.getMessage());
+      return 1;
+    }
+
+    try (ServerSocket serverSocket = new ServerSocket(port, ACCEPT_BACKLOG);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      System.out.println("[Router] Listening on port " + port + " for " + shards);
+      while (!serverSocket.isClosed()) {
+        Socket clientSocket = serverSocket.accept();
+        clientSocket.setTcpNoDelay(true);
+        executor.submit(new RouterSession(this, clientSocket));
+      }
+    } catch (IOException e) {
+      System.out.println("[Router] IO exception: " + e);
+      return 1;
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the shard where a player logs in and where its statistics are kept.
+   *
+   * @param username username of the player
+   * @return the home shard of the player
+   */
+  Shard home(String username) {
+    return shards.get(Math.floorMod(username.hashCode(), shards.size()));
+  }
+
+  /**
+   * Returns the players of every shard, fetched again at most every {@link #LOBBY_CACHE_MS}. A
+   * shard that cannot be reached is left out.
+   *
+   * @return a registry holding a copy of every connected player
+   */
+  synchronized PlayerRegistry lobby() {
+    long now = System.currentTimeMillis();
+    if (now - lobbyTime < LOBBY_CACHE_MS) {
+      return lobby;
+    }
+    PlayerRegistry merged = new PlayerRegistry();
+    for (Shard shard : shards) {
+      try {
+        for (String record : shard.players()) {
+          // a player moving between two shards is listed once
+          merged.add(Player.parse(record));
+        }
+      } catch (IOException | IllegalArgumentException e) {
+        System.out.println("[Router] Could not list the players of " + shard + ": " + e);
+      }
+    }
+    lobby = merged;
+    lobbyTime = now;
+    return lobby;
+  }
+}
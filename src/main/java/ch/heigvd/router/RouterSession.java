@@ -0,0 +1,351 @@
+package ch.heigvd.router;
+
+import static ch.heigvd.server.functions.Matchmaking.queryPlayers;
+import static ch.heigvd.server.functions.Matchmaking.sendListPlayers;
+
+import ch.heigvd.client.Client;
+import ch.heigvd.common.FrameReader;
+import ch.heigvd.common.FrameWriter;
+import ch.heigvd.common.Frames;
+import ch.heigvd.common.Norms;
+import ch.heigvd.server.CommandReader;
+import ch.heigvd.server.Server;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Connection of one client to the {@link Router}.
+ *
+ * <p>The session's thread reads the client's lines and forwards them to the shard currently serving
+ * the player, and a {@link Backend} thread relays the lines of that shard back. Only LOGIN, PLAYERS
+ * and the CHALLENGE to a player of another shard are handled by the router itself.
+ */
+class RouterSession implements Runnable {
+  private final Router router;
+  private final Socket socket;
+  private BufferedReader in;
+  private BufferedWriter out;
+
+  private String username;
+  private String password;
+  private Shard home;
+  private boolean subscribed;
+
+  /** Set between GAMESTART and GAMEOVER, while every line belongs to the shard's game loop. */
+  private volatile boolean inGame;
+
+  private volatile Backend backend;
+
+  RouterSession(Router router, Socket socket) {
+    this.router = router;
+    this.socket = socket;
+  }
+
+  @Override
+  public void run() {
+    try (socket;
+        BufferedReader in =
+            new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        BufferedWriter out =
+            new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+      this.in = in;
+      this.out = out;
+      write(Server.Message.OK + Norms.END_OF_LINE);
+      negotiate();
+      if (login()) {
+        relay();
+      }
+    } catch (IOException e) {
+      System.out.println("[Router] exception: " + e);
+    } finally {
+      leave();
+    }
+  }
+
+  /** Switches the client side to the binary protocol, the shards are always spoken to in text. */
+  private void negotiate() throws IOException {
+    in.mark(CommandReader.MAX_LENGTH);
+    if (!Frames.NEGOTIATION.equals(in.readLine())) {
+      in.reset();
+      return;
+    }
+    write(Server.Message.OK + Norms.END_OF_LINE);
+    in = new FrameReader(socket.getInputStream());
+    out = new BufferedWriter(new FrameWriter(socket.getOutputStream()));
+  }
+
+  /**
+   * Logs the player in on its home shard, relaying the answers. A RESUME is refused, and as on a
+   * server, anything else but LOGIN closes the connection.
+   *
+   * @return true once the player is logged in, false if the connection must be closed
+   */
+  private boolean login() throws IOException {
+    String line;
+    while ((line = in.readLine()) != null) {
+      String[] parts = line.split(" ", 3);
+      if (parts[0].equals(Client.Message.RESUME.name())) {
+        // sessions are not resumed through the router, the client logs in again
+        write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE);
+        continue;
+      }
+      if (parts[0].equals(Client.Message.PING.name())) {
+        // the client's heartbeat, while its user types the username
+        write(Server.Message.PONG + Norms.END_OF_LINE);
+        continue;
+      }
+      if (!parts[0].equals(Client.Message.LOGIN.name())) {
+        return false;
+      }
+      if (parts.length < 3) {
+        write(Server.Message.ERROR + " 2" + Norms.END_OF_LINE); // missing password
+        continue;
+      }
+      Shard shard = router.home(parts[1]);
+      Backend candidate;
+      try {
+        candidate = new Backend(shard);
+      } catch (IOException e) {
+        System.out.println("[Router] Could not reach " + shard + ": " + e);
+        write(Server.Message.ERROR + Norms.END_OF_LINE);
+        return false;
+      }
+      candidate.send(line);
+      String answer = candidate.readLine();
+      if (!isLoggedIn(answer)) {
+        write(answer + Norms.END_OF_LINE);
+        candidate.close();
+        continue;
+      }
+      // the session token of the shard is useless to the client, whose RESUME the router refuses
+      write(Server.Message.OK + Norms.END_OF_LINE);
+      username = parts[1];
+      password = parts[2];
+      home = shard;
+      router.directory.put(username, shard);
+      backend = candidate;
+      candidate.start();
+      return true;
+    }
+    return false;
+  }
+
+  /** Returns whether a shard answered a LOGIN with {@code OK token}. */
+  private static boolean isLoggedIn(String answer) {
+    return answer.split(" ", 2)[0].equals(Server.Message.OK.name());
+  }
+
+  /** Forwards the client's lines to its current shard until it quits or disconnects. */
+  private void relay() throws IOException {
+    String line;
+    while ((line = in.readLine()) != null) {
+      String[] parts = line.split(" ", 2);
+      String verb = parts[0];
+      String arguments = parts.length > 1 ? parts[1] : null;
+      if (!inGame && verb.equals(Client.Message.PLAYERS.name())) {
+        listPlayers(arguments);
+        continue;
+      }
+      if (!inGame && verb.equals(Client.Message.CHALLENGE.name()) && arguments != null) {
+        Shard target = router.directory.get(arguments.split(" ", 2)[0]);
+        if (target != null && target != backend.shard && !moveTo(target)) {
+          write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE); // player not found
+          continue;
+        }
+      }
+      if (verb.equals(Client.Message.QUIT.name())) {
+        backend.retire();
+        return;
+      }
+      if (verb.equals(Client.Message.SUBSCRIBE.name())) {
+        subscribed = true;
+      }
+      backend.send(line);
+    }
+  }
+
+  /** Answers PLAYERS with the players of every shard, in the format of the servers. */
+  private void listPlayers(String arguments) throws IOException {
+    StringWriter answer = new StringWriter();
+    try (BufferedWriter writer = new BufferedWriter(answer)) {
+      if (arguments == null) {
+        sendListPlayers(socket, writer, router.lobby());
+      } else {
+        queryPlayers(socket, writer, router.lobby(), arguments);
+      }
+    }
+    write(answer.toString());
+  }
+
+  /**
+   * Moves the player to another shard: logs it in there with its current statistics, then leaves
+   * the shard it was on. The challenges it had received there are cancelled.
+   *
+   * @param target shard to move to
+   * @return false if the player could not be logged in on the target, it then stays where it is
+   */
+  private boolean moveTo(Shard target) throws IOException {
+    Backend next = null;
+    try {
+      String record = backend.shard.player(username);
+      next = new Backend(target);
+      next.send(Client.Message.LOGIN + " " + username + " " + password);
+      String answer = next.readLine();
+      if (!isLoggedIn(answer)) {
+        throw new IOException("login answered with " + answer);
+      }
+      target.sync(record);
+    } catch (IOException e) {
+      System.out.println("[Router] Could not move " + username + " to " + target + ": " + e);
+      if (next != null) {
+        next.close();
+      }
+      return false;
+    }
+    backend.retire();
+    backend = next;
+    router.directory.put(username, target);
+    if (subscribed) {
+      next.send(Client.Message.SUBSCRIBE.name());
+    }
+    next.start();
+    return true;
+  }
+
+  /** Copies the statistics of the player from the shard it plays on to its home shard. */
+  private void syncHome(Shard current) {
+    if (current == home) {
+      return;
+    }
+    try {
+      home.sync(current.player(username));
+    } catch (IOException e) {
+      System.out.println("[Router] Could not save the statistics of " + username + ": " + e);
+    }
+  }
+
+  /** Disconnects from the current shard and forgets the player. */
+  private void leave() {
+    Backend current = backend;
+    if (current == null) {
+      return;
+    }
+    current.retired = true;
+    current.close();
+    router.directory.remove(username, current.shard);
+    syncHome(current.shard);
+  }
+
+  /** Writes whole lines to the client, from the session's thread or the backend's. */
+  private void write(String lines) throws IOException {
+    synchronized (socket) {
+      out.write(lines);
+      out.flush();
+    }
+  }
+
+  /** Connection of the session to one shard, relaying the shard's lines on its own thread. */
+  private final class Backend implements Runnable {
+    final Shard shard;
+    private final Socket socket;
+    private final BufferedReader in;
+    private final BufferedWriter out;
+
+    /** Set once the player left this shard, its remaining lines are dropped. */
+    volatile boolean retired;
+
+    /** Connects to the shard and waits for its greeting. */
+    Backend(Shard shard) throws IOException {
+      this.shard = shard;
+      this.socket = shard.connect();
+      this.in =
+          new BufferedReader(
+              new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      this.out =
+          new BufferedWriter(
+              new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      String greeting = in.readLine();
+      if (!Server.Message.OK.name().equals(greeting)) {
+        socket.close();
+        throw new IOException(shard + " is full");
+      }
+    }
+
+    void send(String line) throws IOException {
+      out.write(line + Norms.END_OF_LINE);
+      out.flush();
+    }
+
+    String readLine() throws IOException {
+      String line = in.readLine();
+      if (line == null) {
+        throw new EOFException(shard + " closed the connection");
+      }
+      return line;
+    }
+
+    void start() {
+      Thread.ofVirtual().start(this);
+    }
+
+    /** Leaves the shard. The shard closes the connection, which ends the relaying thread. */
+    void retire() {
+      retired = true;
+      try {
+        send(Client.Message.QUIT.name());
+      } catch (IOException e) {
+        close();
+      }
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        System.out.println("[Router] Could not close socket: " + e);
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        String line;
+        while ((line = in.readLine()) != null && !retired) {
+          boolean gameOver = line.startsWith(Server.Message.GAMEOVER.name());
+          if (line.startsWith(Server.Message.GAMESTART.name())) {
+            inGame = true;
+          } else if (gameOver) {
+            inGame = false;
+          }
+          write(line + Norms.END_OF_LINE);
+          if (gameOver) {
+            syncHome(shard);
+          }
+        }
+      } catch (IOException e) {
+        if (!retired) {
+          System.out.println("[Router] exception: " + e);
+        }
+      } finally {
+        close();
+        if (!retired) {
+          // the shard is gone, so is the session
+          try {
+            RouterSession.this.socket.close();
+          } catch (IOException e) {
+            System.out.println("[Router] Could not close socket: " + e);
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package ch.heigvd.router;
+
+import ch.heigvd.common.Norms;
+import ch.heigvd.server.AdminServer;
+import ch.heigvd.server.Server;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * One server of the cluster, running on the same machine as the router.
+ *
+ * <p>Players are connected to the game port. The admin port ({@link AdminServer}) is used by the
+ * router itself, over a single connection shared by every session, to list the players of the shard
+ * and to move statistics from one shard to another.
+ */
+final class Shard {
+  final int index;
+  final int port;
+  final int adminPort;
+
+  private Socket admin;
+  private BufferedReader adminIn;
+  private BufferedWriter adminOut;
+
+  Shard(int index, int port, int adminPort) {
+    this.index = index;
+    this.port = port;
+    this.adminPort = adminPort;
+  }
+
+  /**
+   * Parses a shard given as {@code port:adminPort}.
+   *
+   * @param index position of the shard in the cluster
+   * @param spec game port and admin port separated by a colon
+   * @return the shard
+   * @throws IllegalArgumentException if the spec is malformed
+   */
+  static Shard parse(int index, String spec) {
+    String[] ports = spec.split(":");
+    if (ports.length != 2) {
+      throw new IllegalArgumentException("Expected port:adminPort, got " + spec);
+    }
+    return new Shard(index, Integer.parseInt(ports[0].trim()), Integer.parseInt(ports[1].trim()));
+  }
+
+  /**
+   * Opens a player connection to the game port.
+   *
+   * @return the connected socket
+   * @throws IOException if the shard cannot be reached
+   */
+  Socket connect() throws IOException {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    socket.setTcpNoDelay(true);
+    return socket;
+  }
+
+  /**
+   * Returns the statistics of a player, connected to this shard or not.
+   *
+   * @param username username of the player
+   * @return the record name,wins,losses,draws,winStreak,rating
+   * @throws IOException if the shard cannot be reached
+   */
+  String player(String username) throws IOException {
+    return request(AdminServer.Message.PLAYER + " " + username);
+  }
+
+  /**
+   * Overwrites the statistics of a player on this shard.
+   *
+   * @param record statistics as returned by {@link #player(String)}
+   * @throws IOException if the shard cannot be reached or refuses the record
+   */
+  void sync(String record) throws IOException {
+    String answer = request(AdminServer.Message.SYNC + " " + record);
+    if (!Server.Message.OK.name().equals(answer)) {
+      throw new IOException(this + " refused the statistics " + record);
+    }
+  }
+
+  /**
+   * Lists the players connected to this shard.
+   *
+   * @return one name,wins,losses,draws,winStreak,rating,status record per player
+   * @throws IOException if the shard cannot be reached
+   */
+  List<String> players() throws IOException {
+    String answer = request(AdminServer.Message.PLAYERS.name());
+    return answer.isEmpty() ? List.of() : List.of(answer.split(Norms.OBJECT_SEPARATOR));
+  }
+
+  /** Sends one command to the admin port and returns its one line answer. */
+  private synchronized String request(String line) throws IOException {
+    try {
+      return exchange(line);
+    } catch (IOException e) {
+      // the shard may have been restarted since the last request
+      closeAdmin();
+      return exchange(line);
+    }
+  }
+
+  private String exchange(String line) throws IOException {
+    if (admin == null) {
+      admin = new Socket(InetAddress.getLoopbackAddress(), adminPort);
+      admin.setTcpNoDelay(true);
+      adminIn =
+          new BufferedReader(new InputStreamReader(admin.getInputStream(), StandardCharsets.UTF_8));
+      adminOut =
+          new BufferedWriter(
+              new OutputStreamWriter(admin.getOutputStream(), StandardCharsets.UTF_8));
+    }
+    adminOut.write(line + Norms.END_OF_LINE);
+    adminOut.flush();
+    String answer = adminIn.readLine();
+    if (answer == null) {
+      throw new IOException(this + " closed its admin port");
+    }
+    return answer;
+  }
+
+  private void closeAdmin() {
+    try {
+      if (admin != null) {
+        admin.close();
+      }
+    } catch (IOException e) {
+      System.out.println("[Router] Could not close admin connection: " + e);
+    }
+    admin = null;
+  }
+
+  @Override
+  public String toString() {
+    return "shard " + index + " (port " + port + ")";
+  }
+}
@@ -0,0 +1,204 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Norms;
+import ch.heigvd.common.Player;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Administration port, only reachable from the machine running the server.
+ *
+ * <p>The protocol is line based like the game's: {@code METRICS} is answered with the {@link
+ * Metrics#report()} followed by an empty line, {@code QUIT} closes the connection and anything else
+ * is answered with {@code ERROR}.
+ *
+ * <p>The other commands let a {@link ch.heigvd.router.Router} run this server as one shard of a
+ * cluster. {@code PLAYERS} is answered with every connected player on one line, as {@code
+ * name,wins,losses,draws,winStreak,rating,status;...}. {@code PLAYER name} is answered with the
+ * statistics of one player, connected or not, as {@code name,wins,losses,draws,winStreak,rating}.
+ * {@code SYNC name,wins,losses,draws,winStreak,rating} overwrites the statistics of a player, who
+ * moved to this shard or played on another one, and is answered with {@code OK}.
+ *
+ * <p>Tournaments are run from this port too. {@code TOURNAMENT format rounds [rows columns k]}
+ * creates a tournament open for registration, whose format is {@code SWISS}, {@code ELIMINATION} or
+ * {@code ROBIN}, and is answered with {@code OK id}. The rounds only matter for a Swiss tournament,
+ * 0 playing enough rounds to find a winner. {@code START id} closes the registration and pairs the
+ * first round, and is answered with {@code OK}, or {@code ERROR} if the tournament has already
+ * started or has less than two players. {@code STANDINGS id} is answered as on the game port.
+ */
+public class AdminServer implements Runnable {
+  /** Commands understood by the admin port. */
+  public enum Message {
+    METRICS,
+    PLAYERS,
+    PLAYER,
+    SYNC,
+    TOURNAMENT,
+    START,
+    STANDINGS,
+    QUIT
+  }
+
+  private final ServerSocket serverSocket;
+
+  private AdminServer(ServerSocket serverSocket) {
+    this.serverSocket = serverSocket;
+  }
+
+  /**
+   * Opens the admin port on the loopback interface and starts accepting connections.
+   *
+   * @param port port to listen on
+   * @throws IOException if the port cannot be opened
+   */
+  public static void start(int port) throws IOException {
+    ServerSocket serverSocket = new ServerSocket(port, 16, InetAddress.getLoopbackAddress());
+    Thread.ofPlatform().name("admin").daemon().start(new AdminServer(serverSocket));
+    System.out.println("[Server] Admin port listening on localhost:" + port);
+  }
+
+  @Override
+  public void run() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        Thread.ofVirtual().start(() -> serve(socket));
+      } catch (IOException e) {
+        System.out.println("[Server] Admin port exception: " + e);
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (socket;
+        BufferedReader in =
+            new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        BufferedWriter out =
+            new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] parts = line.split(" ", 2);
+        Message message;
+        try {
+          message = Message.valueOf(parts[0]);
+        } catch (IllegalArgumentException e) {
+          message = null;
+        }
+        if (message == Message.QUIT) {
+          return;
+        }
+        out.write(answer(message, parts.length > 1 ? parts[1] : "") + Norms.END_OF_LINE);
+        out.flush();
+      }
+    } catch (IOException e) {
+      System.out.println("[Server] Admin connection exception: " + e);
+    }
+  }
+
+  private static String answer(Message message, String argument) {
+    if (message == null) {
+      return Server.Message.ERROR.name();
+    }
+    switch (message) {
+      case METRICS:
+        return Server.metrics.report();
+      case PLAYERS:
+        StringBuilder sb = new StringBuilder();
+        for (Player p : Server.players.snapshot()) {
+          sb.append(p)
+              .append(Norms.ELEMENT_SEPARATOR)
+              .append(p.status)
+              .append(Norms.OBJECT_SEPARATOR);
+        }
+        return sb.toString();
+      case PLAYER:
+        Player connected = Server.players.get(argument);
+        return (connected != null ? connected : Server.stats.load(argument)).toString();
+      case SYNC:
+        try {
+          sync(Player.parse(argument));
+          return Server.Message.OK.name();
+        } catch (IllegalArgumentException e) {
+          return Server.Message.ERROR.name();
+        }
+      case TOURNAMENT:
+        return createTournament(argument);
+      case START:
+        try {
+          Tournament tournament = Server.tournaments.get(Integer.parseInt(argument));
+          return tournament != null && tournament.start()
+              ? Server.Message.OK.name()
+              : Server.Message.ERROR.name();
+        } catch (NumberFormatException e) {
+          return Server.Message.ERROR.name();
+        }
+      case STANDINGS:
+        try {
+          Tournament tournament = Server.tournaments.get(Integer.parseInt(argument));
+          return tournament != null ? tournament.standingsMessage() : Server.Message.ERROR.name();
+        } catch (NumberFormatException e) {
+          return Server.Message.ERROR.name();
+        }
+      default:
+        return Server.Message.ERROR.name();
+    }
+  }
+
+  /** Creates a tournament from {@code format rounds [rows columns k]}, answered with its id. */
+  private static String createTournament(String argument) {
+    String[] parts = argument.split(" ");
+    if (parts.length != 2 && parts.length != 5) {
+      return Server.Message.ERROR.name();
+    }
+    try {
+      Tournament.Format format = Tournament.Format.valueOf(parts[0].toUpperCase(Locale.ROOT));
+      int rounds = Integer.parseInt(parts[1]);
+      int size = Game.DEFAULT_SIZE;
+      Tournament tournament =
+          parts.length == 2
+              ? Server.tournaments.create(format, rounds, size, size, size)
+              : Server.tournaments.create(
+                  format,
+                  rounds,
+                  Integer.parseInt(parts[2]),
+                  Integer.parseInt(parts[3]),
+                  Integer.parseInt(parts[4]));
+      return tournament != null
+          ? Server.Message.OK + " " + tournament.id
+          : Server.Message.ERROR.name();
+    } catch (IllegalArgumentException e) {
+      // an unknown format or a number that is not one
+      return Server.Message.ERROR.name();
+    }
+  }
+
+  /** Overwrites the statistics of a player with the ones of the given record. */
+  private static void sync(Player record) {
+    Player connected = Server.players.get(record.username);
+    if (connected == null) {
+      Server.stats.save(record);
+      return;
+    }
+    synchronized (connected) {
+      connected.wins = record.wins;
+      connected.losses = record.losses;
+      connected.draws = record.draws;
+      connected.winStreak = record.winStreak;
+      connected.rating = record.rating;
+    }
+    Server.stats.save(connected);
+    Server.players.statsChanged(connected);
+    Server.lobby.changed(connected);
+  }
+}
@@ -0,0 +1,297 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Frames;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Inbound side of a connection served by {@link NioServer}.
+ *
+ * <p>The selector thread hands every read to {@link #receive(ByteBuffer)}, which decodes the
+ * complete lines straight from its read buffer into a character buffer owned by the connection.
+ * Only the bytes of an incomplete line are copied aside until the rest arrives. Once the binary
+ * protocol is negotiated, the frames are gathered in a byte buffer and each complete one is
+ * expanded in place into the characters of its line by {@link Frames#decode}. The worker running
+ * the connection's {@link CommandReader} then reads these characters, so a line reaches the command
+ * decoder without a String or a queue node.
+ *
+ * <p>A read never goes past the end of a line, and the lines waiting are counted, so {@link
+ * #ready()} tells whether the command decoder can run a command without blocking.
+ */
+public final class ChannelReader extends Reader {
+  /** Bytes of {@link Frames#NEGOTIATION}, compared with the first line. */
+  private static final byte[] NEGOTIATION = Frames.NEGOTIATION.getBytes(StandardCharsets.US_ASCII);
+
+  /** Initial size of the buffers, enough for the commands of a player. */
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final CharsetDecoder decoder =
+      StandardCharsets.UTF_8
+          .newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  /** Characters of the complete lines, from {@link #head} to {@link #tail}. Guarded by this. */
+  private char[] chars = new char[INITIAL_CAPACITY];
+
+  /** View of {@link #chars} the decoder writes to. */
+  private CharBuffer view = CharBuffer.wrap(chars);
+
+  /** Start of the characters not read yet. Guarded by this. */
+  private int head;
+
+  /** End of the characters decoded. Guarded by this. */
+  private int tail;
+
+  /** Complete lines from {@link #head}, the one being read included. Guarded by this. */
+  private int lines;
+
+  /** Set once the connection is closed. Guarded by this. */
+  private boolean ended;
+
+  /** Whether a read waits for a line, which the NIO workers never do. Guarded by this. */
+  private boolean waiting;
+
+  /** Bytes of the incomplete line, in write mode. Only used by the selector thread. */
+  private ByteBuffer partial = ByteBuffer.allocate(0);
+
+  /** Whether the first line has been received. */
+  private boolean negotiated;
+
+  /** Bytes of the incomplete frame, in write mode. Null while the text protocol is used. */
+  private ByteBuffer frames;
+
+  /**
+   * Decodes the lines or frames received. Called by the selector thread with its read buffer.
+   *
+   * <p>If the first line is {@link Frames#NEGOTIATION}, it is not handed to the command decoder:
+   * {@link #binary()} becomes true and the bytes following it are left in the buffer, to be
+   * received again once the connection has answered.
+   *
+   * @param bytes bytes read from the channel, in read mode; consumed except after the negotiation
+   * @return true if at least one line is complete
+   * @throws ProtocolException if a line or a frame is too long, or the bytes are not valid frames
+   */
+  public boolean receive(ByteBuffer bytes) throws ProtocolException {
+    return frames != null ? receiveFrames(bytes) : receiveLines(bytes);
+  }
+
+  /**
+   * Returns whether the client asked for the binary protocol.
+   *
+   * @return true once the negotiation line has been received
+   */
+  public boolean binary() {
+    return frames != null;
+  }
+
+  /** Marks the end of the stream, after the lines already received. */
+  public synchronized void end() {
+    ended = true;
+    notifyAll();
+  }
+
+  @Override
+  public synchronized int read(char[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    // only complete lines are decoded
+    while (lines == 0) {
+      if (ended) {
+        return -1;
+      }
+      waiting = true;
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } finally {
+        waiting = false;
+      }
+    }
+    int count = Math.min(length, tail - head);
+    for (int i = head; i < head + count; i++) {
+      if (chars[i] == '\n') {
+        count = i - head + 1;
+        lines--;
+        break;
+      }
+    }
+    System.arraycopy(chars, head, buffer, offset, count);
+    head += count;
+    if (head == tail) {
+      head = 0;
+      tail = 0;
+    }
+    return count;
+  }
+
+  /**
+   * Returns whether a line is waiting, or the end of the stream.
+   *
+   * @return true if a read does not block
+   */
+  @Override
+  public synchronized boolean ready() {
+    return lines > 0 || ended;
+  }
+
+  @Override
+  public void close() {
+    end();
+  }
+
+  /** Cuts the text protocol into lines. */
+  private boolean receiveLines(ByteBuffer bytes) throws ProtocolException {
+    boolean complete = false;
+    while (bytes.hasRemaining()) {
+      int newline = indexOfNewline(bytes);
+      int length = (newline < 0 ? bytes.limit() : newline) - bytes.position();
+      if (partial.position() + length > NioServer.MAX_LINE_LENGTH) {
+        throw new ProtocolException("Line too long");
+      }
+      if (newline < 0) {
+        keep(bytes);
+        break;
+      }
+      int limit = bytes.limit();
+      bytes.limit(newline);
+      ByteBuffer line = bytes;
+      if (partial.position() > 0) {
+        keep(bytes);
+        line = partial.flip();
+      }
+      boolean negotiation = !negotiated && isNegotiation(line);
+      if (!negotiation) {
+        add(line);
+        complete = true;
+      }
+      partial.clear();
+      bytes.limit(limit).position(newline + 1);
+      if (!negotiated) {
+        negotiated = true;
+        if (negotiation) {
+          // room for the largest incomplete frame and a whole read after it
+          frames = ByteBuffer.allocate(Frames.MAX_PAYLOAD + 8 + NioServer.READ_BUFFER_SIZE);
+          return complete;
+        }
+      }
+    }
+    return complete;
+  }
+
+  /** Decodes the frames of the binary protocol. */
+  private boolean receiveFrames(ByteBuffer bytes) throws ProtocolException {
+    boolean complete = false;
+    frames.put(bytes);
+    frames.flip();
+    int length;
+    while ((length = Frames.length(frames, Frames.MAX_PAYLOAD)) >= 0) {
+      addFrame(length);
+      complete = true;
+    }
+    // a frame too long has been rejected by its header, only the incomplete one is left
+    frames.compact();
+    return complete;
+  }
+
+  /** Decodes a complete line, given without its end of line. */
+  private synchronized void add(ByteBuffer line) {
+    // a byte never decodes to more than one character
+    reserve(line.remaining() + 1);
+    // commands are ASCII, the decoder only takes over from the first other byte
+    int i = line.position();
+    for (; i < line.limit() && line.get(i) >= 0; i++) {
+      chars[tail++] = (char) line.get(i);
+    }
+    if (i < line.limit()) {
+      view.limit(chars.length).position(tail);
+      decoder.reset();
+      decoder.decode(line.position(i), view, true);
+      decoder.flush(view);
+      tail = view.position();
+    }
+    chars[tail++] = '\n';
+    lines++;
+    if (waiting) {
+      notifyAll();
+    }
+  }
+
+  /** Decodes the complete frame of the given length at the start of {@link #frames}. */
+  private synchronized void addFrame(int length) throws ProtocolException {
+    reserve(Frames.maxLineLength(length) + 1);
+    view.limit(chars.length).position(tail);
+    Frames.decode(frames, view, decoder);
+    tail = view.position();
+    chars[tail++] = '\n';
+    lines++;
+    if (waiting) {
+      notifyAll();
+    }
+  }
+
+  /** Makes room for more characters, moving the unread ones to the start or growing the array. */
+  private void reserve(int room) {
+    if (tail + room <= chars.length) {
+      return;
+    }
+    char[] target = chars;
+    if (tail - head + room > chars.length) {
+      target = new char[Math.max(chars.length * 2, tail - head + room)];
+      view = CharBuffer.wrap(target);
+    }
+    System.arraycopy(chars, head, target, 0, tail - head);
+    chars = target;
+    tail -= head;
+    head = 0;
+  }
+
+  /** Copies the bytes of an incomplete line aside. */
+  private void keep(ByteBuffer bytes) {
+    if (partial.remaining() < bytes.remaining()) {
+      // receiveLines already checked that the line is not too long
+      int needed = partial.position() + bytes.remaining();
+      int capacity = Math.max(INITIAL_CAPACITY, partial.capacity() * 2);
+      ByteBuffer grown =
+          ByteBuffer.allocate(Math.min(Math.max(capacity, needed), NioServer.MAX_LINE_LENGTH));
+      partial = grown.put(partial.flip());
+    }
+    partial.put(bytes);
+  }
+
+  private static int indexOfNewline(ByteBuffer bytes) {
+    for (int i = bytes.position(); i < bytes.limit(); i++) {
+      if (bytes.get(i) == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Compares a line, maybe ending with a carriage return, with the negotiation line. */
+  private static boolean isNegotiation(ByteBuffer line) {
+    int length = line.remaining();
+    if (length > 0 && line.get(line.limit() - 1) == '\r') {
+      length--;
+    }
+    if (length != NEGOTIATION.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (line.get(line.position() + i) != NEGOTIATION[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,155 @@
+package ch.heigvd.server;
+
+import ch.heigvd.client.Client;
+
+/**
+ * One command received from a client, decoded in place by a {@link CommandReader}.
+ *
+ * <p>The command is a view over the reader's buffer: it is reused for every line and only valid
+ * until the next call to {@link CommandReader#next()}. The verb and the integer arguments are
+ * decoded without allocating; only {@link #argument(int)} and {@link #rest(int)} create strings.
+ *
+ * <p>Arguments are separated by single spaces, so two consecutive spaces make an empty argument.
+ */
+public final class Command {
+  /** Value returned by {@link #intArgument(int)} for a missing or malformed integer. */
+  public static final int INVALID = Integer.MIN_VALUE;
+
+  /** Maximum number of arguments told apart, the following ones are only part of {@link #rest}. */
+  static final int MAX_ARGUMENTS = 15;
+
+  char[] chars;
+  int start;
+  int end;
+  Client.Message verb;
+
+  /** Start of every token, the verb first, followed by the end of the last token plus one. */
+  final int[] tokens = new int[MAX_ARGUMENTS + 2];
+
+  int tokenCount;
+
+  /**
+   * Returns the message named by the first word.
+   *
+   * @return the message, or null if the word is not a known message
+   */
+  public Client.Message verb() {
+    return verb;
+  }
+
+  /**
+   * Returns the number of arguments following the verb, at most {@link #MAX_ARGUMENTS}.
+   *
+   * @return number of arguments
+   */
+  public int argumentCount() {
+    return tokenCount - 1;
+  }
+
+  /**
+   * Returns whether anything but spaces follows the verb.
+   *
+   * @return true if the command has arguments
+   */
+  public boolean hasArguments() {
+    for (int i = tokenEnd(0); i < end; i++) {
+      if (chars[i] != ' ') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parses an argument as a decimal integer, without allocating.
+   *
+   * @param index index of the argument, 0 for the first one after the verb
+   * @return the integer, or {@link #INVALID} if the argument is missing, not an integer or out of
+   *     range
+   */
+  public int intArgument(int index) {
+    if (index < 0 || index >= argumentCount()) {
+      return INVALID;
+    }
+    int i = tokens[index + 1];
+    int last = tokenEnd(index + 1);
+    boolean negative = i < last && chars[i] == '-';
+    if (negative) {
+      i++;
+    }
+    if (i == last) {
+      return INVALID;
+    }
+    int value = 0;
+    for (; i < last; i++) {
+      char c = chars[i];
+      if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - (c - '0')) / 10) {
+        return INVALID;
+      }
+      value = value * 10 + c - '0';
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Returns an argument.
+   *
+   * @param index index of the argument, 0 for the first one after the verb
+   * @return the argument, or an empty string if it is missing
+   */
+  public String argument(int index) {
+    if (index < 0 || index >= argumentCount()) {
+      return "";
+    }
+    int from = tokens[index + 1];
+    return new String(chars, from, tokenEnd(index + 1) - from);
+  }
+
+  /**
+   * Returns the text from an argument to the end of the line, spaces included, like the last part
+   * of {@code line.split(" ", index + 2)}.
+   *
+   * @param index index of the first argument returned, 0 for the first one after the verb
+   * @return the text, or an empty string if the argument is missing
+   */
+  public String rest(int index) {
+    if (index < 0 || index >= argumentCount()) {
+      return "";
+    }
+    return new String(chars, tokens[index + 1], end - tokens[index + 1]);
+  }
+
+  /**
+   * Compares an argument with a string without allocating.
+   *
+   * @param index index of the argument, 0 for the first one after the verb
+   * @param expected expected text
+   * @return true if the argument exists and equals the text
+   */
+  public boolean argumentEquals(int index, String expected) {
+    if (index < 0 || index >= argumentCount()) {
+      return false;
+    }
+    int from = tokens[index + 1];
+    int length = tokenEnd(index + 1) - from;
+    if (length != expected.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (chars[from + i] != expected.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return new String(chars, start, end - start);
+  }
+
+  private int tokenEnd(int token) {
+    // tokens are followed by a space, except the last one which ends the line
+    return token + 1 < tokenCount ? tokens[token + 1] - 1 : tokens[tokenCount];
+  }
+}
@@ -0,0 +1,154 @@
+package ch.heigvd.server;
+
+import ch.heigvd.client.Client;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.ProtocolException;
+import java.util.Arrays;
+
+/**
+ * Decodes the commands of one connection without allocating per line.
+ *
+ * <p>Characters are read into a buffer owned by the connection, and every line is decoded in place
+ * into the same {@link Command}: the verb is matched against a table precomputed from {@link
+ * Client.Message}, and the arguments are only located, so that a PLAY command is handled without
+ * creating a single string. {@code readLine()} and {@code split(" ")} allocated a string for the
+ * line and an array plus a string per part.
+ *
+ * <p>The reader never reads past the end of the current line from a {@link ChannelReader} or a
+ * {@link ch.heigvd.common.FrameReader}, which hand out one line at most per read, so the NIO
+ * workers keep knowing whether a line is waiting from {@link ChannelReader#ready()} alone.
+ */
+public final class CommandReader {
+  /** Longest line accepted, longer lines are a protocol error. */
+  public static final int MAX_LENGTH = NioServer.MAX_LINE_LENGTH;
+
+  /** Open addressing table of the verbs, at least twice as large as needed to keep probes short. */
+  private static final Client.Message[] VERBS =
+      new Client.Message[Integer.highestOneBit(Client.Message.values().length) << 2];
+
+  private static final char[][] VERB_NAMES = new char[VERBS.length][];
+
+  static {
+    for (Client.Message message : Client.Message.values()) {
+      char[] name = message.name().toCharArray();
+      int slot = hash(name, 0, name.length);
+      while (VERBS[slot] != null) {
+        slot = (slot + 1) & (VERBS.length - 1);
+      }
+      VERBS[slot] = message;
+      VERB_NAMES[slot] = name;
+    }
+  }
+
+  private final Reader in;
+  private final char[] buffer = new char[MAX_LENGTH + 1];
+  private final Command command = new Command();
+
+  /** Start of the characters not decoded yet. */
+  private int position;
+
+  /** End of the characters read. */
+  private int limit;
+
+  /**
+   * Creates a decoder reading from the given reader.
+   *
+   * @param in reader delivering the client's lines
+   */
+  public CommandReader(Reader in) {
+    this.in = in;
+    command.chars = buffer;
+  }
+
+  /**
+   * Reads and decodes the next line, blocking until it is complete.
+   *
+   * @return the command, reused by the next call, or null at the end of the stream
+   * @throws IOException if the reader fails or the line is longer than {@link #MAX_LENGTH}
+   */
+  public Command next() throws IOException {
+    int scanned = position;
+    int newline;
+    while ((newline = indexOfNewline(scanned)) < 0) {
+      scanned = limit;
+      if (position > 0) {
+        // make room at the end of the buffer
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        scanned -= position;
+        limit -= position;
+        position = 0;
+      }
+      if (limit == buffer.length) {
+        throw new ProtocolException("Line longer than " + MAX_LENGTH + " characters");
+      }
+      int read = in.read(buffer, limit, buffer.length - limit);
+      if (read < 0) {
+        if (limit == position) {
+          return null;
+        }
+        // last line without end of line
+        newline = limit;
+        break;
+      }
+      limit += read;
+    }
+    int end = newline;
+    if (end > position && buffer[end - 1] == '\r') {
+      end--;
+    }
+    decode(position, end);
+    position = Math.min(newline + 1, limit);
+    return command;
+  }
+
+  private int indexOfNewline(int from) {
+    for (int i = from; i < limit; i++) {
+      if (buffer[i] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void decode(int start, int end) {
+    Command c = command;
+    c.start = start;
+    c.end = end;
+    int[] tokens = c.tokens;
+    int count = 0;
+    tokens[count++] = start;
+    int i = start;
+    while (true) {
+      while (i < end && buffer[i] != ' ') {
+        i++;
+      }
+      if (i == end || count == tokens.length - 1) {
+        break;
+      }
+      tokens[count++] = ++i;
+    }
+    tokens[count] = i;
+    c.tokenCount = count;
+    c.verb = lookup(start, count > 1 ? tokens[1] - 1 : i);
+  }
+
+  private Client.Message lookup(int start, int end) {
+    for (int slot = hash(buffer, start, end); VERBS[slot] != null; ) {
+      char[] name = VERB_NAMES[slot];
+      if (Arrays.equals(name, 0, name.length, buffer, start, end)) {
+        return VERBS[slot];
+      }
+      slot = (slot + 1) & (VERBS.length - 1);
+    }
+    return null;
+  }
+
+  private static int hash(char[] chars, int start, int end) {
+    int h = end - start;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + chars[i];
+    }
+    return (h ^ (h >>> 7)) & (VERBS.length - 1);
+  }
+}
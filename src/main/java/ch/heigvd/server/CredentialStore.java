@@ -0,0 +1,162 @@
+package ch.heigvd.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * In-memory index of the accounts stored in the login file.
+ *
+ * <p>The file is read once when the store is opened. Lookups then never touch the disk, and new
+ * accounts are appended by a single writer thread that groups every account queued meanwhile into
+ * one write and one fsync. A login storm costs one hash lookup per login instead of a scan of the
+ * file.
+ *
+ * <p>The file format is unchanged: one {@code username password} pair per line.
+ */
+public class CredentialStore {
+  /** Maximum number of accounts written with a single fsync. */
+  private static final int MAX_BATCH = 1024;
+
+  /** Result of an authentication attempt. */
+  public enum Result {
+    /** The account exists and the password matches. */
+    OK,
+    /** The account did not exist and has been created with this password. */
+    CREATED,
+    /** The account exists but the password does not match. */
+    WRONG_PASSWORD
+  }
+
+  /** Future of the accounts read from the file, which are on disk already. */
+  private static final CompletableFuture<Void> LOADED = CompletableFuture.completedFuture(null);
+
+  private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+  private final LinkedBlockingQueue<PendingAccount> pending = new LinkedBlockingQueue<>();
+  private final FileChannel channel;
+
+  private CredentialStore(FileChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+   * Loads the login file, creating it if needed, and starts the writer thread.
+   *
+   * @param file path of the login file
+   * @return the opened store
+   * @throws IOException if the file cannot be read or opened for writing
+   */
+  public static CredentialStore open(Path file) throws IOException {
+    FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    CredentialStore store = new CredentialStore(channel);
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] loginParts = line.split(" ", 2);
+        if (loginParts.length == 2) {
+          // the first occurrence wins, as with the former sequential scan
+          store.accounts.putIfAbsent(loginParts[0], new Account(loginParts[1], LOADED));
+        }
+      }
+    }
+    Thread writer = new Thread(store::writeLoop, "credential-writer");
+    writer.setDaemon(true);
+    writer.start();
+    System.out.println("[Server] Loaded " + store.accounts.size() + " accounts from " + file);
+    return store;
+  }
+
+  /**
+   * Checks the credentials of a user, creating the account if the username is unknown. A new
+   * account is only reported as created, and only lets anyone log in, once it has been written to
+   * disk.
+   *
+   * @param username username sent by the client
+   * @param password password sent by the client
+   * @return the result of the authentication
+   * @throws IOException if a new account could not be persisted
+   */
+  public Result authenticate(String username, String password) throws IOException {
+    Account account = new Account(password, new CompletableFuture<>());
+    Account known = accounts.putIfAbsent(username, account);
+    if (known != null) {
+      // a concurrent login creating the account may not have written it yet
+      awaitWritten(username, known);
+      return known.password.equals(password) ? Result.OK : Result.WRONG_PASSWORD;
+    }
+    pending.add(new PendingAccount(username + " " + password + "\n", account.written));
+    try {
+      awaitWritten(username, account);
+    } catch (IOException e) {
+      accounts.remove(username, account);
+      throw e;
+    }
+    return Result.CREATED;
+  }
+
+  /**
+   * Returns the number of known accounts.
+   *
+   * @return number of accounts
+   */
+  public int size() {
+    return accounts.size();
+  }
+
+  private static void awaitWritten(String username, Account account) throws IOException {
+    try {
+      account.written.join();
+    } catch (RuntimeException e) {
+      throw new IOException("Could not persist account " + username, e.getCause());
+    }
+  }
+
+  /** Appends queued accounts in batches, one fsync per batch. Runs on the writer thread. */
+  private void writeLoop() {
+    ArrayList<PendingAccount> batch = new ArrayList<>();
+    while (true) {
+      try {
+        batch.add(pending.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      pending.drainTo(batch, MAX_BATCH - 1);
+      StringBuilder lines = new StringBuilder();
+      for (PendingAccount account : batch) {
+        lines.append(account.line);
+      }
+      try {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(lines.toString());
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+        channel.force(false);
+        for (PendingAccount account : batch) {
+          account.written.complete(null);
+        }
+      } catch (IOException e) {
+        System.out.println("[Server] Could not write login file: " + e);
+        for (PendingAccount account : batch) {
+          account.written.completeExceptionally(e);
+        }
+      }
+      batch.clear();
+    }
+  }
+
+  /** Known account, completing {@code written} once it is on disk. */
+  private record Account(String password, CompletableFuture<Void> written) {}
+
+  /** Account waiting to be appended to the file. */
+  private record PendingAccount(String line, CompletableFuture<Void> written) {}
+}
@@ -0,0 +1,397 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Player;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of the games, replayed when the server restarts after a crash.
+ *
+ * <p>Each game is logged as a {@code START id player1 player2 rows columns k first} line, one
+ * {@code MOVE id position} line per move and an {@code END id player...} line carrying the new
+ * statistics of the players it was recorded for, as {@code username,wins,losses,draws,winStreak,
+ * rating}. Appending a record only copies it into memory. A background thread writes everything
+ * appended meanwhile in one write and one fsync, and the records arriving during an fsync make up
+ * the next batch, so a move never waits on the disk.
+ *
+ * <p>When the server starts, the journal is replayed. The statistics of the finished games that had
+ * not reached the statistics log are restored, and the unfinished games are kept as interrupted
+ * games until their players {@link #interrupted(String) rejoin} them. The journal is then compacted
+ * to the interrupted games. It is compacted again to the games being played every {@link
+ * #COMPACTION_RECORDS} records, so that a long-running server does not replay an endless file.
+ */
+public class GameJournal {
+  /** Name of the game journal. */
+  public static final String JOURNAL_FILE = "games.log";
+
+  /** Records written after which the journal is compacted, a few tens of megabytes. */
+  static final int COMPACTION_RECORDS = 1_000_000;
+
+  private final Path file;
+  private final Thread flusher;
+
+  /** Journal being appended to, replaced by each compaction. Guarded by {@link #writeLock}. */
+  private FileChannel channel;
+
+  /** Records written since the last compaction. Guarded by {@link #writeLock}. */
+  private int written;
+
+  private final Object writeLock = new Object();
+
+  /** Records not written yet, guarded by {@link #lock}. */
+  private StringBuilder pending = new StringBuilder();
+
+  /** Buffer being written, swapped with {@link #pending} by each flush. */
+  private StringBuilder writing = new StringBuilder();
+
+  private int pendingRecords;
+  private final Object lock = new Object();
+
+  /** Interrupted games by username of their players, until they rejoin or the games expire. */
+  private final ConcurrentHashMap<String, GameSession> interrupted = new ConcurrentHashMap<>();
+
+  /** Games found unfinished by the replay, until {@link #recover(int)} turns them into sessions. */
+  private final Map<Integer, Replayed> unfinished;
+
+  private GameJournal(Path file, FileChannel channel, Map<Integer, Replayed> unfinished) {
+    this.file = file;
+    this.channel = channel;
+    this.unfinished = unfinished;
+    this.flusher = new Thread(this::flushLoop, "journal-flusher");
+  }
+
+  /**
+   * Replays and compacts the journal, then starts the background flusher. Must be called once the
+   * statistics and the bots are loaded.
+   *
+   * @param file path of the journal
+   * @return the opened journal
+   * @throws IOException if the journal cannot be read or rewritten
+   */
+  public static GameJournal open(Path file) throws IOException {
+    Map<Integer, Replayed> unfinished = new LinkedHashMap<>();
+    int lastId = 0;
+    int restored = 0;
+    if (Files.exists(file)) {
+      try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] parts = line.split(" ");
+          try {
+            int id = Integer.parseInt(parts[1]);
+            switch (parts[0]) {
+              case "START" -> {
+                lastId = Math.max(lastId, id);
+                unfinished.put(id, new Replayed(replayStart(parts), new ArrayList<>()));
+              }
+              case "MOVE" -> {
+                Replayed replayed = unfinished.get(id);
+                if (replayed != null) {
+                  Game game = replayed.game;
+                  int position = Integer.parseInt(parts[2]);
+                  Player mover = game.isPlayer1Turn.get() ? game.player1 : game.player2;
+                  if (game.makeMove(position, mover.username)) {
+                    replayed.moves.add(position);
+                  }
+                }
+              }
+              case "END" -> {
+                unfinished.remove(id);
+                for (int i = 2; i < parts.length; i++) {
+                  if (Server.stats.recover(Player.parse(parts[i]))) {
+                    restored++;
+                  }
+                }
+              }
+              default -> {}
+            }
+          } catch (RuntimeException e) {
+            // a torn last line after a crash, its record had not been written
+          }
+        }
+      }
+    }
+    // the restored statistics must be on disk before their END lines are compacted away
+    Server.stats.flush();
+
+    // compaction: only the interrupted games are kept, swapped in atomically
+    StringBuilder records = new StringBuilder();
+    for (var entry : unfinished.entrySet()) {
+      Replayed replayed = entry.getValue();
+      int[] moves = replayed.moves.stream().mapToInt(Integer::intValue).toArray();
+      appendGame(records, entry.getKey(), replayed.game, moves);
+    }
+    GameJournal journal = new GameJournal(file, LogFiles.replace(file, records), unfinished);
+    journal.flusher.setDaemon(true);
+    journal.flusher.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(journal::flush, "journal-shutdown"));
+    // the games started from now on must not reuse the id of an interrupted game
+    GameSession.skipIds(lastId);
+    System.out.println(
+        "[Server] Replayed "
+            + file
+            + ": "
+            + unfinished.size()
+            + " unfinished games, statistics of "
+            + restored
+            + " players restored");
+    return journal;
+  }
+
+  /**
+   * Turns the unfinished games of the replay into interrupted games, which can be watched and
+   * rejoined. A game whose last move was logged but not its end is finished at once. Must be called
+   * once the journal is {@link Server#journal}.
+   *
+   * @param rejoinTimeout seconds the players of an interrupted game have to rejoin it
+   */
+  public void recover(int rejoinTimeout) {
+    for (var entry : unfinished.entrySet()) {
+      GameSession session = GameSession.recover(entry.getKey(), entry.getValue().game);
+      if (session.game.isOver.get()) {
+        session.expire();
+        continue;
+      }
+      Server.games.add(session);
+      for (Player player : new Player[] {session.game.player1, session.game.player2}) {
+        if (!player.isBot) {
+          interrupted.put(player.username, session);
+        }
+      }
+    }
+    unfinished.clear();
+    if (!interrupted.isEmpty()) {
+      CompletableFuture.delayedExecutor(rejoinTimeout, TimeUnit.SECONDS).execute(this::expire);
+    }
+  }
+
+  /**
+   * Logs a game that has just started.
+   *
+   * @param session session of the game
+   */
+  public void started(GameSession session) {
+    append(startRecord(session.id, session.game));
+  }
+
+  /**
+   * Logs a move. Called under the session's lock, so the moves of a game are logged in order.
+   *
+   * @param session session of the game
+   * @param position board position of the move
+   */
+  void moved(GameSession session, int position) {
+    append(moveRecord(session.id, position));
+  }
+
+  /**
+   * Logs the end of a game and forgets it if it was interrupted.
+   *
+   * @param session session of the game
+   * @param recorded players whose statistics were updated, none if the game was abandoned
+   */
+  void finished(GameSession session, List<Player> recorded) {
+    StringBuilder sb = new StringBuilder("END ").append(session.id);
+    for (Player player : recorded) {
+      sb.append(' ').append(player);
+    }
+    append(sb.append('\n').toString());
+    interrupted.remove(session.game.player1.username, session);
+    interrupted.remove(session.game.player2.username, session);
+  }
+
+  /**
+   * Returns the interrupted game of a player.
+   *
+   * @param username username of the player
+   * @return the session of the game, or null if the player has no game to rejoin
+   */
+  public GameSession interrupted(String username) {
+    return interrupted.get(username);
+  }
+
+  /**
+   * Forgets the interrupted game of a player who rejoined it.
+   *
+   * @param username username of the player
+   * @param session session of the game, which may not be an interrupted one
+   */
+  void rejoined(String username, GameSession session) {
+    interrupted.remove(username, session);
+  }
+
+  /** Ends the interrupted games whose players did not all rejoin in time. */
+  private void expire() {
+    for (GameSession session : new HashSet<>(interrupted.values())) {
+      session.expire();
+    }
+  }
+
+  private void append(String record) {
+    synchronized (lock) {
+      if (pending.isEmpty()) {
+        // the flusher only sleeps when there is nothing to write
+        lock.notify();
+      }
+      pending.append(record);
+      pendingRecords++;
+    }
+  }
+
+  /** Writes and syncs the pending records. Runs on the flusher thread and at shutdown. */
+  void flush() {
+    synchronized (writeLock) {
+      int records;
+      synchronized (lock) {
+        StringBuilder batch = pending;
+        pending = writing;
+        writing = batch;
+        records = pendingRecords;
+        pendingRecords = 0;
+      }
+      if (records == 0) {
+        return;
+      }
+      long start = System.nanoTime();
+      try {
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(writing));
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+        channel.force(false);
+        Server.metrics.journalSynced(records, start);
+      } catch (IOException e) {
+        System.out.println("[Server] Could not write game journal: " + e);
+      }
+      writing.setLength(0);
+      written += records;
+      if (written >= COMPACTION_RECORDS) {
+        compact();
+      }
+    }
+  }
+
+  /**
+   * Rewrites the journal with the games being played, each as its START line and the moves giving
+   * its position. Called with the write lock held, once the pending records have been written.
+   *
+   * <p>The records appended meanwhile stay pending and are written to the new journal. Some of them
+   * may repeat a move or a start already rewritten, which the replay ignores or plays again from
+   * scratch.
+   */
+  private void compact() {
+    long start = System.nanoTime();
+    // the statistics of the games ended so far must be on disk before their END lines go away
+    Server.stats.flush();
+    StringBuilder records = new StringBuilder();
+    int games = 0;
+    for (GameSession session : Server.games.sessions()) {
+      int[] moves = session.replayMoves();
+      if (moves == null) {
+        continue;
+      }
+      games++;
+      appendGame(records, session.id, session.game, moves);
+    }
+    try {
+      FileChannel previous = channel;
+      channel = LogFiles.replace(file, records);
+      written = 0;
+      previous.close();
+      System.out.println(
+          "[Server] Compacted "
+              + file
+              + " to "
+              + games
+              + " games in "
+              + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+              + " ms");
+    } catch (IOException e) {
+      // the current journal is still complete, the compaction is tried again after the next batch
+      System.out.println("[Server] Could not compact game journal: " + e);
+    }
+  }
+
+  private void flushLoop() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        synchronized (lock) {
+          while (pending.isEmpty()) {
+            lock.wait();
+          }
+        }
+        flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Rebuilds a game from its START line, its players waiting for their owner to rejoin. */
+  private static Game replayStart(String[] parts) {
+    Game game =
+        new Game(
+            replayedPlayer(parts[2]),
+            replayedPlayer(parts[3]),
+            Integer.parseInt(parts[4]),
+            Integer.parseInt(parts[5]),
+            Integer.parseInt(parts[6]));
+    game.player1Starts = parts[7].equals("1");
+    game.isPlayer1Turn.set(game.player1Starts);
+    return game;
+  }
+
+  /** Returns the bot of that name, or a stand-in for a player who is not connected yet. */
+  private static Player replayedPlayer(String username) {
+    Player bot = Server.players.get(username);
+    return bot != null && bot.isBot ? bot : Server.stats.load(username);
+  }
+
+  private static String startRecord(int id, Game game) {
+    return "START "
+        + id
+        + " "
+        + game.player1.username
+        + " "
+        + game.player2.username
+        + " "
+        + game.rows
+        + " "
+        + game.columns
+        + " "
+        + game.k
+        + " "
+        + (game.player1Starts ? 1 : 2)
+        + "\n";
+  }
+
+  /** Appends the START line of a game and the MOVE lines giving its position. */
+  private static void appendGame(StringBuilder records, int id, Game game, int[] moves) {
+    records.append(startRecord(id, game));
+    for (int position : moves) {
+      records.append(moveRecord(id, position));
+    }
+  }
+
+  private static String moveRecord(int id, int position) {
+    return "MOVE " + id + " " + position + "\n";
+  }
+
+  /** Unfinished game rebuilt by the replay, with its moves in the order they were played. */
+  private record Replayed(Game game, List<Integer> moves) {}
+}
@@ -0,0 +1,684 @@
+package ch.heigvd.server;
+
+import ch.heigvd.client.Client;
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Norms;
+import ch.heigvd.common.Player;
+import ch.heigvd.server.bots.BotService;
+import ch.heigvd.server.functions.GameFunctions;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One game hosted by the server, driven by the players' moves instead of by waiting threads.
+ *
+ * <p>The session owns the {@link Game} and the connections of both players. Each in-game line of a
+ * player is handed to {@link #handle} by whichever thread decoded it. Under the session's lock, the
+ * move is applied, and the answer to the mover and the move relayed to the opponent are queued for
+ * their seats. After the last move, both results are recorded and GAMEOVER is queued for both
+ * players. Each seat's lines are written in order by at most one virtual thread at a time, outside
+ * the lock, so a slow connection never holds up the game. No thread waits for the opponent to play:
+ * with {@code --io nio} a game holds no thread between two moves, and in blocking mode each handler
+ * only blocks reading its own socket.
+ *
+ * <p>A bot's moves are computed by the {@link BotService} when it is the bot's turn. They are
+ * played through {@link #move} like the moves of a human.
+ *
+ * <p>Any client may watch the game. Each move is built once into a {@link SharedLine} and queued
+ * for every {@link Spectator}, which is written to by its own virtual thread, so the players never
+ * wait for a spectator. A spectator that falls behind receives a snapshot of the board instead.
+ *
+ * <p>The start, the moves and the end of the game are logged in the {@link GameJournal}. A game
+ * interrupted by a restart of the server is rebuilt from it with both seats waiting for their
+ * player to {@link #rejoin} it. The seat of a player who lost its connection is {@link #park
+ * parked} until the player resumes its session.
+ */
+public class GameSession {
+  private static final AtomicInteger lastId = new AtomicInteger();
+  private static final ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
+
+  /** Id of the game, as listed by GAMES. */
+  public final int id;
+
+  /** Game played in this session. */
+  public final Game game;
+
+  /**
+   * Completed with the game as soon as it is over, before GAMEOVER is sent, or once it is dropped
+   * without any result. Its dependents run under the session's lock.
+   */
+  final CompletableFuture<Game> ended = new CompletableFuture<>();
+
+  private final Seat seat1;
+  private final Seat seat2;
+  private final List<Spectator> spectators = new CopyOnWriteArrayList<>();
+  private boolean finished;
+
+  /** Snapshot of the current position, shared by the spectators resynchronized before a move. */
+  private Snapshot snapshot;
+
+  /**
+   * Creates the session of a game whose players are set.
+   *
+   * @param game new game
+   */
+  public GameSession(Game game) {
+    this(lastId.incrementAndGet(), game);
+  }
+
+  private GameSession(int id, Game game) {
+    this.id = id;
+    this.game = game;
+    this.seat1 = new Seat(game.player1);
+    this.seat2 = new Seat(game.player2);
+  }
+
+  /**
+   * Rebuilds the session of a game interrupted by a restart. The seats of the bots are taken, the
+   * other ones wait for their player to rejoin.
+   *
+   * @param id id of the game before the restart
+   * @param game game replayed from the journal
+   * @return the session
+   */
+  static GameSession recover(int id, Game game) {
+    GameSession session = new GameSession(id, game);
+    session.seat1.absent = !game.player1.isBot;
+    session.seat2.absent = !game.player2.isBot;
+    return session;
+  }
+
+  /**
+   * Creates the session of a game started by the server, such as a tournament's. Like the seats of
+   * an interrupted game, the seats wait for their player to {@link #rejoin} it.
+   *
+   * @param game new game
+   * @return the session
+   */
+  static GameSession unclaimed(Game game) {
+    GameSession session = new GameSession(game);
+    session.seat1.absent = !game.player1.isBot;
+    session.seat2.absent = !game.player2.isBot;
+    return session;
+  }
+
+  /**
+   * Makes sure the games started from now on get an id above those of the interrupted games.
+   *
+   * @param used largest id found in the journal
+   */
+  static void skipIds(int used) {
+    lastId.accumulateAndGet(used, Math::max);
+  }
+
+  /**
+   * Attaches the connection of a player who has been sent GAMESTART. The lines sent to the player
+   * before, such as an opponent's first move, are written now.
+   *
+   * @param player player of this game
+   * @param out writer of the player's connection
+   */
+  public synchronized void join(Player player, BufferedWriter out) {
+    Seat seat = seat(player);
+    seat.out = out;
+    if (!seat.pending.isEmpty()) {
+      seat.send(seat.pending.toString());
+      seat.pending.setLength(0);
+    }
+  }
+
+  /**
+   * Seats a player in the game it was playing when the server restarted. The player is sent the
+   * BOARD line of the game, then the game goes on as usual.
+   *
+   * @param player logged in player
+   * @param out writer of the player's connection
+   * @return false if the game is over or the player's seat is already taken
+   */
+  public synchronized boolean rejoin(Player player, BufferedWriter out) {
+    Seat seat = null;
+    for (Seat candidate : new Seat[] {seat1, seat2}) {
+      if (candidate.absent && candidate.player.username.equals(player.username)) {
+        seat = candidate;
+      }
+    }
+    if (finished || seat == null) {
+      return false;
+    }
+    bind(seat, player);
+    seat.absent = false;
+    attach(seat, out);
+    Server.journal.rejoined(player.username, this);
+    Seat opponent = seat == seat1 ? seat2 : seat1;
+    if (opponent.player.isBot && GameFunctions.isMyTurn(game, opponent.player.username)) {
+      Server.bots.requestMove(this, opponent.player);
+    }
+    return true;
+  }
+
+  /**
+   * Stops writing to the connection of a player who lost it. The lines sent to the player are
+   * buffered until it {@link #resume resumes}, and the game goes on meanwhile.
+   *
+   * @param player player of this game
+   */
+  synchronized void park(Player player) {
+    seat(player).out = null;
+  }
+
+  /**
+   * Attaches the new connection of a parked player. The player is sent the BOARD line of the game,
+   * then the game goes on as usual.
+   *
+   * @param player parked player
+   * @param out writer of the player's new connection
+   * @return false if the game ended while the player was away
+   */
+  public synchronized boolean resume(Player player, BufferedWriter out) {
+    Seat seat = seat(player);
+    if (seat.over) {
+      return false;
+    }
+    attach(seat, out);
+    return true;
+  }
+
+  /**
+   * Ends an interrupted game whose players did not all rejoin in time. A player who did not rejoin
+   * leaves the game, and a game nobody rejoined is dropped without any result. A game replayed up
+   * to its last move is simply finished, and a game both players rejoined goes on.
+   */
+  synchronized void expire() {
+    if (finished) {
+      return;
+    }
+    if (game.isOver.get()) {
+      finish();
+    } else if (seat1.absent && seat2.absent) {
+      finished = true;
+      seat1.over = true;
+      seat2.over = true;
+      ended.complete(game);
+      Server.games.remove(this);
+      Server.journal.finished(this, List.of());
+      snapshot = null;
+      broadcast(game.moveCount.get() + 1, endMessage() + Norms.END_OF_LINE);
+      spectators.clear();
+    } else if (seat1.absent || seat2.absent) {
+      leave(seat1.absent ? seat1 : seat2);
+    }
+  }
+
+  /**
+   * Returns whether the player is still in this game, i.e. has not been sent GAMEOVER. The lines of
+   * a player who is no longer in the game belong to the lobby, so once the game is over this waits
+   * for the lines queued for the player to be written.
+   *
+   * @param player player of this game
+   * @return true until the player has been sent GAMEOVER
+   */
+  public boolean isPlaying(Player player) {
+    Seat seat;
+    synchronized (this) {
+      seat = seat(player);
+      if (!seat.over) {
+        return true;
+      }
+    }
+    // the answers of the lobby must not overtake GAMEOVER
+    seat.awaitWritten();
+    return false;
+  }
+
+  /**
+   * Handles one line sent by a player during the game. A PLAY line plays a move, QUIT leaves the
+   * game, and anything else is answered with {@code ERROR 1}.
+   *
+   * @param player player who sent the line
+   * @param command decoded line
+   * @return false if the player quit and its connection must be closed
+   */
+  public boolean handle(Player player, Command command) {
+    long start = System.nanoTime();
+    Client.Message message = command.verb();
+    if (message == Client.Message.QUIT) {
+      leave(player);
+      return false;
+    }
+    if (message == Client.Message.PLAY) {
+      int row = command.intArgument(0);
+      int column = command.intArgument(1);
+      if (command.argumentCount() == 2 && row != Command.INVALID && column != Command.INVALID) {
+        move(player, game.position(row, column));
+      } else {
+        reject(player);
+      }
+      Server.metrics.command(Client.Message.PLAY, start);
+      return true;
+    }
+    if (message == null) {
+      Server.metrics.unknownCommand();
+    }
+    reject(player);
+    return true;
+  }
+
+  /**
+   * Plays a move. The mover is answered with OK or {@code ERROR 1}, the opponent is sent the move,
+   * and the game is finished if the move ended it.
+   *
+   * @param player player making the move
+   * @param position board position of the move
+   * @return true if the move has been played
+   */
+  public synchronized boolean move(Player player, int position) {
+    Seat mover = seat(player);
+    if (!game.makeMove(position, player.username)) {
+      if (!game.isOver.get()) {
+        mover.send(Server.Message.ERROR + " 1" + Norms.END_OF_LINE);
+      }
+      // otherwise the opponent left meanwhile and GAMEOVER has been sent
+      return false;
+    }
+    Server.journal.moved(this, position);
+    mover.send(Server.Message.OK + Norms.END_OF_LINE);
+    Seat opponent = mover == seat1 ? seat2 : seat1;
+    opponent.send(
+        Server.Message.PLAY
+            + " "
+            + position / game.columns
+            + " "
+            + position % game.columns
+            + Norms.END_OF_LINE,
+        game.lastMoveNanos);
+    snapshot = null;
+    if (!spectators.isEmpty()) {
+      broadcast(
+          game.moveCount.get(),
+          Server.Message.MOVE
+              + " "
+              + id
+              + " "
+              + symbol(player)
+              + " "
+              + position / game.columns
+              + " "
+              + position % game.columns
+              + Norms.END_OF_LINE);
+    }
+    if (game.isOver.get()) {
+      finish();
+    } else if (opponent.player.isBot) {
+      Server.bots.requestMove(this, opponent.player);
+    }
+    return true;
+  }
+
+  /**
+   * Ends the game because the player left it, by QUIT or by disconnecting. The opponent wins. Does
+   * nothing if the game is already over.
+   *
+   * @param player player leaving the game
+   */
+  public synchronized void leave(Player player) {
+    leave(seat(player));
+  }
+
+  private void leave(Seat seat) {
+    if (finished) {
+      return;
+    }
+    seat.left = true;
+    game.abandon(seat.player.username);
+    finish();
+  }
+
+  /**
+   * Adds a spectator to the game. Its first line is a snapshot of the board.
+   *
+   * @param out writer of the spectator's connection
+   * @param sink connection queuing shared bytes, or null to write through {@code out}
+   * @return the spectator, to be passed to {@link #unwatch}
+   */
+  synchronized Spectator watch(BufferedWriter out, SharedLine.Sink sink) {
+    Spectator spectator = new Spectator(this, out, sink);
+    if (!finished) {
+      spectators.add(spectator);
+    }
+    spectator.schedule();
+    return spectator;
+  }
+
+  /**
+   * Stops sending the game to a spectator.
+   *
+   * @param spectator spectator returned by {@link #watch}
+   */
+  void unwatch(Spectator spectator) {
+    spectator.closed = true;
+    spectators.remove(spectator);
+  }
+
+  /**
+   * Returns the number of clients watching the game.
+   *
+   * @return the number of spectators
+   */
+  int spectatorCount() {
+    return spectators.size();
+  }
+
+  /**
+   * Returns the positions played so far, for the journal: the moves of each player alternate from
+   * the first mover. Replaying them gives the current position, not the order of the moves.
+   *
+   * @return the positions, or null once the game is over
+   */
+  synchronized int[] replayMoves() {
+    if (finished) {
+      return null;
+    }
+    long[] first = game.getCells(game.player1Starts ? game.player1Symbol : game.player2Symbol);
+    long[] second = game.getCells(game.player1Starts ? game.player2Symbol : game.player1Symbol);
+    int[] moves = new int[game.moveCount.get()];
+    int firstNext = -1;
+    int secondNext = -1;
+    for (int i = 0; i < moves.length; i++) {
+      if (i % 2 == 0) {
+        firstNext = nextSet(first, firstNext + 1);
+        moves[i] = firstNext;
+      } else {
+        secondNext = nextSet(second, secondNext + 1);
+        moves[i] = secondNext;
+      }
+    }
+    return moves;
+  }
+
+  /** Returns the first position at or after {@code from} set in a bitset of cells. */
+  private static int nextSet(long[] cells, int from) {
+    int position = from;
+    while (!Game.isSet(cells, position)) {
+      position++;
+    }
+    return position;
+  }
+
+  /**
+   * Returns the current position as {@code BOARD id player1 player2 rows columns k next cells},
+   * where next is the player to move, or - once the game is over, and cells lists the board row by
+   * row as X, O or . for an empty cell. A finished game is followed by its END line.
+   *
+   * @return the snapshot and the number of lines of the game it covers
+   */
+  synchronized Snapshot snapshot() {
+    if (snapshot != null) {
+      return snapshot;
+    }
+    StringBuilder sb =
+        new StringBuilder(Server.Message.BOARD.name())
+            .append(' ')
+            .append(id)
+            .append(' ')
+            .append(game.player1.username)
+            .append(' ')
+            .append(game.player2.username)
+            .append(' ')
+            .append(game.rows)
+            .append(' ')
+            .append(game.columns)
+            .append(' ')
+            .append(game.k)
+            .append(' ');
+    if (finished) {
+      sb.append('-');
+    } else {
+      sb.append(game.isPlayer1Turn.get() ? game.player1.username : game.player2.username);
+    }
+    sb.append(' ');
+    for (int position = 0; position < game.cells(); position++) {
+      String cell = game.getCell(position);
+      sb.append(cell.equals(Game.EMPTY) ? "." : cell);
+    }
+    sb.append(Norms.END_OF_LINE);
+    int sequence = game.moveCount.get();
+    if (finished) {
+      sb.append(endMessage()).append(Norms.END_OF_LINE);
+      sequence++;
+    }
+    snapshot = new Snapshot(sequence, new SharedLine(sb.toString()));
+    return snapshot;
+  }
+
+  /** Writes to a player coming back to its seat, starting with the current board. */
+  private void attach(Seat seat, BufferedWriter out) {
+    seat.out = out;
+    // the moves played while the player was away are part of the board
+    seat.pending.setLength(0);
+    seat.send(snapshot().line().lines);
+  }
+
+  /** Answers a line that is not a valid move. */
+  private synchronized void reject(Player player) {
+    seat(player).send(Server.Message.ERROR + " 1" + Norms.END_OF_LINE);
+  }
+
+  /** Records the results and sends GAMEOVER to the players still connected. */
+  private void finish() {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    for (Seat seat : new Seat[] {seat1, seat2}) {
+      if (seat.absent) {
+        // a player who has not rejoined since the restart is credited through its current stats
+        Player connected = Server.players.get(seat.player.username);
+        bind(seat, connected != null ? connected : Server.stats.load(seat.player.username));
+      }
+    }
+    ended.complete(game);
+    // both ratings change, each from the other one's rating before the game
+    int rating1 = seat1.player.rating;
+    int rating2 = seat2.player.rating;
+    List<Player> recorded = new ArrayList<>(2);
+    for (Seat seat : new Seat[] {seat1, seat2}) {
+      seat.over = true;
+      Player player = seat.player;
+      // a player leaving a game loses it, so that leaving never saves a rating
+      boolean gone = seat.left && !player.isBot;
+      if (!player.isBot && !seat.absent && !gone) {
+        player.challenges.clear();
+        Server.lobby.challengesChanged(player);
+        player.status = Player.Status.ONLINE;
+      }
+      int code = GameFunctions.recordResult(game, player, seat == seat1 ? rating2 : rating1);
+      recorded.add(player);
+      if (!gone) {
+        // nobody is left to tell
+        seat.send(Server.Message.GAMEOVER + " " + code + Norms.END_OF_LINE);
+      }
+    }
+    Server.games.remove(this);
+    Server.journal.finished(this, recorded);
+    snapshot = null;
+    broadcast(game.moveCount.get() + 1, endMessage() + Norms.END_OF_LINE);
+    // the spectators still write the lines they have queued
+    spectators.clear();
+  }
+
+  /** Queues one line, built once, for every spectator. */
+  private void broadcast(int sequence, String line) {
+    SharedLine shared = new SharedLine(line);
+    for (Spectator spectator : spectators) {
+      spectator.offer(sequence, shared);
+    }
+  }
+
+  /** Returns {@code END id winner}, the winner being - for a draw. */
+  private String endMessage() {
+    return Server.Message.END + " " + id + " " + (game.winner == null ? "-" : game.winner.username);
+  }
+
+  private String symbol(Player player) {
+    return player == game.player1 ? game.player1Symbol : game.player2Symbol;
+  }
+
+  private Seat seat(Player player) {
+    return player == game.player1 ? seat1 : seat2;
+  }
+
+  /** Gives a seat to another instance of its player, such as the one of a rejoining connection. */
+  private void bind(Seat seat, Player player) {
+    if (game.winner == seat.player) {
+      game.winner = player;
+    }
+    if (seat == seat1) {
+      game.player1 = player;
+    } else {
+      game.player2 = player;
+    }
+    seat.player = player;
+  }
+
+  /**
+   * Position of the game as sent to the spectators.
+   *
+   * @param sequence number of moves covered, plus one for a finished game
+   * @param line BOARD line, followed by END for a finished game
+   */
+  record Snapshot(int sequence, SharedLine line) {}
+
+  /**
+   * One side of the game: its player and the connection the lines are written to. The lines are
+   * queued under the session's lock and written by a virtual thread, like those of a {@link
+   * Spectator}, but none is ever dropped.
+   */
+  private static final class Seat {
+    Player player;
+
+    /**
+     * Writer of the player's connection, null until the player has been sent GAMESTART and while it
+     * is parked.
+     */
+    BufferedWriter out;
+
+    /** Lines sent while the player had no connection. */
+    final StringBuilder pending = new StringBuilder();
+
+    /** Set once the player has been sent GAMEOVER, or has left. */
+    boolean over;
+
+    /** Set when the player quit or disconnected. */
+    boolean left;
+
+    /** Set while the player of an interrupted game has not rejoined it. */
+    boolean absent;
+
+    /** Lines queued and not written yet, guarded by itself. */
+    private final ArrayDeque<Push> queue = new ArrayDeque<>();
+
+    /** Lines queued and not flushed yet, the one being written included. Guarded by queue. */
+    private int unwritten;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    Seat(Player player) {
+      this.player = player;
+    }
+
+    /** Sends whole lines to the player. Bots are not sent anything. */
+    void send(String lines) {
+      send(lines, 0);
+    }
+
+    /**
+     * Queues whole lines for the player's connection, or keeps them until it has one. Called under
+     * the session's lock, so the lines of a seat are queued in order.
+     *
+     * @param lines lines ending with their end of line
+     * @param moved time of the move relayed by the lines, or 0 if they relay no move
+     */
+    void send(String lines, long moved) {
+      if (player.isBot || left) {
+        return;
+      }
+      if (out == null) {
+        pending.append(lines);
+        return;
+      }
+      synchronized (queue) {
+        queue.add(new Push(out, lines, moved));
+        unwritten++;
+      }
+      if (scheduled.compareAndSet(false, true)) {
+        writers.execute(this::drain);
+      }
+    }
+
+    /** Waits until the lines queued so far have been written. */
+    void awaitWritten() {
+      synchronized (queue) {
+        while (unwritten > 0) {
+          try {
+            queue.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      }
+    }
+
+    private void drain() {
+      do {
+        write();
+        scheduled.set(false);
+      } while (hasWork() && scheduled.compareAndSet(false, true));
+    }
+
+    private boolean hasWork() {
+      synchronized (queue) {
+        return !queue.isEmpty();
+      }
+    }
+
+    /** Writes the queued lines, each to the connection the player had when it was queued. */
+    private void write() {
+      while (true) {
+        Push push;
+        synchronized (queue) {
+          push = queue.poll();
+        }
+        if (push == null) {
+          return;
+        }
+        try {
+          push.out.write(push.lines);
+          push.out.flush();
+          if (push.moved != 0) {
+            Server.metrics.moveRelay.recordSince(push.moved);
+          }
+        } catch (IOException e) {
+          // the player's handler notices the closed connection and leaves the game
+          System.out.println("[Server] Could not write to " + player.username + ": " + e);
+        }
+        synchronized (queue) {
+          if (--unwritten == 0) {
+            queue.notifyAll();
+          }
+        }
+      }
+    }
+
+    private record Push(BufferedWriter out, String lines, long moved) {}
+  }
+}
@@ -0,0 +1,121 @@
+package ch.heigvd.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Liveness of one connection, checked by a {@link TimerWheel} shared by every connection.
+ *
+ * <p>Any line received from the client proves it alive. A client silent for one interval is sent
+ * {@code PING}, which it answers with {@code PONG}, and a client still silent one interval later is
+ * considered gone. Its connection is then closed, which frees its slot and parks its player like
+ * any lost connection. The connections of clients that vanished without closing them, whose reads
+ * would otherwise block forever, are thus reaped. A connection running a command, such as a
+ * CHALLENGE waiting for its answer, is never reaped: the command has its own timeout. Its client is
+ * still sent PING every interval, which tells it that the server is alive.
+ */
+final class Heartbeat {
+  /** Milliseconds covered by one slot of the wheel. */
+  static final int TICK_MS = 100;
+
+  /** Number of slots of the wheel, one turn covers about 51 seconds. */
+  static final int SLOTS = 512;
+
+  /** Writes the pings and closes the connections, which may block, off the wheel's thread. */
+  private static final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+  private static TimerWheel wheel;
+  private static long intervalNanos;
+
+  private final Runnable ping;
+  private final Runnable reap;
+  private volatile long lastActive = System.nanoTime();
+  private volatile boolean busy;
+  private volatile boolean stopped;
+
+  /** Whether a PING has been sent, and when the last one was, only used by the wheel's thread. */
+  private boolean pinged;
+
+  private long pingedAt;
+
+  private Heartbeat(Runnable ping, Runnable reap) {
+    this.ping = ping;
+    this.reap = reap;
+  }
+
+  /**
+   * Starts checking the connections.
+   *
+   * @param seconds seconds of silence before a client is sent PING, 0 to never check them
+   */
+  static void start(int seconds) {
+    if (seconds <= 0) {
+      return;
+    }
+    intervalNanos = TimeUnit.SECONDS.toNanos(seconds);
+    wheel = new TimerWheel("heartbeat", TICK_MS, SLOTS);
+  }
+
+  /**
+   * Starts checking a connection.
+   *
+   * @param ping sends PING to the client
+   * @param reap closes the connection
+   * @return the heartbeat of the connection, to be told about each command
+   */
+  static Heartbeat watch(Runnable ping, Runnable reap) {
+    Heartbeat heartbeat = new Heartbeat(ping, reap);
+    if (wheel != null) {
+      wheel.schedule(heartbeat::check, intervalNanos);
+    }
+    return heartbeat;
+  }
+
+  /** Notes that a command was received, the connection is busy until it is handled. */
+  void received() {
+    busy = true;
+    active();
+  }
+
+  /** Notes that a command has been handled. */
+  void handled() {
+    // before busy is cleared, so a check seeing it cleared also sees the activity
+    active();
+    busy = false;
+  }
+
+  /** Stops checking the connection, once it is closed. */
+  void stop() {
+    stopped = true;
+  }
+
+  private void active() {
+    lastActive = System.nanoTime();
+  }
+
+  /** Runs on the wheel's thread. */
+  private void check() {
+    if (stopped) {
+      return;
+    }
+    boolean running = busy;
+    long now = System.nanoTime();
+    long last = lastActive;
+    if (now - last < intervalNanos) {
+      wheel.schedule(this::check, intervalNanos - (now - last));
+      return;
+    }
+    if (running || !pinged || last - pingedAt >= 0) {
+      // no PING since the client went silent, or a command is still running
+      pinged = true;
+      pingedAt = now;
+      senders.execute(ping);
+      wheel.schedule(this::check, intervalNanos);
+      return;
+    }
+    stopped = true;
+    Server.metrics.connectionReaped();
+    senders.execute(reap);
+  }
+}
@@ -0,0 +1,94 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Norms;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Games being played on the server, listed by GAMES and found by WATCH.
+ *
+ * <p>A game is added when its challenge is accepted and removed when it is over. The games are kept
+ * by id, so the oldest ones are listed first.
+ */
+public class LiveGames {
+  private final ConcurrentSkipListMap<Integer, GameSession> sessions =
+      new ConcurrentSkipListMap<>();
+
+  /**
+   * Adds a game that has just started.
+   *
+   * @param session session of the game
+   */
+  public void add(GameSession session) {
+    sessions.put(session.id, session);
+  }
+
+  /**
+   * Removes a game that is over.
+   *
+   * @param session session of the game
+   */
+  public void remove(GameSession session) {
+    sessions.remove(session.id, session);
+  }
+
+  /**
+   * Returns a game being played.
+   *
+   * @param id id of the game
+   * @return the session of the game, or null if there is no such game or it is over
+   */
+  public GameSession get(int id) {
+    return sessions.get(id);
+  }
+
+  /**
+   * Returns the games being played, in the order they started.
+   *
+   * @return a weakly consistent view of the sessions
+   */
+  Iterable<GameSession> sessions() {
+    return sessions.values();
+  }
+
+  /**
+   * Returns the number of spectators of every game.
+   *
+   * @return the number of clients watching a game
+   */
+  public int spectators() {
+    int count = 0;
+    for (GameSession session : sessions.values()) {
+      count += session.spectatorCount();
+    }
+    return count;
+  }
+
+  /**
+   * Builds the answer to GAMES: {@code GAMES id,player1,player2,rows,columns,k,moves;...}, player1
+   * being the one playing X.
+   *
+   * @return the GAMES line without its end of line
+   */
+  public String gamesMessage() {
+    StringBuilder sb = new StringBuilder(Server.Message.GAMES + " ");
+    for (GameSession session : sessions.values()) {
+      Game game = session.game;
+      sb.append(session.id)
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(game.player1.username)
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(game.player2.username)
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(game.rows)
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(game.columns)
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(game.k)
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(game.moveCount.get())
+          .append(Norms.OBJECT_SEPARATOR);
+    }
+    return sb.toString();
+  }
+}
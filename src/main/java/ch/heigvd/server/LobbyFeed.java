@@ -0,0 +1,270 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Norms;
+import ch.heigvd.common.Player;
+import ch.heigvd.server.functions.Matchmaking;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versioned view of the lobby pushed to the subscribed clients.
+ *
+ * <p>Logins, logouts, status and statistics changes only mark the player as changed, and new or
+ * withdrawn challenges mark the challenged player. Every {@link #COALESCE_MS} milliseconds, a
+ * single thread turns the marks into one new version: the LOBBY delta line is built once and queued
+ * for every subscriber, and the challenged subscribers also get their updated CHALLENGES line. A
+ * player changing ten times within the window costs one entry.
+ *
+ * <p>Each subscriber is written to by at most one virtual thread at a time, so a slow client never
+ * holds up the others. A subscriber falling more than {@link #MAX_BACKLOG} versions behind drops
+ * its queue and receives a fresh snapshot instead.
+ */
+public class LobbyFeed {
+  /** Window over which the changes are coalesced into one version. */
+  public static final long COALESCE_MS = 100;
+
+  /** Number of queued pushes after which a subscriber is resynchronized with a snapshot. */
+  static final int MAX_BACKLOG = 64;
+
+  private final AtomicLong version = new AtomicLong();
+  private final Set<String> changedPlayers = ConcurrentHashMap.newKeySet();
+  private final Set<String> changedChallenges = ConcurrentHashMap.newKeySet();
+  private final ConcurrentHashMap<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+  private final ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
+  private volatile Snapshot snapshot = new Snapshot(-1, "");
+
+  /** Starts publishing the changes. */
+  public void start() {
+    ScheduledExecutorService publisher =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("lobby-feed").daemon().factory());
+    publisher.scheduleWithFixedDelay(
+        this::publish, COALESCE_MS, COALESCE_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Marks a player whose presence, status or statistics changed. Must be called after the change.
+   *
+   * @param player changed player
+   */
+  public void changed(Player player) {
+    changedPlayers.add(player.username);
+  }
+
+  /**
+   * Marks a player whose received challenges changed. Must be called after the change.
+   *
+   * @param player challenged player
+   */
+  public void challengesChanged(Player player) {
+    changedChallenges.add(player.username);
+  }
+
+  /**
+   * Subscribes a connected player. The first push is a snapshot of the lobby followed by the
+   * player's challenges, then only the deltas are sent.
+   *
+   * @param player logged in player
+   * @param out writer of the player's connection
+   */
+  public void subscribe(Player player, BufferedWriter out) {
+    Subscriber subscriber = new Subscriber(player, out);
+    Subscriber previous = subscribers.put(player.username, subscriber);
+    if (previous != null) {
+      previous.closed = true;
+    }
+    subscriber.schedule();
+  }
+
+  /**
+   * Stops pushing to the player. A newer connection using the same username is left alone.
+   *
+   * @param player player leaving the server
+   */
+  public void unsubscribe(Player player) {
+    Subscriber subscriber = subscribers.get(player.username);
+    if (subscriber != null && subscriber.player == player) {
+      subscriber.closed = true;
+      subscribers.remove(player.username, subscriber);
+    }
+  }
+
+  /** Turns the pending changes into a new version and queues it. Runs on the publisher thread. */
+  private void publish() {
+    try {
+      if (changedPlayers.isEmpty() && changedChallenges.isEmpty()) {
+        return;
+      }
+      // the version is only bumped once the changes have been read: a snapshot built meanwhile
+      // from the live lobby stays at the previous version, and still receives this delta
+      long current = version.get() + 1;
+      StringBuilder delta = new StringBuilder();
+      for (Iterator<String> it = changedPlayers.iterator(); it.hasNext(); ) {
+        String username = it.next();
+        it.remove();
+        Player player = Server.players.get(username);
+        if (player == null) {
+          delta.append('-').append(username);
+        } else {
+          appendRecord(delta, player);
+        }
+        delta.append(Norms.OBJECT_SEPARATOR);
+      }
+      Map<Subscriber, String> challenges = new HashMap<>();
+      for (Iterator<String> it = changedChallenges.iterator(); it.hasNext(); ) {
+        Subscriber subscriber = subscribers.get(it.next());
+        it.remove();
+        if (subscriber != null) {
+          challenges.put(
+              subscriber, Matchmaking.challengesMessage(subscriber.player) + Norms.END_OF_LINE);
+        }
+      }
+      version.set(current);
+      if (!delta.isEmpty()) {
+        String line = lobbyLine(current, "DELTA", delta);
+        for (Subscriber subscriber : subscribers.values()) {
+          subscriber.offer(current, line);
+        }
+      }
+      challenges.forEach((subscriber, line) -> subscriber.offer(current, line));
+    } catch (RuntimeException e) {
+      // the executor would silently cancel the task
+      System.out.println("[Server] Exception while publishing the lobby: " + e);
+    }
+  }
+
+  /**
+   * Returns a snapshot of the lobby at least as recent as the current version. Snapshots are shared
+   * until the next version, so a burst of subscriptions builds the list once.
+   */
+  private Snapshot snapshot() {
+    long current = version.get();
+    Snapshot cached = snapshot;
+    if (cached.version == current) {
+      return cached;
+    }
+    StringBuilder entries = new StringBuilder();
+    for (Player player : Server.players.snapshot()) {
+      appendRecord(entries, player);
+      entries.append(Norms.OBJECT_SEPARATOR);
+    }
+    cached = new Snapshot(current, lobbyLine(current, "SNAPSHOT", entries));
+    snapshot = cached;
+    return cached;
+  }
+
+  private static void appendRecord(StringBuilder sb, Player player) {
+    sb.append('+').append(player).append(Norms.ELEMENT_SEPARATOR).append(player.status);
+  }
+
+  private static String lobbyLine(long version, String kind, CharSequence entries) {
+    return Server.Message.LOBBY + " " + version + " " + kind + " " + entries + Norms.END_OF_LINE;
+  }
+
+  private record Snapshot(long version, String line) {}
+
+  private record Push(long version, String line) {}
+
+  /** Queue of the pushes not yet written to one client. */
+  private class Subscriber {
+    final Player player;
+    final BufferedWriter out;
+    final ArrayDeque<Push> queue = new ArrayDeque<>();
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    /** True until the subscriber has received a snapshot it can apply the next deltas to. */
+    boolean behind = true;
+
+    volatile boolean closed;
+
+    Subscriber(Player player, BufferedWriter out) {
+      this.player = player;
+      this.out = out;
+    }
+
+    void offer(long version, String line) {
+      synchronized (queue) {
+        if (behind) {
+          return;
+        }
+        if (queue.size() >= MAX_BACKLOG) {
+          queue.clear();
+          behind = true;
+        } else {
+          queue.add(new Push(version, line));
+        }
+      }
+      schedule();
+    }
+
+    /** Makes sure a writer drains the queue. At most one writer per subscriber. */
+    void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        writers.execute(this::drain);
+      }
+    }
+
+    private void drain() {
+      do {
+        try {
+          write();
+        } catch (IOException e) {
+          // the handler notices the closed connection and unsubscribes
+          closed = true;
+        }
+        scheduled.set(false);
+      } while (!closed && hasWork() && scheduled.compareAndSet(false, true));
+    }
+
+    private boolean hasWork() {
+      synchronized (queue) {
+        return behind || !queue.isEmpty();
+      }
+    }
+
+    /**
+     * Writes the queued pushes, or a snapshot when the subscriber is behind. Pushes already covered
+     * by the snapshot are skipped. Every push is one whole line written with a single call, so it
+     * never interleaves with the responses written by the player's handler.
+     */
+    private void write() throws IOException {
+      long covered = -1;
+      while (!closed) {
+        boolean resync;
+        Push push = null;
+        synchronized (queue) {
+          resync = behind;
+          if (resync) {
+            behind = false;
+            queue.clear();
+          } else {
+            push = queue.poll();
+          }
+        }
+        if (resync) {
+          Snapshot current = snapshot();
+          covered = current.version;
+          out.write(current.line);
+          out.write(Matchmaking.challengesMessage(player) + Norms.END_OF_LINE);
+        } else if (push == null) {
+          break;
+        } else if (push.version > covered) {
+          out.write(push.line);
+        }
+      }
+      out.flush();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package ch.heigvd.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/** Compaction of the append-only logs of the server, the statistics log and the game journal. */
+final class LogFiles {
+  private LogFiles() {}
+
+  /**
+   * Replaces a log with the given records, atomically and durably: the records are written to a
+   * sibling {@code .tmp} file and synced, the file is moved over the log, and the directory is
+   * synced so that the move itself survives a crash.
+   *
+   * @param file path of the log
+   * @param records whole records, each ending with an end of line
+   * @return a channel on the new log, positioned after its records, to go on appending to it
+   * @throws IOException if the log cannot be rewritten, in which case it is left unchanged
+   */
+  static FileChannel replace(Path file, CharSequence records) throws IOException {
+    Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+    FileChannel writer =
+        FileChannel.open(
+            compacted,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(records));
+      while (bytes.hasRemaining()) {
+        writer.write(bytes);
+      }
+      writer.force(true);
+      Files.move(
+          compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      writer.close();
+      throw e;
+    }
+    // the channel follows the file it was opened on, and goes on writing where it stopped
+    syncDirectory(file.toAbsolutePath().getParent());
+    return writer;
+  }
+
+  /** Syncs a directory, on the platforms that allow opening one. */
+  private static void syncDirectory(Path directory) {
+    try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+      dir.force(true);
+    } catch (IOException e) {
+      // Windows cannot open a directory, the move is then as durable as the platform makes it
+    }
+  }
+}
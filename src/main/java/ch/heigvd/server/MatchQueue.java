@@ -0,0 +1,291 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Challenge;
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Player;
+import ch.heigvd.server.functions.Matchmaking;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue of the players waiting for an opponent of a similar rating, filled by QUEUE.
+ *
+ * <p>Every {@link #BATCH_MS} milliseconds, a single thread takes the players who joined meanwhile
+ * and pairs the waiting players, oldest first, with the closest rating on the same board size. A
+ * player only accepts opponents within a window of {@link #BASE_WINDOW} points, widened by {@link
+ * #WINDOW_GROWTH} points per second of waiting, so nobody waits forever for a perfect match. The
+ * players of a board size are kept in buckets of {@link #BUCKET_WIDTH} rating points, and only the
+ * buckets overlapping the window are searched.
+ */
+public class MatchQueue {
+  /** Milliseconds between two matching batches. */
+  public static final long BATCH_MS = 200;
+
+  /** Rating points covered by one bucket. */
+  static final int BUCKET_WIDTH = 50;
+
+  /** Largest rating difference accepted right after joining the queue. */
+  public static final int BASE_WINDOW = 50;
+
+  /** Rating points added to the window per second of waiting. */
+  public static final int WINDOW_GROWTH = 50;
+
+  private static final AtomicLong lastId = new AtomicLong();
+
+  private final ConcurrentLinkedQueue<Ticket> arrivals = new ConcurrentLinkedQueue<>();
+  private final ConcurrentHashMap<Player, Ticket> tickets = new ConcurrentHashMap<>();
+
+  /** Waiting players by board size, only used by the matching thread. */
+  private final Map<Board, Pool> pools = new HashMap<>();
+
+  /** Starts matching the waiting players. */
+  public void start() {
+    ScheduledExecutorService matcher =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("matchmaking").daemon().factory());
+    matcher.scheduleWithFixedDelay(this::match, BATCH_MS, BATCH_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Adds a player to the queue, in place of its previous ticket if any.
+   *
+   * @param player player looking for an opponent
+   * @param rows number of rows of the board
+   * @param columns number of columns of the board
+   * @param k number of aligned symbols needed to win
+   * @return the ticket, completed with the game's session once matched
+   */
+  public Ticket enqueue(Player player, int rows, int columns, int k) {
+    Ticket ticket = new Ticket(player, new Board(rows, columns, k));
+    Ticket previous = tickets.put(player, ticket);
+    if (previous != null) {
+      previous.cancel();
+    }
+    arrivals.add(ticket);
+    return ticket;
+  }
+
+  /**
+   * Removes a player from the queue, if it is waiting.
+   *
+   * @param player player leaving the queue
+   */
+  public void cancel(Player player) {
+    Ticket ticket = tickets.get(player);
+    if (ticket != null) {
+      ticket.cancel();
+    }
+  }
+
+  /**
+   * Returns the number of players waiting for an opponent.
+   *
+   * @return the number of tickets neither matched nor cancelled
+   */
+  public int size() {
+    return tickets.size();
+  }
+
+  /** Runs one batch. An exception would cancel the scheduled task, so it is only logged. */
+  private void match() {
+    try {
+      Ticket arrival;
+      while ((arrival = arrivals.poll()) != null) {
+        if (arrival.state == Ticket.State.WAITING) {
+          pools.computeIfAbsent(arrival.board, board -> new Pool()).add(arrival);
+        }
+      }
+      long now = System.nanoTime();
+      for (Iterator<Pool> iterator = pools.values().iterator(); iterator.hasNext(); ) {
+        Pool pool = iterator.next();
+        pool.match(now);
+        if (pool.waiting.isEmpty()) {
+          iterator.remove();
+        }
+      }
+    } catch (RuntimeException e) {
+      System.out.println("[Server] Exception while matching players: " + e);
+    }
+  }
+
+  /**
+   * Starts the game of two matched players, as an accepted challenge would.
+   *
+   * @param first player who waited the longest
+   * @param second its opponent
+   * @return false if one of them left the queue meanwhile
+   */
+  private boolean start(Ticket first, Ticket second) {
+    // always locked in the same order, so two batches can never deadlock
+    Ticket lower = first.id < second.id ? first : second;
+    Ticket upper = lower == first ? second : first;
+    synchronized (lower) {
+      synchronized (upper) {
+        if (lower.state != Ticket.State.WAITING || upper.state != Ticket.State.WAITING) {
+          return false;
+        }
+        lower.state = Ticket.State.MATCHED;
+        upper.state = Ticket.State.MATCHED;
+      }
+    }
+    Board board = first.board;
+    Game game = new Game(first.player, second.player, board.rows, board.columns, board.k);
+    GameSession session = new GameSession(game);
+    for (Ticket ticket : new Ticket[] {first, second}) {
+      Player player = ticket.player;
+      tickets.remove(player, ticket);
+      player.status = Player.Status.IN_GAME;
+      Server.lobby.changed(player);
+      // the challengers of a matched player are told immediately instead of waiting for their
+      // timeout
+      for (Challenge challenge : player.challenges) {
+        challenge.refuse();
+      }
+      player.challenges.clear();
+      Server.lobby.challengesChanged(player);
+    }
+    Matchmaking.startGame(session);
+    first.result.complete(session);
+    second.result.complete(session);
+    return true;
+  }
+
+  /** Place of a player in the queue. */
+  public final class Ticket {
+    /** Matching states. */
+    enum State {
+      WAITING,
+      MATCHED,
+      CANCELLED
+    }
+
+    private final long id = lastId.incrementAndGet();
+    private final long since = System.nanoTime();
+    private final Player player;
+    private final Board board;
+
+    /** Rating of the player when it joined the queue. */
+    private final int rating;
+
+    private volatile State state = State.WAITING;
+
+    /** Completed with the game's session when matched, or with null when cancelled. */
+    public final CompletableFuture<GameSession> result = new CompletableFuture<>();
+
+    private Ticket(Player player, Board board) {
+      this.player = player;
+      this.board = board;
+      this.rating = player.rating;
+    }
+
+    /**
+     * Leaves the queue if the player is still waiting. Also used for timeouts and disconnections.
+     *
+     * @return true if the player was waiting and is no longer in the queue
+     */
+    public synchronized boolean cancel() {
+      if (state != State.WAITING) {
+        return false;
+      }
+      state = State.CANCELLED;
+      tickets.remove(player, this);
+      result.complete(null);
+      return true;
+    }
+
+    /** Returns the largest rating difference accepted after waiting until now. */
+    private long window(long now) {
+      return BASE_WINDOW + WINDOW_GROWTH * TimeUnit.NANOSECONDS.toSeconds(now - since);
+    }
+  }
+
+  /** Waiting players of one board size. */
+  private final class Pool {
+    /** Tickets in arrival order. */
+    private final Set<Ticket> waiting = new LinkedHashSet<>();
+
+    /** Tickets by rating bucket. */
+    private final TreeMap<Integer, Set<Ticket>> buckets = new TreeMap<>();
+
+    private void add(Ticket ticket) {
+      waiting.add(ticket);
+      buckets.computeIfAbsent(bucket(ticket.rating), bucket -> new LinkedHashSet<>()).add(ticket);
+    }
+
+    private void remove(Ticket ticket) {
+      waiting.remove(ticket);
+      Set<Ticket> bucket = buckets.get(bucket(ticket.rating));
+      bucket.remove(ticket);
+      if (bucket.isEmpty()) {
+        buckets.remove(bucket(ticket.rating));
+      }
+    }
+
+    /** Pairs the waiting players, the oldest ones choosing first. */
+    private void match(long now) {
+      List<Ticket> cancelled = new ArrayList<>();
+      for (Ticket ticket : waiting) {
+        if (ticket.state != Ticket.State.WAITING) {
+          cancelled.add(ticket);
+        }
+      }
+      cancelled.forEach(this::remove);
+      for (Ticket ticket : new ArrayList<>(waiting)) {
+        if (!waiting.contains(ticket)) {
+          // already matched by an older player of this batch
+          continue;
+        }
+        Ticket opponent = closest(ticket, ticket.window(now));
+        if (opponent == null) {
+          continue;
+        }
+        // if one of them left the queue meanwhile, it is removed at the next batch
+        if (start(ticket, opponent)) {
+          remove(ticket);
+          remove(opponent);
+        }
+      }
+    }
+
+    /** Returns the waiting player of closest rating within the window, or null if there is none. */
+    private Ticket closest(Ticket ticket, long window) {
+      Ticket best = null;
+      long bestDistance = Long.MAX_VALUE;
+      int from = bucket((int) Math.max(Integer.MIN_VALUE, ticket.rating - window));
+      int to = bucket((int) Math.min(Integer.MAX_VALUE, ticket.rating + window));
+      for (Set<Ticket> bucket : buckets.subMap(from, true, to, true).values()) {
+        for (Ticket candidate : bucket) {
+          long distance = Math.abs((long) candidate.rating - ticket.rating);
+          if (candidate != ticket
+              && candidate.state == Ticket.State.WAITING
+              && distance <= window
+              && distance < bestDistance) {
+            best = candidate;
+            bestDistance = distance;
+          }
+        }
+      }
+      return best;
+    }
+  }
+
+  private static int bucket(int rating) {
+    return Math.floorDiv(rating, BUCKET_WIDTH);
+  }
+
+  /** Board size a player is queued for, only players of the same size are matched. */
+  private record Board(int rows, int columns, int k) {}
+}
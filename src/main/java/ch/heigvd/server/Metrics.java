@@ -0,0 +1,225 @@
+package ch.heigvd.server;
+
+import ch.heigvd.client.Client;
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Histogram;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the server.
+ *
+ * <p>The handlers only increment {@link LongAdder}s and record into {@link Histogram}s, which are
+ * striped too, so instrumenting a command costs two {@code nanoTime()} calls and no shared lock.
+ * Everything is summed only when a report is built, by the admin port ({@link AdminServer}) or the
+ * periodic dump.
+ */
+public class Metrics {
+  /** Time from a decoded command to its answer, per command. */
+  private final EnumMap<Client.Message, Histogram> commands = new EnumMap<>(Client.Message.class);
+
+  /** Time from a LOGIN to its answer, account creation and statistics loading included. */
+  public final Histogram login = new Histogram();
+
+  /** Time from a move to the moment it is written to the opponent. */
+  public final Histogram moveRelay = new Histogram();
+
+  /** Time taken to write and sync one batch of the game journal. */
+  private final Histogram journalSync = new Histogram();
+
+  /** Time taken to pair one round of a tournament. */
+  private final Histogram roundPairing = new Histogram();
+
+  private final LongAdder unknownCommands = new LongAdder();
+  private final LongAdder pendingChallenges = new LongAdder();
+  private final LongAdder gamesStarted = new LongAdder();
+  private final LongAdder spectatorResyncs = new LongAdder();
+  private final LongAdder journalRecords = new LongAdder();
+  private final LongAdder sessionsResumed = new LongAdder();
+  private final LongAdder sessionsExpired = new LongAdder();
+  private final LongAdder connectionsReaped = new LongAdder();
+
+  /** Games started and possibly not over yet, cleaned up as they end or when reporting. */
+  private final Set<Game> games = ConcurrentHashMap.newKeySet();
+
+  /** Creates empty metrics. */
+  public Metrics() {
+    for (Client.Message message : Client.Message.values()) {
+      commands.put(message, new Histogram());
+    }
+  }
+
+  /**
+   * Records the handling time of one command.
+   *
+   * @param message command handled
+   * @param startNanos value of {@link System#nanoTime()} when the command was decoded
+   */
+  public void command(Client.Message message, long startNanos) {
+    commands.get(message).recordSince(startNanos);
+  }
+
+  /** Counts a line that did not start with a known command. */
+  public void unknownCommand() {
+    unknownCommands.increment();
+  }
+
+  /** Counts a challenge waiting for an answer. */
+  public void challengeSent() {
+    pendingChallenges.increment();
+  }
+
+  /** Counts a challenge that has been accepted, refused, or has timed out. */
+  public void challengeAnswered() {
+    pendingChallenges.decrement();
+  }
+
+  /**
+   * Counts a game that has just started.
+   *
+   * @param game new game
+   */
+  public void gameStarted(Game game) {
+    gamesStarted.increment();
+    games.add(game);
+  }
+
+  /**
+   * Forgets a finished game. Safe to call once per player.
+   *
+   * @param game finished game
+   */
+  public void gameOver(Game game) {
+    games.remove(game);
+  }
+
+  /** Counts a spectator that fell behind, it will be sent a snapshot of its game instead. */
+  public void spectatorResync() {
+    spectatorResyncs.increment();
+  }
+
+  /**
+   * Records one batch of the game journal written to disk.
+   *
+   * @param records number of records in the batch
+   * @param startNanos value of {@link System#nanoTime()} before the batch was written
+   */
+  public void journalSynced(int records, long startNanos) {
+    journalRecords.add(records);
+    journalSync.recordSince(startNanos);
+  }
+
+  /**
+   * Records the pairing of one tournament round.
+   *
+   * @param startNanos value of {@link System#nanoTime()} before the round was paired
+   */
+  public void roundPaired(long startNanos) {
+    roundPairing.recordSince(startNanos);
+  }
+
+  /** Counts a player taken back by RESUME after a lost connection. */
+  public void sessionResumed() {
+    sessionsResumed.increment();
+  }
+
+  /** Counts a parked player logged out because its client did not resume in time. */
+  public void sessionExpired() {
+    sessionsExpired.increment();
+  }
+
+  /** Counts a connection closed because its client stopped answering PING. */
+  public void connectionReaped() {
+    connectionsReaped.increment();
+  }
+
+  /**
+   * Returns the number of games being played.
+   *
+   * @return number of games not over yet
+   */
+  public int activeGames() {
+    // a game whose players all left without recording the result is over too
+    games.removeIf(game -> game.isOver.get());
+    return games.size();
+  }
+
+  /**
+   * Builds a report of every metric, one {@code name value} line per metric. The latencies are in
+   * microseconds.
+   *
+   * @return the report, each line ending with an end of line
+   */
+  public String report() {
+    StringBuilder sb = new StringBuilder();
+    line(sb, "connections", Server.playerCount.get());
+    line(sb, "connections.reaped", connectionsReaped.sum());
+    line(sb, "players", Server.players.size());
+    line(sb, "games.active", activeGames());
+    line(sb, "games.started", gamesStarted.sum());
+    line(sb, "spectators", Server.games.spectators());
+    line(sb, "spectators.resyncs", spectatorResyncs.sum());
+    line(sb, "challenges.pending", pendingChallenges.sum());
+    line(sb, "queue.waiting", Server.queue.size());
+    line(sb, "journal.records", journalRecords.sum());
+    line(sb, "sessions.parked", Server.sessions.parked());
+    line(sb, "sessions.resumed", sessionsResumed.sum());
+    line(sb, "sessions.expired", sessionsExpired.sum());
+    line(sb, "tournaments.running", Server.tournaments.running());
+    line(sb, "commands.unknown", unknownCommands.sum());
+    for (Client.Message message : Client.Message.values()) {
+      Histogram histogram = commands.get(message);
+      if (histogram.count() > 0) {
+        latency(sb, "command." + message, histogram);
+      }
+    }
+    latency(sb, "login", login);
+    latency(sb, "move.relay", moveRelay);
+    latency(sb, "journal.sync", journalSync);
+    latency(sb, "tournament.pairing", roundPairing);
+    return sb.toString();
+  }
+
+  /**
+   * Prints the report at a fixed interval.
+   *
+   * @param seconds seconds between two reports, 0 to never print them
+   */
+  public void startDump(int seconds) {
+    if (seconds <= 0) {
+      return;
+    }
+    ScheduledExecutorService dumper =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("metrics-dump").daemon().factory());
+    dumper.scheduleAtFixedRate(
+        () -> System.out.print("[Server] metrics\n" + report()),
+        seconds,
+        seconds,
+        TimeUnit.SECONDS);
+  }
+
+  private static void line(StringBuilder sb, String name, long value) {
+    sb.append(name).append(' ').append(value).append('\n');
+  }
+
+  private static void latency(StringBuilder sb, String name, Histogram histogram) {
+    sb.append(
+        String.format(
+            Locale.ROOT,
+            "%s count=%d mean=%.0f p50=%d p90=%d p99=%d max=%d%n",
+            name,
+            histogram.count(),
+            histogram.mean() / 1000,
+            histogram.percentile(0.5) / 1000,
+            histogram.percentile(0.9) / 1000,
+            histogram.percentile(0.99) / 1000,
+            histogram.max() / 1000));
+  }
+}
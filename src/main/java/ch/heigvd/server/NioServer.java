@@ -0,0 +1,366 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Frames;
+import ch.heigvd.common.Norms;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking front end of the server.
+ *
+ * <p>A few selector threads own every {@link SocketChannel}. They read the bytes sent by the
+ * clients and decode the complete {@code \n}-terminated protocol lines into the connection's {@link
+ * ChannelReader}, read by the client's {@link Server.ClientHandler}. A worker thread is only
+ * borrowed while a command is being processed, so idle lobby connections cost a few buffers instead
+ * of a whole thread.
+ */
+class NioServer implements Callable<Integer> {
+  /** Maximum length of a single protocol line, longer lines close the connection. */
+  static final int MAX_LINE_LENGTH = 8192;
+
+  /** Size of the per-selector read buffer. */
+  static final int READ_BUFFER_SIZE = 16384;
+
+  /** Writes waiting for the socket beyond which the lines broadcast to a spectator are dropped. */
+  static final int MAX_SHARED_BACKLOG = 16;
+
+  private final int port;
+  private final SelectorLoop[] loops;
+
+  /** Runs the commands once a complete line has been framed. */
+  private final ExecutorService workers;
+
+  /**
+   * Creates a NIO server.
+   *
+   * @param port TCP port to listen on
+   * @param selectorThreads number of selector threads sharing the connections
+   * @param virtualThreads whether commands run on virtual threads instead of a cached pool
+   */
+  NioServer(int port, int selectorThreads, boolean virtualThreads) {
+    this.port = port;
+    this.loops = new SelectorLoop[Math.max(1, selectorThreads)];
+    this.workers =
+        virtualThreads
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newCachedThreadPool();
+  }
+
+  /**
+   * Accepts connections and distributes them over the selector threads.
+   *
+   * @return 0 if everything went well, 1 in case of an IO error.
+   */
+  @Override
+  public Integer call() {
+    try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+      for (int i = 0; i < loops.length; i++) {
+        loops[i] = new SelectorLoop(Selector.open());
+        Thread thread = new Thread(loops[i], "nio-selector-" + i);
+        thread.setDaemon(true);
+        thread.start();
+      }
+      serverChannel.bind(new InetSocketAddress(port), Server.ACCEPT_BACKLOG);
+      System.out.println("[SERVER] Listening on port " + port + " (nio, " + loops.length + ")");
+
+      int next = 0;
+      while (serverChannel.isOpen()) {
+        SocketChannel channel = serverChannel.accept();
+        if (!Server.reserveSlot()) {
+          reject(channel);
+          continue;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        loops[next].register(channel);
+        next = (next + 1) % loops.length;
+      }
+    } catch (IOException e) {
+      System.out.println("[Server] IO exception: " + e);
+      return 1;
+    } finally {
+      workers.shutdownNow();
+    }
+    return 0;
+  }
+
+  /** Refuses a connection when the server is full. The channel is still in blocking mode here. */
+  private static void reject(SocketChannel channel) {
+    try (channel) {
+      channel.write(StandardCharsets.UTF_8.encode(Server.Message.ERROR + Norms.END_OF_LINE));
+    } catch (IOException e) {
+      System.out.println("[Server] Could not close socket: " + e);
+    }
+    System.out.println("[Server] No available slots");
+  }
+
+  /** One selector thread and the connections it owns. */
+  private class SelectorLoop implements Runnable {
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    SelectorLoop(Selector selector) {
+      this.selector = selector;
+    }
+
+    /** Hands a freshly accepted channel over to this selector thread. */
+    void register(SocketChannel channel) {
+      pending.add(channel);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      while (selector.isOpen()) {
+        try {
+          selector.select();
+          registerPending();
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Connection connection = (Connection) key.attachment();
+            if (!key.isValid()) {
+              connection.close();
+              continue;
+            }
+            if (key.isReadable()) {
+              connection.read(readBuffer);
+            }
+            if (key.isValid() && key.isWritable()) {
+              connection.flushPending();
+            }
+          }
+        } catch (IOException e) {
+          System.out.println("[Server] selector exception: " + e);
+        }
+      }
+    }
+
+    private void registerPending() {
+      SocketChannel channel;
+      while ((channel = pending.poll()) != null) {
+        try {
+          Connection connection = new Connection(channel);
+          connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+          // a client found gone is closed like a client that disconnected
+          connection.handler.startHeartbeat(connection::close);
+          connection.handler.greet();
+        } catch (IOException e) {
+          System.out.println("[Server] Could not register connection: " + e);
+          try {
+            channel.close();
+          } catch (IOException ee) {
+            System.out.println("[Server] Could not close socket: " + ee);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * State kept for every connection: line or frame decoding, queued output and the handler.
+   *
+   * <p>A connection starts with the text protocol. If its first line is {@link Frames#NEGOTIATION},
+   * the selector thread answers OK and decodes the following bytes as frames straight from the read
+   * buffer, and the writer encodes the handler's lines as frames.
+   */
+  private class Connection implements SharedLine.Sink {
+    private final SocketChannel channel;
+    private final ChannelReader reader = new ChannelReader();
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final ChannelWriter writer = new ChannelWriter(this);
+    private final Server.ClientHandler handler;
+    private volatile SelectionKey key;
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+      this.handler =
+          new Server.ClientHandler(channel.socket(), reader, new BufferedWriter(writer), this);
+    }
+
+    /** Reads what is available and frames it into lines. Runs on the selector thread. */
+    void read(ByteBuffer buffer) {
+      int read;
+      boolean complete = false;
+      try {
+        buffer.clear();
+        read = channel.read(buffer);
+      } catch (IOException e) {
+        read = -1;
+      }
+      if (read < 0) {
+        close();
+        return;
+      }
+      buffer.flip();
+      try {
+        boolean binary = reader.binary();
+        complete = reader.receive(buffer);
+        if (!binary && reader.binary()) {
+          // the frames following the negotiation line are only decoded once it is answered
+          send(StandardCharsets.UTF_8.encode(Server.Message.OK + Norms.END_OF_LINE));
+          writer.binary = true;
+          complete = reader.receive(buffer) || complete;
+        }
+      } catch (IOException e) {
+        close();
+        return;
+      }
+      if (complete) {
+        schedule();
+      }
+    }
+
+    /** Makes sure a worker processes the received lines. At most one worker per connection. */
+    void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        workers.execute(this::drain);
+      }
+    }
+
+    /** Runs the handler while it has lines to process. Runs on a worker thread. */
+    private void drain() {
+      do {
+        try {
+          while (!channel.socket().isClosed() && reader.ready()) {
+            if (!handler.step()) {
+              close();
+            }
+          }
+        } catch (Exception e) {
+          System.out.println("[Server] exception: " + e);
+          close();
+        }
+        if (channel.socket().isClosed()) {
+          handler.close();
+          return;
+        }
+        scheduled.set(false);
+      } while (reader.ready() && scheduled.compareAndSet(false, true));
+    }
+
+    /** Queues bytes for the client, writing directly when nothing is waiting before them. */
+    void send(ByteBuffer bytes) throws IOException {
+      synchronized (outbound) {
+        if (outbound.isEmpty()) {
+          channel.write(bytes);
+        }
+        if (bytes.hasRemaining()) {
+          outbound.add(bytes);
+          key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+          key.selector().wakeup();
+        }
+      }
+    }
+
+    /**
+     * Queues the shared bytes of a broadcast line, unless the client is already too far behind. The
+     * handler's writer only sends whole lines, so the bytes never land inside another line.
+     */
+    @Override
+    public boolean offer(SharedLine line) {
+      synchronized (outbound) {
+        if (outbound.size() >= MAX_SHARED_BACKLOG) {
+          return false;
+        }
+      }
+      try {
+        send(writer.binary ? line.frames() : line.text());
+        return true;
+      } catch (IOException e) {
+        close();
+        return false;
+      }
+    }
+
+    /** Writes queued bytes once the socket accepts them again. Runs on the selector thread. */
+    void flushPending() {
+      synchronized (outbound) {
+        try {
+          while (!outbound.isEmpty()) {
+            ByteBuffer bytes = outbound.peek();
+            channel.write(bytes);
+            if (bytes.hasRemaining()) {
+              return;
+            }
+            outbound.poll();
+          }
+          key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+          close();
+        }
+      }
+    }
+
+    /** Closes the channel and wakes up a handler waiting for a line or for a challenge. */
+    void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        System.out.println("[Server] Could not close socket: " + e);
+      }
+      handler.disconnected();
+      reader.end();
+      schedule();
+    }
+  }
+
+  /**
+   * Writer encoding characters to UTF-8, or to frames once the binary protocol is negotiated, and
+   * handing them to the connection on flush.
+   */
+  private static class ChannelWriter extends Writer {
+    private final Connection connection;
+    private final StringBuilder pending = new StringBuilder();
+
+    /** Whether the lines are sent as frames. */
+    volatile boolean binary;
+
+    ChannelWriter(Connection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+      synchronized (pending) {
+        pending.append(chars, offset, length);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (pending) {
+        if (pending.isEmpty()) {
+          return;
+        }
+        ByteBuffer bytes;
+        if (binary) {
+          ByteArrayOutputStream encoded = new ByteArrayOutputStream(pending.length());
+          // a line is only encoded once complete
+          pending.delete(0, Frames.encodeLines(pending, encoded));
+          bytes = ByteBuffer.wrap(encoded.toByteArray());
+        } else {
+          bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(pending));
+          pending.setLength(0);
+        }
+        connection.send(bytes);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package ch.heigvd.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pairing rules of the tournament formats.
+ *
+ * <p>Each pair names the player who moves first, which goes to the player who had it the least
+ * often. A pair whose second player is null is a bye.
+ */
+public final class Pairings {
+  private Pairings() {}
+
+  /**
+   * Pairs a Swiss round: the players are taken in the order of the standings, and each one meets
+   * the next player below it that it has not met yet, so players of equal points meet first. With
+   * an odd number of players, the lowest ranked player who has not had a bye yet gets one. When the
+   * players left have all met, the closest game already paired in the round is split to pair them
+   * with its players instead, and they only meet again if no game can be split this way.
+   *
+   * <p>The search only skips the players already paired or met, so a round costs about one pass
+   * over the standings, a few milliseconds for thousands of players.
+   *
+   * @param standings current standings
+   * @return the pairs of the round
+   */
+  public static List<Pair> swiss(Standings standings) {
+    List<Standings.Entry> ranked = standings.entries();
+    List<Pair> pairs = new ArrayList<>(ranked.size() / 2 + 1);
+    if (ranked.size() % 2 == 1) {
+      int bye = ranked.size() - 1;
+      for (int i = ranked.size() - 1; i >= 0; i--) {
+        if (ranked.get(i).byes == 0) {
+          bye = i;
+          break;
+        }
+      }
+      pairs.add(new Pair(ranked.remove(bye).username, null));
+    }
+    List<Standings.Entry[]> games = new ArrayList<>(ranked.size() / 2);
+    boolean[] paired = new boolean[ranked.size()];
+    for (int i = 0; i < ranked.size(); i++) {
+      if (paired[i]) {
+        continue;
+      }
+      Standings.Entry player = ranked.get(i);
+      int opponent = -1;
+      for (int j = i + 1; j < ranked.size(); j++) {
+        if (!paired[j]) {
+          if (opponent < 0) {
+            // a rematch, unless an earlier game can be split
+            opponent = j;
+          }
+          if (!player.met.contains(ranked.get(j).username)) {
+            opponent = j;
+            break;
+          }
+        }
+      }
+      paired[i] = true;
+      paired[opponent] = true;
+      Standings.Entry other = ranked.get(opponent);
+      if (!player.met.contains(other.username) || !split(games, player, other)) {
+        games.add(new Standings.Entry[] {player, other});
+      }
+    }
+    for (Standings.Entry[] game : games) {
+      pairs.add(pair(game[0], game[1]));
+    }
+    return pairs;
+  }
+
+  /**
+   * Splits the closest game of the round that lets two players who already met play someone else:
+   * each of them meets one of its players instead.
+   *
+   * @return false if no game can be split without a rematch
+   */
+  private static boolean split(
+      List<Standings.Entry[]> games, Standings.Entry one, Standings.Entry other) {
+    for (int g = games.size() - 1; g >= 0; g--) {
+      Standings.Entry[] game = games.get(g);
+      for (int side = 0; side < 2; side++) {
+        Standings.Entry first = game[side];
+        Standings.Entry second = game[1 - side];
+        if (!one.met.contains(first.username) && !other.met.contains(second.username)) {
+          games.set(g, new Standings.Entry[] {first, one});
+          games.add(new Standings.Entry[] {second, other});
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Pairs one round of a round robin with the circle method: the first player stays in place while
+   * the others turn around it, so everyone meets everyone once over {@link #roundRobinRounds}
+   * rounds. With an odd number of players, the player facing the empty seat gets a bye.
+   *
+   * @param standings current standings, only used for the first moves
+   * @param players players in registration order
+   * @param round number of the round, from 1
+   * @return the pairs of the round
+   */
+  public static List<Pair> roundRobin(Standings standings, List<String> players, int round) {
+    List<String> seats = new ArrayList<>(players);
+    if (seats.size() % 2 == 1) {
+      seats.add(null);
+    }
+    int turning = seats.size() - 1;
+    List<String> circle = new ArrayList<>(seats.size());
+    circle.add(seats.get(0));
+    for (int i = 0; i < turning; i++) {
+      circle.add(seats.get(1 + Math.floorMod(i - (round - 1), turning)));
+    }
+    List<Pair> pairs = new ArrayList<>(seats.size() / 2);
+    for (int i = 0; i < seats.size() / 2; i++) {
+      String one = circle.get(i);
+      String other = circle.get(seats.size() - 1 - i);
+      if (one == null || other == null) {
+        pairs.add(new Pair(one == null ? other : one, null));
+      } else {
+        pairs.add(pair(standings.get(one), standings.get(other)));
+      }
+    }
+    return pairs;
+  }
+
+  /**
+   * Returns the number of rounds of a round robin.
+   *
+   * @param players number of players
+   * @return the number of rounds for everyone to meet everyone
+   */
+  public static int roundRobinRounds(int players) {
+    return players % 2 == 0 ? players - 1 : players;
+  }
+
+  /**
+   * Seeds a single elimination bracket: the best rated player meets the worst one, and the two best
+   * seeds can only meet in the final. The bracket is filled up to a power of two with empty slots,
+   * which give byes to the best seeds.
+   *
+   * @param standings standings of the registered players
+   * @return the bracket, null for an empty slot
+   */
+  public static List<String> seed(Standings standings) {
+    List<Standings.Entry> byRating = standings.entries();
+    byRating.sort((a, b) -> Integer.compare(b.rating, a.rating));
+    int size = 1;
+    while (size < byRating.size()) {
+      size <<= 1;
+    }
+    // seeds 1 and 2 in opposite halves, recursively: 1 8 4 5 2 7 3 6 for 8 slots
+    List<Integer> order = new ArrayList<>(List.of(1));
+    for (int slots = 2; slots <= size; slots <<= 1) {
+      List<Integer> next = new ArrayList<>(slots);
+      for (int seed : order) {
+        next.add(seed);
+        next.add(slots + 1 - seed);
+      }
+      order = next;
+    }
+    List<String> bracket = new ArrayList<>(size);
+    for (int seed : order) {
+      bracket.add(seed <= byRating.size() ? byRating.get(seed - 1).username : null);
+    }
+    return bracket;
+  }
+
+  /**
+   * Pairs one round of a single elimination bracket, slot 2i against slot 2i + 1. A player facing
+   * an empty slot gets a bye, two empty slots make an empty pair.
+   *
+   * @param standings current standings, only used for the first moves
+   * @param bracket players still in the bracket, null for an empty slot
+   * @return one pair per two slots, in bracket order, with null players for the empty slots
+   */
+  public static List<Pair> elimination(Standings standings, List<String> bracket) {
+    List<Pair> pairs = new ArrayList<>(bracket.size() / 2);
+    for (int i = 0; i + 1 < bracket.size(); i += 2) {
+      String one = bracket.get(i);
+      String other = bracket.get(i + 1);
+      if (one == null || other == null) {
+        pairs.add(new Pair(one == null ? other : one, null));
+      } else {
+        pairs.add(pair(standings.get(one), standings.get(other)));
+      }
+    }
+    return pairs;
+  }
+
+  /** Gives the first move to the player who had it the least often, the first one on a tie. */
+  private static Pair pair(Standings.Entry one, Standings.Entry other) {
+    return other.firsts < one.firsts
+        ? new Pair(other.username, one.username)
+        : new Pair(one.username, other.username);
+  }
+
+  /**
+   * Game of a round.
+   *
+   * @param first player moving first, or the only player of a bye, or null for an empty pair
+   * @param second its opponent, or null for a bye
+   */
+  public record Pair(String first, String second) {}
+}
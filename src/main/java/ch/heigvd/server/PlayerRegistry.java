@@ -0,0 +1,225 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Player;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the players connected to the server, indexed by username.
+ *
+ * <p>Logins, lookups and removals are O(1) and never copy the whole registry. Listing goes through
+ * {@link #snapshot()}, an immutable list rebuilt at most once per change no matter how many clients
+ * ask for it.
+ *
+ * <p>{@link #query} answers paginated and filtered listings from sorted indexes kept up to date on
+ * every login, logout and {@link #statsChanged(Player)}, so a page costs a walk over the index up
+ * to its last entry instead of a sort of the whole registry.
+ */
+public class PlayerRegistry implements Iterable<Player> {
+  private final ConcurrentHashMap<String, Player> players = new ConcurrentHashMap<>();
+
+  /** Players sorted by username. */
+  private final ConcurrentSkipListMap<String, Player> byName = new ConcurrentSkipListMap<>();
+
+  /** Current ranking entry of every player, used to find it again in the sorted sets. */
+  private final ConcurrentHashMap<String, Ranking> rankings = new ConcurrentHashMap<>();
+
+  private final ConcurrentSkipListSet<Ranking> byWins =
+      new ConcurrentSkipListSet<>(
+          Comparator.comparingInt(Ranking::wins).reversed().thenComparing(Ranking::username));
+
+  private final ConcurrentSkipListSet<Ranking> byWinStreak =
+      new ConcurrentSkipListSet<>(
+          Comparator.comparingInt(Ranking::winStreak).reversed().thenComparing(Ranking::username));
+
+  /** Incremented on every change, used to know whether the cached snapshot is still valid. */
+  private final AtomicLong version = new AtomicLong();
+
+  private volatile Snapshot snapshot = new Snapshot(0, List.of());
+
+  /** Orders of the listings returned by {@link #query}. */
+  public enum Sort {
+    /** By username. */
+    NAME,
+    /** Most wins first, then by username. */
+    WINS,
+    /** Longest win streak first, then by username. */
+    WINSTREAK
+  }
+
+  /**
+   * Registers a player unless another player with the same username is already connected.
+   *
+   * @param player player to register
+   * @return true if the player has been registered, false if the username is already taken
+   */
+  public boolean add(Player player) {
+    if (players.putIfAbsent(player.username, player) != null) {
+      return false;
+    }
+    byName.put(player.username, player);
+    statsChanged(player);
+    version.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Unregisters the given player instance. A newer player using the same username is left alone.
+   *
+   * @param player player to unregister
+   * @return true if the player was registered
+   */
+  public boolean remove(Player player) {
+    if (!players.remove(player.username, player)) {
+      return false;
+    }
+    byName.remove(player.username, player);
+    rankings.computeIfPresent(
+        player.username,
+        (username, ranking) -> {
+          if (ranking.player != player) {
+            return ranking;
+          }
+          byWins.remove(ranking);
+          byWinStreak.remove(ranking);
+          return null;
+        });
+    version.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Moves the player to its new place in the sorted indexes. Must be called after its statistics
+   * changed.
+   *
+   * @param player player whose statistics changed
+   */
+  public void statsChanged(Player player) {
+    rankings.compute(
+        player.username,
+        (username, previous) -> {
+          if (players.get(username) != player) {
+            // logged out meanwhile
+            return previous;
+          }
+          if (previous != null) {
+            byWins.remove(previous);
+            byWinStreak.remove(previous);
+          }
+          Ranking ranking;
+          synchronized (player) {
+            ranking = new Ranking(username, player.wins, player.winStreak, player);
+          }
+          byWins.add(ranking);
+          byWinStreak.add(ranking);
+          return ranking;
+        });
+  }
+
+  /**
+   * Returns the connected player with the given username.
+   *
+   * @param username username to lookup
+   * @return the Player instance if found, null otherwise
+   */
+  public Player get(String username) {
+    return players.get(username);
+  }
+
+  /**
+   * Returns the number of connected players.
+   *
+   * @return number of connected players
+   */
+  public int size() {
+    return players.size();
+  }
+
+  /**
+   * Returns the connected players sorted by username. The list is immutable and shared between
+   * callers until the registry changes.
+   *
+   * @return snapshot of the connected players
+   */
+  public List<Player> snapshot() {
+    Snapshot current = snapshot;
+    long expected = version.get();
+    if (current.version == expected) {
+      return current.players;
+    }
+    // the index is already sorted
+    List<Player> list = List.copyOf(byName.values());
+    // only cache it if nothing changed while it was being built
+    if (version.get() == expected) {
+      snapshot = new Snapshot(expected, list);
+    }
+    return list;
+  }
+
+  /**
+   * Returns one page of the connected players matching the filters.
+   *
+   * <p>Sorting by name with a prefix only walks the players having that prefix. The other filters
+   * are applied while walking the index, so a page ending at position n costs O(log N + n) where n
+   * counts the skipped players too.
+   *
+   * @param prefix only players whose username starts with it, empty for all
+   * @param status only players with this status, null for all
+   * @param sort order of the players
+   * @param offset number of matching players to skip
+   * @param limit maximum number of players returned
+   * @return the page
+   */
+  public Page query(String prefix, Player.Status status, Sort sort, int offset, int limit) {
+    Iterable<Player> source =
+        switch (sort) {
+          case NAME ->
+              prefix.isEmpty()
+                  ? byName.values()
+                  : byName.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+          case WINS -> () -> byWins.stream().map(Ranking::player).iterator();
+          case WINSTREAK -> () -> byWinStreak.stream().map(Ranking::player).iterator();
+        };
+    ArrayList<Player> page = new ArrayList<>(Math.min(limit, 64));
+    int matched = 0;
+    for (Player player : source) {
+      if (!player.username.startsWith(prefix) || (status != null && player.status != status)) {
+        continue;
+      }
+      if (matched++ < offset) {
+        continue;
+      }
+      if (page.size() == limit) {
+        // one more match: there is a next page
+        return new Page(page, offset + limit);
+      }
+      page.add(player);
+    }
+    return new Page(page, -1);
+  }
+
+  @Override
+  public Iterator<Player> iterator() {
+    return snapshot().iterator();
+  }
+
+  /**
+   * One page of a {@link #query}.
+   *
+   * @param players players of the page
+   * @param next offset of the next page, -1 if this is the last one
+   */
+  public record Page(List<Player> players, int next) {}
+
+  /** Cached listing together with the registry version it was built from. */
+  private record Snapshot(long version, List<Player> players) {}
+
+  /** Statistics a player was sorted with, fixed until its next {@link #statsChanged(Player)}. */
+  private record Ranking(String username, int wins, int winStreak, Player player) {}
+}
@@ -1,22 +1,26 @@
 package ch.heigvd.server;
 
-import static ch.heigvd.server.functions.GameFunctions.gameLoop;
 import static ch.heigvd.server.functions.Login.login;
+import static ch.heigvd.server.functions.Login.resume;
 import static ch.heigvd.server.functions.Matchmaking.*;
 
 import ch.heigvd.client.Client;
-import ch.heigvd.common.Game;
+import ch.heigvd.common.FrameReader;
+import ch.heigvd.common.FrameWriter;
+import ch.heigvd.common.Frames;
 import ch.heigvd.common.Norms;
 import ch.heigvd.common.Player;
+import ch.heigvd.server.bots.BotService;
+import ch.heigvd.server.functions.Login;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
-import java.util.Objects;
+import java.nio.file.Path;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import picocli.CommandLine;
 
@@ -25,14 +29,55 @@ import picocli.CommandLine;
  *
  * <p>This class is used as the command "server" by Picocli. It opens a ServerSocket, accepts
  * incoming connections, and assigns each client to a ClientHandler executed inside a thread pool.
+ * With {@code --io nio} the connections are served by {@link NioServer} instead.
  */
 @CommandLine.Command(name = "server", description = "Start the server part of the network game.")
 public class Server implements Callable<Integer> {
   /** Number of connected players. AtomicInteger ensures safe concurrent access. */
   static AtomicInteger playerCount = new AtomicInteger(0);
 
-  /** List of all connected players (thread-safe). */
-  public static CopyOnWriteArrayList<Player> players = new CopyOnWriteArrayList<>();
+  /**
+   * Length of the queue of connections waiting to be accepted. The JDK default of 50 overflows when
+   * hundreds of players connect at once, and the overflowing connections then wait for TCP
+   * retransmissions.
+   */
+  static final int ACCEPT_BACKLOG = 1024;
+
+  /** Maximum number of connected players resolved at startup, 0 when there is no limit. */
+  static int connectionLimit;
+
+  /** All connected players, indexed by username (thread-safe). */
+  public static final PlayerRegistry players = new PlayerRegistry();
+
+  /** Accounts loaded from the login file when the server starts. */
+  public static CredentialStore credentials;
+
+  /** Statistics of every known player, persisted in the background. */
+  public static StatsStore stats;
+
+  /** Journal of the games, replayed after a crash. */
+  public static GameJournal journal;
+
+  /** Changes of the lobby pushed to the subscribed clients. */
+  public static final LobbyFeed lobby = new LobbyFeed();
+
+  /** Counters and latencies reported by the admin port and the periodic dump. */
+  public static final Metrics metrics = new Metrics();
+
+  /** Games being played, which clients may watch. */
+  public static final LiveGames games = new LiveGames();
+
+  /** Players waiting for an opponent of a similar rating. */
+  public static final MatchQueue queue = new MatchQueue();
+
+  /** Session tokens, which let a client that lost its connection resume. */
+  public static final Sessions sessions = new Sessions();
+
+  /** Tournaments, whatever their state. */
+  public static final Tournaments tournaments = new Tournaments();
+
+  /** Players played by the server, null when no bot is enabled. */
+  public static BotService bots;
 
   /** Messages sent by the server to clients. */
   public enum Message {
@@ -42,7 +87,25 @@ public class Server implements Callable<Integer> {
     REFUSE,
     GAMESTART,
     PLAY,
-    GAMEOVER;
+    GAMEOVER,
+    LOBBY,
+    PLAYERS,
+    GAMES,
+    BOARD,
+    MOVE,
+    END,
+    PING,
+    PONG,
+    TOURNAMENTS,
+    STANDINGS;
+  }
+
+  /** I/O models supported by the server front end. */
+  public enum IoMode {
+    /** One blocking ClientHandler thread per connection. */
+    BLOCKING,
+    /** Selector threads own every connection, workers only run complete commands. */
+    NIO
   }
 
   /**
@@ -55,6 +118,23 @@ public class Server implements Callable<Integer> {
       defaultValue = "12")
   protected static int playerThreads;
 
+  /**
+   * Maximum number of connected players. 0 keeps the limit imposed by the I/O model: the size of
+   * the thread pool in blocking mode, no limit with virtual threads or NIO.
+   */
+  @CommandLine.Option(
+      names = {"-m", "--max-connections"},
+      description =
+          "Maximum number of connected players, 0 for no limit (default: ${DEFAULT-VALUE}).",
+      defaultValue = "0")
+  protected int maxConnections;
+
+  /** Runs every ClientHandler (or NIO worker) on its own virtual thread. */
+  @CommandLine.Option(
+      names = {"--virtual-threads"},
+      description = "Run each player on a virtual thread instead of the --threads pool.")
+  protected boolean virtualThreads;
+
   /** TCP port on which the server listens. This value can be set using the -p or --port options. */
   @CommandLine.Option(
       names = {"-p", "--port"},
@@ -62,22 +142,189 @@ public class Server implements Callable<Integer> {
       defaultValue = "42069")
   protected int port;
 
+  /**
+   * Number of seconds a challenge waits for an answer before it is refused automatically. This
+   * value can be set using the --challenge-timeout option.
+   */
+  @CommandLine.Option(
+      names = {"--challenge-timeout"},
+      description =
+          "Seconds before an unanswered challenge is refused (default: ${DEFAULT-VALUE}).",
+      defaultValue = "30")
+  public static int challengeTimeout;
+
+  /**
+   * Number of seconds a player waits in the matchmaking queue before giving up. This value can be
+   * set using the --queue-timeout option.
+   */
+  @CommandLine.Option(
+      names = {"--queue-timeout"},
+      description = "Seconds before a queued player gives up (default: ${DEFAULT-VALUE}).",
+      defaultValue = "60")
+  public static int queueTimeout;
+
+  /**
+   * Number of seconds the players of a tournament round have to claim their game with ROUND before
+   * losing it. This value can be set using the --round-timeout option.
+   */
+  @CommandLine.Option(
+      names = {"--round-timeout"},
+      description =
+          "Seconds to claim a tournament game before forfeiting it (default: ${DEFAULT-VALUE}).",
+      defaultValue = "60")
+  protected int roundTimeout;
+
+  /**
+   * Number of seconds the players of a game interrupted by a restart have to rejoin it. This value
+   * can be set using the --rejoin-timeout option.
+   */
+  @CommandLine.Option(
+      names = {"--rejoin-timeout"},
+      description =
+          "Seconds to rejoin a game interrupted by a restart (default: ${DEFAULT-VALUE}).",
+      defaultValue = "120")
+  protected int rejoinTimeout;
+
+  /**
+   * Number of seconds a player whose connection was lost is kept, game included, waiting for its
+   * client to RESUME. This value can be set using the --grace-period option.
+   */
+  @CommandLine.Option(
+      names = {"--grace-period"},
+      description =
+          "Seconds a dropped player may RESUME, 0 to disable (default: ${DEFAULT-VALUE}).",
+      defaultValue = "60")
+  protected int gracePeriod;
+
+  /**
+   * Number of seconds of silence after which a client is sent PING, and then reaped if it stays
+   * silent as long again. This value can be set using the --heartbeat option.
+   */
+  @CommandLine.Option(
+      names = {"--heartbeat"},
+      description = "Seconds of silence before PING, 0 to disable (default: ${DEFAULT-VALUE}).",
+      defaultValue = "15")
+  protected int heartbeat;
+
+  /** Number of bots registered at startup. This value can be set using the --bots option. */
+  @CommandLine.Option(
+      names = {"--bots"},
+      description = "Number of bots players can challenge (default: ${DEFAULT-VALUE}).",
+      defaultValue = "0")
+  protected int botCount;
+
+  /**
+   * Milliseconds a bot may think before answering a move on a board larger than 3x3. This value can
+   * be set using the --bot-budget option.
+   */
+  @CommandLine.Option(
+      names = {"--bot-budget"},
+      description = "Milliseconds a bot may think per move (default: ${DEFAULT-VALUE}).",
+      defaultValue = "200")
+  protected int botBudget;
+
+  /** I/O model used to serve connections. This value can be set using the --io option. */
+  @CommandLine.Option(
+      names = {"--io"},
+      description = "I/O model: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).",
+      defaultValue = "BLOCKING")
+  protected IoMode ioMode;
+
+  /** Number of selector threads used in NIO mode. */
+  @CommandLine.Option(
+      names = {"--selectors"},
+      description = "Number of selector threads in nio mode (default: ${DEFAULT-VALUE}).",
+      defaultValue = "1")
+  protected int selectorThreads;
+
+  /**
+   * Loopback port of the {@link AdminServer}. This value can be set using the --admin-port option.
+   */
+  @CommandLine.Option(
+      names = {"--admin-port"},
+      description = "Local port answering METRICS, 0 to disable (default: ${DEFAULT-VALUE}).",
+      defaultValue = "0")
+  protected int adminPort;
+
+  /** Seconds between two metrics reports in the log. */
+  @CommandLine.Option(
+      names = {"--metrics-interval"},
+      description = "Seconds between two metrics logs, 0 to disable (default: ${DEFAULT-VALUE}).",
+      defaultValue = "60")
+  protected int metricsInterval;
+
   /**
    * Method executed by Picocli when running the command.
    *
    * <p>This method: - Creates a ServerSocket on the specified port - Initializes a thread pool -
    * Accepts incoming connections - Starts a ClientHandler for each new connection
    *
+   * <p>In NIO mode the work is delegated to {@link NioServer}.
+   *
    * @return 0 if everything went well, 1 in case of an IO error.
    */
   @Override
   public Integer call() {
-    try (ServerSocket serverSocket = new ServerSocket(port);
-        ExecutorService executor = Executors.newFixedThreadPool(playerThreads + 1)) {
+    connectionLimit = maxConnections;
+    if (ioMode == IoMode.BLOCKING && !virtualThreads) {
+      // a platform thread pool cannot serve more players than it has threads
+      connectionLimit =
+          maxConnections > 0 ? Math.min(maxConnections, playerThreads) : playerThreads;
+    }
+
+    try {
+      credentials = CredentialStore.open(Path.of(Login.LOGIN_FILE));
+    } catch (IOException e) {
+      System.out.println("[Server] Could not open login file: " + e);
+      return 1;
+    }
+    try {
+      stats = StatsStore.open(Path.of(StatsStore.STATS_FILE));
+    } catch (IOException e) {
+      System.out.println("[Server] Could not open statistics file: " + e);
+      return 1;
+    }
+    if (botCount > 0) {
+      bots = BotService.start(botCount, botBudget);
+    }
+    try {
+      // after the bots, whose seats in the interrupted games are taken back at once
+      journal = GameJournal.open(Path.of(GameJournal.JOURNAL_FILE));
+    } catch (IOException e) {
+      System.out.println("[Server] Could not open game journal: " + e);
+      return 1;
+    }
+    journal.recover(rejoinTimeout);
+    lobby.start();
+    queue.start();
+    sessions.start(gracePeriod);
+    tournaments.start(roundTimeout);
+    Heartbeat.start(heartbeat);
+    metrics.startDump(metricsInterval);
+    if (adminPort > 0) {
+      try {
+        AdminServer.start(adminPort);
+      } catch (IOException e) {
+        System.out.println("[Server] Could not open admin port: " + e);
+        return 1;
+      }
+    }
+
+    if (ioMode == IoMode.NIO) {
+      return new NioServer(port, selectorThreads, virtualThreads).call();
+    }
+
+    try (ServerSocket serverSocket = new ServerSocket(port, ACCEPT_BACKLOG);
+        ExecutorService executor =
+            virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(playerThreads + 1)) {
       System.out.println("[SERVER] Listening on port " + port);
 
       while (!serverSocket.isClosed()) {
         Socket clientSocket = serverSocket.accept();
+        // moves are tiny messages, relay them without waiting for the previous ACK (Nagle)
+        clientSocket.setTcpNoDelay(true);
         executor.submit(new ClientHandler(clientSocket));
       }
     } catch (IOException e) {
@@ -88,17 +335,66 @@ public class Server implements Callable<Integer> {
     return 0;
   }
 
+  /**
+   * Reserves a player slot if the server is not full.
+   *
+   * @return true if a slot has been reserved, false if the server is full
+   */
+  static boolean reserveSlot() {
+    int count;
+    do {
+      count = playerCount.get();
+      if (connectionLimit > 0 && count >= connectionLimit) {
+        return false;
+      }
+    } while (!playerCount.compareAndSet(count, count + 1));
+    return true;
+  }
+
+  /**
+   * Returns the connection limit as displayed in the logs.
+   *
+   * @return the limit, or "unlimited"
+   */
+  static String capacity() {
+    return connectionLimit > 0 ? String.valueOf(connectionLimit) : "unlimited";
+  }
+
   /**
    * Class responsible for handling a single client.
    *
-   * <p>Each instance is created when a new client connection is accepted.
+   * <p>Each instance is created when a new client connection is accepted. In blocking mode the
+   * handler owns a thread and loops on {@link #step()}; in NIO mode {@link NioServer} calls {@link
+   * #step()} whenever a complete line is available for this client.
    */
   static class ClientHandler implements Runnable {
 
     private final Socket socket;
-    private boolean inGame = false;
-    private Game game = null;
-    private Player player = null;
+    private final boolean accepted;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /** Reader of the blocking mode, until the protocol is negotiated. */
+    private BufferedReader in;
+
+    private BufferedWriter out;
+    private CommandReader commands;
+    private volatile GameSession session = null;
+    private volatile Player player = null;
+
+    /** Set when the client quits, its player is then logged out instead of being parked. */
+    private volatile boolean quit = false;
+
+    /** Set once the player has been parked or logged out, which only happens once. */
+    private final AtomicBoolean gone = new AtomicBoolean(false);
+
+    /** Connection queuing shared bytes in NIO mode, null in blocking mode. */
+    private final SharedLine.Sink sink;
+
+    /** Game the client is watching, null if none. */
+    private volatile Spectator watching = null;
+
+    /** Liveness of the connection, set by {@link #startHeartbeat} before the first step. */
+    private volatile Heartbeat heartbeat;
 
     /**
      * Creates a handler for a given client. If the server is full, the connection is refused.
@@ -107,7 +403,9 @@ public class Server implements Callable<Integer> {
      */
     public ClientHandler(Socket socket) {
       this.socket = socket;
-      if (playerCount.get() >= playerThreads) {
+      this.sink = null;
+      this.accepted = reserveSlot();
+      if (!accepted) {
         try {
           BufferedWriter out =
               new BufferedWriter(
@@ -118,21 +416,37 @@ public class Server implements Callable<Integer> {
         } catch (IOException e) {
           System.out.println("[Server] Could not close socket: " + e);
         }
-      } else {
-        playerCount.addAndGet(1);
+        System.out.println("[Server] No available slots " + playerCount + "/" + capacity());
       }
     }
 
+    /**
+     * Creates a handler over already opened streams. The caller must have reserved a slot.
+     *
+     * @param socket the client's socket
+     * @param in reader delivering the client's lines
+     * @param out writer sending lines to the client
+     * @param sink connection queuing the shared lines broadcast to spectators
+     */
+    ClientHandler(Socket socket, Reader in, BufferedWriter out, SharedLine.Sink sink) {
+      this.socket = socket;
+      this.sink = sink;
+      this.accepted = true;
+      this.out = out;
+      this.commands = new CommandReader(in);
+    }
+
     /**
      * Main loop of the client handler.
      *
      * <p>This method handles: - Messages received from the client - Login - Matchmaking and lobby
      * actions - Exceptions and cleanup
-     *
-     * @throws RuntimeException in case of unexpected error
      */
     @Override
     public void run() {
+      if (!accepted) {
+        return;
+      }
       try (socket;
           BufferedReader in =
               new BufferedReader(
@@ -140,67 +454,283 @@ public class Server implements Callable<Integer> {
           BufferedWriter out =
               new BufferedWriter(
                   new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
-        System.out.println(playerCount.get() + " / " + playerThreads + " players connected.");
-        out.write(Message.OK + Norms.END_OF_LINE);
-        out.flush();
-        // login
-        player = login(socket, in, out);
-        if (player == null) {
-          return;
+        this.in = in;
+        this.out = out;
+        // also reaps a client that never sends its first line
+        startHeartbeat(this::close);
+        greet();
+        negotiate();
+        commands = new CommandReader(this.in);
+        while (!socket.isClosed() && step()) {
+          // every step handles one command
         }
+      } catch (IOException e) {
+        System.out.println("[Server] exception: " + e);
+      } finally {
+        close();
+      }
+    }
+
+    /**
+     * Sends the connection acknowledgement to the client.
+     *
+     * @throws IOException if the client cannot be reached
+     */
+    void greet() throws IOException {
+      System.out.println(playerCount.get() + " / " + capacity() + " players connected.");
+      out.write(Message.OK + Norms.END_OF_LINE);
+      out.flush();
+    }
+
+    /**
+     * Starts checking that the client is alive.
+     *
+     * @param reap closes the connection once the client is found gone
+     */
+    void startHeartbeat(Runnable reap) {
+      heartbeat = Heartbeat.watch(this::ping, reap);
+    }
+
+    /** Sends PING to a silent client. A failed write is noticed by the reader of the socket. */
+    private void ping() {
+      try {
+        out.write(Message.PING + Norms.END_OF_LINE);
+        out.flush();
+      } catch (IOException e) {
+        System.out.println("[Server] Could not ping client: " + e);
+      }
+    }
 
-        while (!socket.isClosed()) {
-          if (inGame) {
-            // game functions
-            gameLoop(socket, in, out, game, player.username);
-            inGame = false;
+    /**
+     * Switches the connection to the binary protocol if the client asks for it with its first line.
+     * Any other first line is left for the login. The client waits for the OK before sending
+     * frames, so nothing has been read past the negotiation line.
+     *
+     * @throws IOException if the client cannot be reached
+     */
+    private void negotiate() throws IOException {
+      in.mark(NioServer.MAX_LINE_LENGTH);
+      if (!Frames.NEGOTIATION.equals(in.readLine())) {
+        in.reset();
+        return;
+      }
+      out.write(Message.OK + Norms.END_OF_LINE);
+      out.flush();
+      in = new FrameReader(socket.getInputStream());
+      out = new BufferedWriter(new FrameWriter(socket.getOutputStream()));
+    }
+
+    /**
+     * Processes one unit of work: the login, one lobby command or one line of the current game.
+     *
+     * @return false when the connection must be closed
+     * @throws IOException if the client cannot be reached
+     */
+    boolean step() throws IOException {
+      Command command = commands.next();
+      if (command == null) {
+        socket.close();
+        return false;
+      }
+      // a connection running a command is not reaped, the command has its own timeout
+      heartbeat.received();
+      try {
+        return handle(command);
+      } finally {
+        heartbeat.handled();
+      }
+    }
+
+    /**
+     * Handles one command: the login, a lobby command or a line of the current game.
+     *
+     * @param command command received from the client
+     * @return false when the connection must be closed
+     * @throws IOException if the client cannot be reached
+     */
+    private boolean handle(Command command) throws IOException {
+      if (command.verb() == Client.Message.PING) {
+        // heartbeat of the client, answered in any state
+        out.write(Message.PONG + Norms.END_OF_LINE);
+        out.flush();
+        return true;
+      }
+      if (command.verb() == Client.Message.PONG) {
+        // answer to a PING of the server, receiving it was enough
+        return true;
+      }
+      if (player == null) {
+        // login, or the player of a lost connection coming back
+        if (command.verb() == Client.Message.RESUME) {
+          Sessions.Resumed resumed = resume(command, out, this::close);
+          if (resumed != null) {
+            session = resumed.game();
+            player = resumed.player();
+          }
+        } else {
+          player = login(socket, command, out, this::close);
+        }
+        return !socket.isClosed();
+      }
+      GameSession current = session;
+      if (current != null && current.isPlaying(player)) {
+        // game functions, the opponent's moves are relayed by the session
+        if (!current.handle(player, command)) {
+          quit = true;
+          socket.close();
+        }
+        return !socket.isClosed();
+      }
+      session = null;
+      // lobby functions
+      long start = System.nanoTime();
+      Client.Message message = command.verb();
+      if (message == null) {
+        metrics.unknownCommand();
+        out.write(Message.ERROR + " 0" + Norms.END_OF_LINE); // unknown command
+        out.flush();
+        return true;
+      }
+      switch (message) {
+        case PLAYERS:
+          if (command.hasArguments()) {
+            queryPlayers(socket, out, players, command.rest(0));
           } else {
-            // lobby functions
-            String clientResponse = in.readLine();
-            String[] clientResponseParts = clientResponse.split(" ", 2);
-            Client.Message message = Client.Message.valueOf(clientResponseParts[0]);
-            Game result;
-            switch (message) {
-              case PLAYERS:
-                sendListPlayers(socket, out, players);
-                break;
-                // matchmaking functions
-              case CHALLENGES:
-                getChallenges(out, player);
-                break;
-              case CHALLENGE:
-                game = challengePlayer(socket, out, player, players, clientResponseParts[1]);
-                if (game != null) {
-                  inGame = true;
-                }
-                break;
-              case ACCEPT:
-                game = acceptChallenge(socket, in, out, player, clientResponseParts[1]);
-                if (game != null) {
-                  inGame = true;
-                }
-                break;
-              case REFUSE:
-                refuseChallenge(socket, in, out, player, clientResponseParts[1]);
-                break;
-              case QUIT:
-                socket.close();
-                break;
-              default:
-                break;
-            }
+            sendListPlayers(socket, out, players);
           }
+          break;
+          // matchmaking functions
+        case CHALLENGES:
+          getChallenges(out, player);
+          break;
+        case SUBSCRIBE:
+          lobby.subscribe(player, out);
+          break;
+        case GAMES:
+          out.write(games.gamesMessage() + Norms.END_OF_LINE);
+          out.flush();
+          break;
+        case WATCH:
+          watch(command);
+          break;
+        case UNWATCH:
+          unwatch();
+          out.write(Message.OK + Norms.END_OF_LINE);
+          out.flush();
+          break;
+        case CHALLENGE:
+          // a player does not receive the moves of another game during its own
+          unwatch();
+          session = challengePlayer(socket, out, player, players, command.rest(0));
+          break;
+        case QUEUE:
+          unwatch();
+          session = queuePlayer(socket, out, player, command.rest(0));
+          break;
+        case REJOIN:
+          unwatch();
+          session = rejoinGame(out, player);
+          break;
+          // tournament functions
+        case TOURNAMENTS:
+          out.write(tournaments.tournamentsMessage() + Norms.END_OF_LINE);
+          out.flush();
+          break;
+        case REGISTER:
+          registerPlayer(out, player, command.rest(0));
+          break;
+        case ROUND:
+          unwatch();
+          session = playRound(socket, out, player, command.rest(0));
+          break;
+        case STANDINGS:
+          sendStandings(out, command.rest(0));
+          break;
+        case ACCEPT:
+          unwatch();
+          session = acceptChallenge(socket, out, player, command.rest(0));
+          break;
+        case REFUSE:
+          refuseChallenge(socket, out, player, command.rest(0));
+          break;
+        case QUIT:
+          quit = true;
+          socket.close();
+          break;
+        default:
+          break;
+      }
+      // CHALLENGE, QUEUE and ROUND include the time waited for an opponent
+      metrics.command(message, start);
+      return !socket.isClosed();
+    }
+
+    /**
+     * Starts sending a game to the client, in place of the one it was watching. The game's BOARD
+     * snapshot answers the command, an unknown game is answered with {@code ERROR 1}.
+     *
+     * @param command WATCH and the id of the game
+     * @throws IOException if the client cannot be reached
+     */
+    private void watch(Command command) throws IOException {
+      int id = command.intArgument(0);
+      GameSession game = id == Command.INVALID ? null : games.get(id);
+      if (command.argumentCount() != 1 || game == null) {
+        out.write(Message.ERROR + " 1" + Norms.END_OF_LINE); // no such game
+        out.flush();
+        return;
+      }
+      unwatch();
+      watching = game.watch(out, sink);
+    }
+
+    /** Stops sending the watched game to the client, if any. */
+    private void unwatch() {
+      Spectator current = watching;
+      if (current != null) {
+        current.session.unwatch(current);
+        watching = null;
+      }
+    }
+
+    /**
+     * Called as soon as the connection is known to be lost, possibly while another thread is still
+     * blocked on this client's behalf. Cancels the player's challenges, then parks the player until
+     * its client resumes. A player who quit, or whose grace period is disabled, is unregistered at
+     * once and leaves its game, whose opponent wins.
+     */
+    void disconnected() {
+      Player current = player;
+      // a resumed player must not be parked again by a late call for its previous connection
+      if (current != null && gone.compareAndSet(false, true)) {
+        lobby.unsubscribe(current);
+        unwatch();
+        cancelChallenges(current);
+        queue.cancel(current);
+        GameSession game = session;
+        if (quit || !sessions.park(current, game)) {
+          sessions.logout(current, game);
         }
-        playerCount.addAndGet(-1);
-        players.removeIf(p -> Objects.equals(p.username, player.username));
-        System.out.println("[Server] closing connection");
+      }
+    }
+
+    /** Releases the player slot and unregisters the player. Safe to call more than once. */
+    void close() {
+      if (!accepted || !closed.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        socket.close();
       } catch (IOException e) {
-        if (playerCount.get() >= playerThreads) {
-          System.out.println("[Server] No available slots " + playerCount + "/" + playerThreads);
-        } else {
-          System.out.println("[Server] exception: " + e);
-        }
+        System.out.println("[Server] Could not close socket: " + e);
+      }
+      playerCount.addAndGet(-1);
+      Heartbeat current = heartbeat;
+      if (current != null) {
+        current.stop();
       }
+      disconnected();
+      System.out.println("[Server] closing connection");
     }
   }
 
@@ -211,11 +741,6 @@ public class Server implements Callable<Integer> {
    * @return the Player instance if found, null otherwise
    */
   public static Player getPlayerByUsername(String username) {
-    for (Player player : players) {
-      if (player.username.equals(username)) {
-        return player;
-      }
-    }
-    return null;
+    return players.get(username);
   }
 }
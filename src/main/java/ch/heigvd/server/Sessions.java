@@ -0,0 +1,223 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Player;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session tokens of the logged in players, which let a client that lost its connection take its
+ * place back with RESUME instead of logging in again.
+ *
+ * <p>Each LOGIN is answered with a new random token. When a connection is lost without QUIT, its
+ * player is parked instead of being logged out: it stays registered, keeps its game and its seat
+ * buffers the opponent's moves. A RESUME with the token within the grace period attaches the new
+ * connection to the parked player. Once the grace period is over, the player is logged out as if it
+ * had disconnected for good, and the opponent of its game wins.
+ *
+ * <p>A RESUME may also arrive before the server noticed that the previous connection is gone, after
+ * a short network outage for instance. The previous connection is then closed first, which parks
+ * its player.
+ */
+public class Sessions {
+  /** Random bytes of a token, sent as 24 URL-safe Base64 characters. */
+  static final int TOKEN_BYTES = 18;
+
+  /** Seconds between two checks of the grace periods. */
+  static final int SWEEP_SECONDS = 1;
+
+  private final SecureRandom random = new SecureRandom();
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Player, String> tokens = new ConcurrentHashMap<>();
+  private int gracePeriod;
+
+  /**
+   * Starts logging out the parked players whose grace period is over.
+   *
+   * @param gracePeriod seconds a parked player waits for RESUME, 0 to log out players at once
+   */
+  public void start(int gracePeriod) {
+    this.gracePeriod = gracePeriod;
+    if (gracePeriod <= 0) {
+      return;
+    }
+    ScheduledExecutorService sweeper =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("session-sweeper").daemon().factory());
+    sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_SECONDS, SWEEP_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Issues the token of a player who just logged in.
+   *
+   * @param player logged in player
+   * @param connection closes the player's connection, used when it is resumed from elsewhere
+   * @return the token
+   */
+  public String issue(Player player, Runnable connection) {
+    byte[] bytes = new byte[TOKEN_BYTES];
+    random.nextBytes(bytes);
+    String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    entries.put(token, new Entry(player, connection));
+    tokens.put(player, token);
+    return token;
+  }
+
+  /**
+   * Parks the player of a lost connection until it resumes or its grace period is over.
+   *
+   * @param player player of the connection
+   * @param game game the player was in, or null
+   * @return false if the player must be logged out at once
+   */
+  boolean park(Player player, GameSession game) {
+    String token = tokens.get(player);
+    Entry entry = token == null ? null : entries.get(token);
+    if (entry == null || gracePeriod <= 0) {
+      return false;
+    }
+    synchronized (entry) {
+      if (game != null && game.isPlaying(entry.player)) {
+        game.park(entry.player);
+        entry.game = game;
+      } else {
+        entry.game = null;
+      }
+      entry.deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(gracePeriod);
+      entry.parked = true;
+    }
+    return true;
+  }
+
+  /**
+   * Attaches a new connection to the parked player of a token. A player whose previous connection
+   * still looks alive is parked first.
+   *
+   * @param token token given at LOGIN
+   * @param connection closes the new connection
+   * @return the parked player and its game, or null if the token is unknown or has expired
+   */
+  public Resumed resume(String token, Runnable connection) {
+    Entry entry = entries.get(token);
+    if (entry == null) {
+      return null;
+    }
+    Runnable previous;
+    synchronized (entry) {
+      previous = entry.parked ? null : entry.connection;
+    }
+    if (previous != null) {
+      // parks the player, synchronously, unless the previous connection quit meanwhile
+      previous.run();
+    }
+    synchronized (entry) {
+      if (!entry.parked || entries.get(token) != entry) {
+        return null;
+      }
+      entry.parked = false;
+      entry.connection = connection;
+      Server.metrics.sessionResumed();
+      return new Resumed(entry.player, entry.game);
+    }
+  }
+
+  /**
+   * Logs out a parked player at once, so that it can log in again from a client that lost its
+   * token.
+   *
+   * @param username username of the player
+   * @return true if the player was parked
+   */
+  public boolean expire(String username) {
+    Player player = Server.players.get(username);
+    String token = player == null ? null : tokens.get(player);
+    Entry entry = token == null ? null : entries.get(token);
+    return entry != null && expire(token, entry, 0, true);
+  }
+
+  /**
+   * Logs a player out for good: it is unregistered, its token is forgotten and the opponent of its
+   * game wins.
+   *
+   * @param player player leaving
+   * @param game game the player was in, or null
+   */
+  void logout(Player player, GameSession game) {
+    String token = tokens.remove(player);
+    if (token != null) {
+      entries.remove(token);
+    }
+    Server.players.remove(player);
+    Server.lobby.changed(player);
+    if (game != null) {
+      game.leave(player);
+    }
+  }
+
+  /**
+   * Returns the number of players waiting for their client to resume.
+   *
+   * @return the number of parked players
+   */
+  public int parked() {
+    int count = 0;
+    for (Entry entry : entries.values()) {
+      if (entry.parked) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** Logs out the parked players whose grace period is over. */
+  private void sweep() {
+    try {
+      long now = System.nanoTime();
+      entries.forEach((token, entry) -> expire(token, entry, now, false));
+    } catch (RuntimeException e) {
+      // an exception would cancel the scheduled task
+      System.out.println("[Server] Exception while expiring sessions: " + e);
+    }
+  }
+
+  /** Logs out a parked player whose grace period is over at {@code now}, or at once if forced. */
+  private boolean expire(String token, Entry entry, long now, boolean force) {
+    GameSession game;
+    synchronized (entry) {
+      boolean due = force || now - entry.deadline >= 0;
+      if (!entry.parked || !due || !entries.remove(token, entry)) {
+        return false;
+      }
+      entry.parked = false;
+      game = entry.game;
+    }
+    Server.metrics.sessionExpired();
+    logout(entry.player, game);
+    return true;
+  }
+
+  /**
+   * Player taken back by RESUME.
+   *
+   * @param player parked player
+   * @param game game it was playing, or null if it was in the lobby
+   */
+  public record Resumed(Player player, GameSession game) {}
+
+  /** Player of a token, guarded by its own lock. */
+  private static final class Entry {
+    final Player player;
+    Runnable connection;
+    GameSession game;
+    boolean parked;
+    long deadline;
+
+    Entry(Player player, Runnable connection) {
+      this.player = player;
+      this.connection = connection;
+    }
+  }
+}
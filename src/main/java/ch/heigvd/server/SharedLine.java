@@ -0,0 +1,73 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Frames;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lines sent unchanged to many connections, such as a move broadcast to the spectators of a game.
+ *
+ * <p>The text is built once, and its bytes are encoded at most once per protocol, the first time a
+ * connection needs them. A connection served by {@link NioServer} queues these shared bytes as they
+ * are, while a blocking connection writes {@link #lines} through its writer.
+ */
+public final class SharedLine {
+  /** Whole lines, each ending with an end of line. */
+  public final String lines;
+
+  private volatile ByteBuffer text;
+  private volatile ByteBuffer frames;
+
+  /**
+   * Creates shared lines.
+   *
+   * @param lines whole lines, each ending with an end of line
+   */
+  public SharedLine(String lines) {
+    this.lines = lines;
+  }
+
+  /**
+   * Returns the lines encoded in UTF-8.
+   *
+   * @return a view of the shared bytes, with its own position
+   */
+  public ByteBuffer text() {
+    ByteBuffer bytes = text;
+    if (bytes == null) {
+      // two threads may both encode the lines, they get the same bytes
+      bytes = StandardCharsets.UTF_8.encode(lines);
+      text = bytes;
+    }
+    return bytes.duplicate();
+  }
+
+  /**
+   * Returns the lines encoded as frames of the binary protocol.
+   *
+   * @return a view of the shared bytes, with its own position
+   */
+  public ByteBuffer frames() {
+    ByteBuffer bytes = frames;
+    if (bytes == null) {
+      ByteArrayOutputStream encoded = new ByteArrayOutputStream(lines.length());
+      Frames.encodeLines(lines, encoded);
+      bytes = ByteBuffer.wrap(encoded.toByteArray());
+      frames = bytes;
+    }
+    return bytes.duplicate();
+  }
+
+  /** Connection able to queue the bytes of shared lines without encoding them again. */
+  interface Sink {
+    /**
+     * Queues the lines for the client without blocking.
+     *
+     * @param line lines to send
+     * @return false if the connection already has too much waiting to be sent, the lines are then
+     *     dropped
+     */
+    boolean offer(SharedLine line);
+  }
+}
@@ -0,0 +1,168 @@
+package ch.heigvd.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Client watching a game, fed by the game's {@link GameSession} without ever slowing it down.
+ *
+ * <p>The session queues each broadcast line and returns at once. As for a {@link LobbyFeed}
+ * subscriber, the queue is written by at most one virtual thread at a time. A spectator falling
+ * more than {@link #MAX_BACKLOG} lines behind drops its queue and receives a snapshot of the board
+ * instead. On {@code --io nio}, the lines are handed to the connection as shared bytes, and a
+ * connection whose output is already piling up counts as behind as well.
+ */
+final class Spectator {
+  /** Number of queued lines after which a spectator is resynchronized with a snapshot. */
+  static final int MAX_BACKLOG = 64;
+
+  /** Milliseconds before a snapshot is offered again to a congested connection. */
+  static final int RETRY_MS = 100;
+
+  private static final ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
+  private static final Executor retries =
+      CompletableFuture.delayedExecutor(RETRY_MS, TimeUnit.MILLISECONDS, writers);
+
+  /** Game watched. */
+  final GameSession session;
+
+  private final BufferedWriter out;
+  private final SharedLine.Sink sink;
+  private final ArrayDeque<Push> queue = new ArrayDeque<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+  /** True until the spectator has received a snapshot it can apply the next moves to. */
+  private boolean behind = true;
+
+  volatile boolean closed;
+
+  /**
+   * Creates a spectator. It receives a snapshot once {@link #schedule() scheduled}.
+   *
+   * @param session game watched
+   * @param out writer of the spectator's connection
+   * @param sink connection queuing shared bytes, or null to write the lines through {@code out}
+   */
+  Spectator(GameSession session, BufferedWriter out, SharedLine.Sink sink) {
+    this.session = session;
+    this.out = out;
+    this.sink = sink;
+  }
+
+  /**
+   * Queues a line without blocking.
+   *
+   * @param sequence position of the line in the game, lines already covered by a snapshot are
+   *     skipped
+   * @param line line shared by every spectator
+   */
+  void offer(int sequence, SharedLine line) {
+    synchronized (queue) {
+      if (behind) {
+        return;
+      }
+      if (queue.size() >= MAX_BACKLOG) {
+        queue.clear();
+        behind = true;
+        Server.metrics.spectatorResync();
+      } else {
+        queue.add(new Push(sequence, line));
+      }
+    }
+    schedule();
+  }
+
+  /** Makes sure a writer drains the queue. At most one writer per spectator. */
+  void schedule() {
+    if (scheduled.compareAndSet(false, true)) {
+      writers.execute(this::drain);
+    }
+  }
+
+  private void drain() {
+    boolean congested = false;
+    do {
+      try {
+        congested = !write();
+      } catch (IOException e) {
+        // the handler notices the closed connection and stops watching
+        closed = true;
+      }
+      scheduled.set(false);
+    } while (!closed && !congested && hasWork() && scheduled.compareAndSet(false, true));
+    if (congested && !closed) {
+      retries.execute(this::schedule);
+    }
+  }
+
+  private boolean hasWork() {
+    synchronized (queue) {
+      return behind || !queue.isEmpty();
+    }
+  }
+
+  /**
+   * Writes the queued lines, or a snapshot when the spectator is behind. Lines already covered by
+   * the snapshot are skipped.
+   *
+   * @return false if the connection did not accept a line and the spectator is behind again
+   */
+  private boolean write() throws IOException {
+    int covered = -1;
+    while (!closed) {
+      boolean resync;
+      Push push = null;
+      synchronized (queue) {
+        resync = behind;
+        if (resync) {
+          behind = false;
+          queue.clear();
+        } else {
+          push = queue.poll();
+        }
+      }
+      if (resync) {
+        GameSession.Snapshot snapshot = session.snapshot();
+        covered = snapshot.sequence();
+        if (!deliver(snapshot.line())) {
+          return false;
+        }
+      } else if (push == null) {
+        break;
+      } else if (push.sequence > covered && !deliver(push.line)) {
+        Server.metrics.spectatorResync();
+        return false;
+      }
+    }
+    if (sink == null) {
+      out.flush();
+    }
+    return true;
+  }
+
+  /** Sends one shared line, marking the spectator as behind if the connection refuses it. */
+  private boolean deliver(SharedLine line) throws IOException {
+    if (sink == null) {
+      // a single call, so the line never interleaves with the handler's responses
+      out.write(line.lines);
+      return true;
+    }
+    if (sink.offer(line)) {
+      return true;
+    }
+    synchronized (queue) {
+      queue.clear();
+      behind = true;
+    }
+    return false;
+  }
+
+  private record Push(int sequence, SharedLine line) {}
+}
@@ -0,0 +1,239 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Norms;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Standings of a tournament, kept ranked as the results arrive.
+ *
+ * <p>A win is worth a point, a draw half a point and a bye a point. Players on equal points are
+ * ranked by their Buchholz score, the sum of the points of the opponents they met, then by wins and
+ * by rating. The ranking is a sorted set updated by each result: the two players and the opponents
+ * whose Buchholz score changes are taken out and put back, so a result costs a few logarithmic
+ * steps instead of sorting every player again. Not thread-safe, its {@link Tournament} guards it.
+ */
+public class Standings {
+  /** Half points of a win or a bye. */
+  static final int WIN = 2;
+
+  /** Half points of a draw. */
+  static final int DRAW = 1;
+
+  private static final Comparator<Entry> RANKING =
+      Comparator.comparingInt((Entry entry) -> -entry.halfPoints)
+          .thenComparingInt(entry -> -entry.buchholz)
+          .thenComparingInt(entry -> -entry.wins)
+          .thenComparingInt(entry -> -entry.rating)
+          .thenComparing(entry -> entry.username);
+
+  private final Map<String, Entry> entries = new HashMap<>();
+  private final TreeSet<Entry> ranking = new TreeSet<>(RANKING);
+
+  /**
+   * Adds a player with no point.
+   *
+   * @param username username of the player
+   * @param rating rating of the player when it registered, used to seed and break ties
+   * @return false if the player is already in the standings
+   */
+  public boolean add(String username, int rating) {
+    if (entries.containsKey(username)) {
+      return false;
+    }
+    Entry entry = new Entry(username, rating);
+    entries.put(username, entry);
+    ranking.add(entry);
+    return true;
+  }
+
+  /**
+   * Returns the number of players.
+   *
+   * @return the number of players
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Records a game won by a player.
+   *
+   * @param winner username of the winner
+   * @param loser username of the loser
+   */
+  public void win(String winner, String loser) {
+    result(entries.get(winner), WIN, entries.get(loser), 0);
+  }
+
+  /**
+   * Records a drawn game.
+   *
+   * @param first username of a player
+   * @param second username of its opponent
+   */
+  public void draw(String first, String second) {
+    result(entries.get(first), DRAW, entries.get(second), DRAW);
+  }
+
+  /**
+   * Records a game none of the players showed up for, lost by both.
+   *
+   * @param first username of a player
+   * @param second username of its opponent
+   */
+  public void forfeit(String first, String second) {
+    result(entries.get(first), 0, entries.get(second), 0);
+  }
+
+  /**
+   * Gives a player the point of a round without any opponent.
+   *
+   * @param username username of the player
+   */
+  public void bye(String username) {
+    Entry entry = entries.get(username);
+    entry.byes++;
+    score(entry, WIN);
+  }
+
+  /**
+   * Returns the players from the first to the last.
+   *
+   * @return the ranked usernames
+   */
+  public List<String> ranked() {
+    List<String> usernames = new ArrayList<>(ranking.size());
+    for (Entry entry : ranking) {
+      usernames.add(entry.username);
+    }
+    return usernames;
+  }
+
+  /**
+   * Returns the standings as {@code username,points,wins,draws,losses,buchholz;...}, from the first
+   * player to the last, the points being written as 2.5 for two points and a half.
+   *
+   * @return the standings
+   */
+  public String message() {
+    StringBuilder sb = new StringBuilder();
+    for (Entry entry : ranking) {
+      sb.append(entry.username)
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(points(entry.halfPoints))
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(entry.wins)
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(entry.draws)
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(entry.losses)
+          .append(Norms.ELEMENT_SEPARATOR)
+          .append(points(entry.buchholz))
+          .append(Norms.OBJECT_SEPARATOR);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the entry of a player.
+   *
+   * @param username username of the player
+   * @return the entry, or null if the player is not in the standings
+   */
+  Entry get(String username) {
+    return entries.get(username);
+  }
+
+  /**
+   * Returns the entries from the first to the last.
+   *
+   * @return the ranked entries
+   */
+  List<Entry> entries() {
+    return new ArrayList<>(ranking);
+  }
+
+  /** Scores a game, then links both players for their Buchholz scores. */
+  private void result(Entry first, int firstPoints, Entry second, int secondPoints) {
+    score(first, firstPoints);
+    score(second, secondPoints);
+    ranking.remove(first);
+    ranking.remove(second);
+    count(first, firstPoints);
+    count(second, secondPoints);
+    // each opponent counts as many times as it was met, with its current points
+    first.opponents.add(second);
+    first.met.add(second.username);
+    first.buchholz += second.halfPoints;
+    second.opponents.add(first);
+    second.met.add(first.username);
+    second.buchholz += first.halfPoints;
+    ranking.add(first);
+    ranking.add(second);
+  }
+
+  /** Adds points to a player and to the Buchholz score of every opponent it met. */
+  private void score(Entry entry, int halfPoints) {
+    if (halfPoints == 0) {
+      return;
+    }
+    ranking.remove(entry);
+    entry.halfPoints += halfPoints;
+    ranking.add(entry);
+    for (Entry opponent : entry.opponents) {
+      ranking.remove(opponent);
+      opponent.buchholz += halfPoints;
+      ranking.add(opponent);
+    }
+  }
+
+  /** Counts a game by its outcome, the points of a forfeit counting as a loss. */
+  private static void count(Entry entry, int halfPoints) {
+    switch (halfPoints) {
+      case WIN -> entry.wins++;
+      case DRAW -> entry.draws++;
+      default -> entry.losses++;
+    }
+  }
+
+  private static String points(int halfPoints) {
+    return halfPoints / 2 + (halfPoints % 2 == 0 ? "" : ".5");
+  }
+
+  /**
+   * Score of one player. Only changed while out of the ranking, whose order depends on it.
+   *
+   * <p>The fields other than the score are used by the pairing.
+   */
+  static final class Entry {
+    final String username;
+    final int rating;
+    int halfPoints;
+    int buchholz;
+    int wins;
+    int draws;
+    int losses;
+    int byes;
+
+    /** Games started with the first move, to give it to each player as often. */
+    int firsts;
+
+    /** Opponents met, once per game. */
+    final List<Entry> opponents = new ArrayList<>();
+
+    /** Usernames of the opponents met, to avoid rematches. */
+    final Set<String> met = new HashSet<>();
+
+    Entry(String username, int rating) {
+      this.username = username;
+      this.rating = rating;
+    }
+  }
+}
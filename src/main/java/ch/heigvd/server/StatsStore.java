@@ -0,0 +1,207 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Player;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Persistent player statistics.
+ *
+ * <p>The statistics are kept in an append-only log with one {@code username wins losses draws
+ * winStreak rating} line per update, the last line of a player winning. The log is loaded and
+ * compacted when the server starts, dropping a last line cut by a crash. Afterwards updates only
+ * touch memory: {@link #save(Player)} records the new values and marks the player dirty, and a
+ * background thread appends every dirty player in one write and one fsync per flush interval.
+ * Game-over handling therefore never waits on the disk.
+ */
+public class StatsStore {
+  /** Name of the statistics log. */
+  public static final String STATS_FILE = "stats.txt";
+
+  /** Delay between two flushes of the dirty players. */
+  private static final long FLUSH_INTERVAL_MS = 1000;
+
+  private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+  private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+  private final FileChannel channel;
+  private final Thread flusher;
+
+  private StatsStore(FileChannel channel) {
+    this.channel = channel;
+    this.flusher = new Thread(this::flushLoop, "stats-flusher");
+  }
+
+  /**
+   * Loads and compacts the statistics log, then starts the background flusher.
+   *
+   * @param file path of the statistics log
+   * @return the opened store
+   * @throws IOException if the log cannot be read or rewritten
+   */
+  public static StatsStore open(Path file) throws IOException {
+    ConcurrentHashMap<String, Stats> loaded = new ConcurrentHashMap<>();
+    if (Files.exists(file)) {
+      // a last line without its end of line was torn by a crash, even if it still parses
+      boolean complete = endsWithNewline(file);
+      int fields = 0;
+      try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        String line = reader.readLine();
+        while (line != null) {
+          String next = reader.readLine();
+          if (next == null && !complete) {
+            break;
+          }
+          String[] parts = line.split(" ");
+          if (fields == 0) {
+            // a log written before the ratings existed has one field less on every line
+            fields = parts.length == Stats.LEGACY_FIELDS ? Stats.LEGACY_FIELDS : Stats.FIELDS;
+          }
+          try {
+            if (parts.length == fields) {
+              loaded.put(parts[0], Stats.parse(parts));
+            }
+          } catch (NumberFormatException e) {
+            // a damaged record, the previous record of that player is kept
+          }
+          line = next;
+        }
+      }
+    }
+
+    // compaction: one line per player, swapped in atomically
+    StringBuilder lines = new StringBuilder();
+    for (var entry : loaded.entrySet()) {
+      lines.append(entry.getValue().toLine(entry.getKey()));
+    }
+    StatsStore store = new StatsStore(LogFiles.replace(file, lines));
+    store.stats.putAll(loaded);
+    store.flusher.setDaemon(true);
+    store.flusher.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(store::flush, "stats-shutdown"));
+    System.out.println("[Server] Loaded statistics of " + loaded.size() + " players from " + file);
+    return store;
+  }
+
+  /**
+   * Creates a Player with the statistics stored for the given username.
+   *
+   * @param username username of the player
+   * @return a new Player, with zeroed statistics if none are stored
+   */
+  public Player load(String username) {
+    Stats known = stats.get(username);
+    if (known == null) {
+      return new Player(username);
+    }
+    Player player = new Player(username, known.wins, known.losses, known.draws, known.winStreak);
+    player.rating = known.rating;
+    return player;
+  }
+
+  /**
+   * Records the current statistics of the player. The write to disk happens asynchronously.
+   *
+   * @param player player whose statistics changed
+   */
+  public void save(Player player) {
+    stats.put(
+        player.username,
+        new Stats(player.wins, player.losses, player.draws, player.winStreak, player.rating));
+    dirty.add(player.username);
+  }
+
+  /**
+   * Restores statistics logged by the {@link GameJournal}, unless the stored ones already count as
+   * many games: the statistics only ever grow by one game at a time.
+   *
+   * @param record statistics of a player after a game
+   * @return true if the statistics were restored
+   */
+  public boolean recover(Player record) {
+    Stats known = stats.get(record.username);
+    if (known != null
+        && known.wins + known.losses + known.draws >= record.wins + record.losses + record.draws) {
+      return false;
+    }
+    save(record);
+    return true;
+  }
+
+  /** Appends the dirty players to the log. Runs on the flusher thread and at shutdown. */
+  synchronized void flush() {
+    if (dirty.isEmpty()) {
+      return;
+    }
+    StringBuilder lines = new StringBuilder();
+    Iterator<String> iterator = dirty.iterator();
+    while (iterator.hasNext()) {
+      String username = iterator.next();
+      // removed before reading so that a concurrent save marks the player dirty again
+      iterator.remove();
+      lines.append(stats.get(username).toLine(username));
+    }
+    try {
+      ByteBuffer bytes = StandardCharsets.UTF_8.encode(lines.toString());
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+      channel.force(false);
+    } catch (IOException e) {
+      System.out.println("[Server] Could not write statistics: " + e);
+    }
+  }
+
+  private static boolean endsWithNewline(Path file) throws IOException {
+    try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = reader.size();
+      if (size == 0) {
+        return true;
+      }
+      ByteBuffer last = ByteBuffer.allocate(1);
+      reader.read(last, size - 1);
+      return last.get(0) == '\n';
+    }
+  }
+
+  private void flushLoop() {
+    while (!Thread.currentThread().isInterrupted()) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS));
+      flush();
+    }
+  }
+
+  /** Statistics of one player as stored in the log. */
+  private record Stats(int wins, int losses, int draws, int winStreak, int rating) {
+    /** Fields of a line: the username and the five statistics. */
+    static final int FIELDS = 6;
+
+    /** Fields of a line written before the ratings existed. */
+    static final int LEGACY_FIELDS = 5;
+
+    static Stats parse(String[] parts) {
+      return new Stats(
+          Integer.parseInt(parts[1]),
+          Integer.parseInt(parts[2]),
+          Integer.parseInt(parts[3]),
+          Integer.parseInt(parts[4]),
+          // logs written before the ratings existed
+          parts.length == FIELDS ? Integer.parseInt(parts[5]) : Player.INITIAL_RATING);
+    }
+
+    String toLine(String username) {
+      return username + " " + wins + " " + losses + " " + draws + " " + winStreak + " " + rating
+          + "\n";
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package ch.heigvd.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel running the timers of every connection on a single thread.
+ *
+ * <p>The wheel is a ring of slots, each covering one tick. A timer lands in the slot of its
+ * deadline, together with the number of turns of the wheel left before it is due. Scheduling a
+ * timer thus costs the same whatever the number of timers, and each tick only looks at the timers
+ * of one slot. New timers are handed over through a concurrent queue, so only the wheel's thread
+ * touches the slots. Timers fire up to one tick late.
+ *
+ * <p>The tasks run on the wheel's thread and must return quickly: anything that may block, such as
+ * a write to a socket, is handed to another thread.
+ */
+final class TimerWheel {
+  private final long tickNanos;
+  private final List<ArrayDeque<Timer>> slots;
+  private final int mask;
+  private final ConcurrentLinkedQueue<Timer> added = new ConcurrentLinkedQueue<>();
+  private final long startNanos = System.nanoTime();
+
+  /** Number of the tick being processed, only used by the wheel's thread. */
+  private long tick;
+
+  /**
+   * Creates a wheel and starts its thread.
+   *
+   * @param name name of the thread
+   * @param tickMillis milliseconds covered by one slot
+   * @param slotCount number of slots, rounded up to a power of two
+   */
+  TimerWheel(String name, long tickMillis, int slotCount) {
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    int size = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+    this.slots = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      slots.add(new ArrayDeque<>());
+    }
+    this.mask = size - 1;
+    Thread.ofPlatform().name(name).daemon().start(this::run);
+  }
+
+  /**
+   * Runs a task once a delay has elapsed.
+   *
+   * @param task short task, run on the wheel's thread
+   * @param delayNanos nanoseconds to wait
+   */
+  void schedule(Runnable task, long delayNanos) {
+    added.add(new Timer(task, System.nanoTime() + delayNanos));
+  }
+
+  private void run() {
+    while (!Thread.currentThread().isInterrupted()) {
+      long wait;
+      while ((wait = startNanos + tick * tickNanos - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      transfer();
+      ArrayDeque<Timer> slot = slots.get((int) (tick & mask));
+      for (int remaining = slot.size(); remaining > 0; remaining--) {
+        Timer timer = slot.poll();
+        if (timer.rounds > 0) {
+          timer.rounds--;
+          slot.add(timer);
+          continue;
+        }
+        try {
+          timer.task.run();
+        } catch (RuntimeException e) {
+          // the other timers of the slot must still run
+          System.out.println("[Server] Exception in timer: " + e);
+        }
+      }
+      tick++;
+    }
+  }
+
+  /** Moves the new timers to the slot of their deadline. A timer already due runs at this tick. */
+  private void transfer() {
+    Timer timer;
+    while ((timer = added.poll()) != null) {
+      long due = Math.max(tick, Math.ceilDiv(timer.deadline - startNanos, tickNanos));
+      timer.rounds = (due - tick) / slots.size();
+      slots.get((int) (due & mask)).add(timer);
+    }
+  }
+
+  /** Task waiting for its deadline. */
+  private static final class Timer {
+    final Runnable task;
+    final long deadline;
+
+    /** Turns of the wheel left before the timer is due. */
+    long rounds;
+
+    Timer(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+  }
+}
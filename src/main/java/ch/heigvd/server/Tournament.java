@@ -0,0 +1,361 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Norms;
+import ch.heigvd.common.Player;
+import ch.heigvd.server.functions.Matchmaking;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tournament: its registered players, its rounds and its standings.
+ *
+ * <p>Players register until the tournament is started. Each round is then paired at once and all
+ * its games are started together, with seats waiting for their player as after a restart: a player
+ * claims its game with ROUND, and a player who has not claimed it within the round timeout forfeits
+ * it. The result of each game is recorded in the {@link Standings} as soon as it is over, and the
+ * next round is paired once the last game of the round is over.
+ *
+ * <p>The players are known by username, so a player who logs in again between two rounds keeps its
+ * place. The state is guarded by the tournament's lock, which is never held while calling a {@link
+ * GameSession}: the sessions call back into the tournament under their own lock.
+ */
+public class Tournament {
+  /** Pairing rules. */
+  public enum Format {
+    /** Players of equal points meet, for a fixed number of rounds. */
+    SWISS,
+    /** Single elimination bracket, the loser of a game is out. */
+    ELIMINATION,
+    /** Everyone meets everyone once. */
+    ROBIN
+  }
+
+  /** Life cycle of a tournament. */
+  public enum State {
+    REGISTERING,
+    RUNNING,
+    FINISHED
+  }
+
+  /** Id of the tournament, as listed by TOURNAMENTS. */
+  public final int id;
+
+  /** Pairing rules of the tournament. */
+  public final Format format;
+
+  private final int rows;
+  private final int columns;
+  private final int k;
+  private final ScheduledExecutorService executor;
+  private final int roundTimeout;
+  private final Standings standings = new Standings();
+
+  /** Usernames in registration order. */
+  private final List<String> players = new ArrayList<>();
+
+  /**
+   * Next game of each player, completed with the session once paired, or with null once the player
+   * has no game left. A player waiting for the next round holds an incomplete future.
+   */
+  private final Map<String, CompletableFuture<GameSession>> next = new HashMap<>();
+
+  /** Games of the current round. */
+  private final List<GameSession> games = new ArrayList<>();
+
+  /** Players still in the bracket, null for an empty slot, only used by single elimination. */
+  private List<String> bracket;
+
+  /** Player going through each pair of the bracket, set as the games of the round end. */
+  private List<String> advancing;
+
+  private State state = State.REGISTERING;
+  private int rounds;
+  private int round;
+
+  /** Games of the current round that are not over yet. */
+  private int pending;
+
+  /**
+   * Creates a tournament open for registration.
+   *
+   * @param id id of the tournament
+   * @param format pairing rules
+   * @param rounds number of rounds of a Swiss tournament, 0 for enough rounds to find a winner
+   * @param rows number of rows of the boards
+   * @param columns number of columns of the boards
+   * @param k number of aligned symbols needed to win
+   * @param executor thread pairing the rounds and forfeiting the games nobody claimed
+   * @param roundTimeout seconds the players of a round have to claim their game
+   */
+  Tournament(
+      int id,
+      Format format,
+      int rounds,
+      int rows,
+      int columns,
+      int k,
+      ScheduledExecutorService executor,
+      int roundTimeout) {
+    this.id = id;
+    this.format = format;
+    this.rounds = rounds;
+    this.rows = rows;
+    this.columns = columns;
+    this.k = k;
+    this.executor = executor;
+    this.roundTimeout = roundTimeout;
+  }
+
+  /**
+   * Registers a player.
+   *
+   * @param player player registering
+   * @return false if the registration is closed or the player is already registered
+   */
+  public synchronized boolean register(Player player) {
+    if (state != State.REGISTERING || !standings.add(player.username, player.rating)) {
+      return false;
+    }
+    players.add(player.username);
+    next.put(player.username, new CompletableFuture<>());
+    return true;
+  }
+
+  /**
+   * Closes the registration and starts the first round.
+   *
+   * @return false if the tournament has already started or has less than two players
+   */
+  public synchronized boolean start() {
+    if (state != State.REGISTERING || players.size() < 2) {
+      return false;
+    }
+    state = State.RUNNING;
+    switch (format) {
+      case SWISS -> {
+        if (rounds <= 0) {
+          // as many rounds as a bracket, enough for a single player to win them all
+          rounds = 32 - Integer.numberOfLeadingZeros(players.size() - 1);
+        }
+      }
+      case ROBIN -> rounds = Pairings.roundRobinRounds(players.size());
+      case ELIMINATION -> {
+        bracket = Pairings.seed(standings);
+        rounds = Integer.numberOfTrailingZeros(bracket.size());
+      }
+    }
+    System.out.println(
+        "[Server] Tournament "
+            + id
+            + " started: "
+            + players.size()
+            + " players, "
+            + rounds
+            + " rounds");
+    pairRound();
+    return true;
+  }
+
+  /**
+   * Returns the next game of a player.
+   *
+   * @param username username of the player
+   * @return a future completed with the session of the player's next game, or with null when the
+   *     player has no game left, or null if the player is not registered
+   */
+  public synchronized CompletableFuture<GameSession> next(String username) {
+    return next.get(username);
+  }
+
+  /**
+   * Returns whether the tournament is being played.
+   *
+   * @return true between its start and its last game
+   */
+  public synchronized boolean isRunning() {
+    return state == State.RUNNING;
+  }
+
+  /**
+   * Returns the tournament as {@code id,format,state,players,round,rounds}, as listed by
+   * TOURNAMENTS. The rounds are 0 until the tournament has started.
+   *
+   * @return the summary
+   */
+  public synchronized String summary() {
+    return id
+        + Norms.ELEMENT_SEPARATOR
+        + format
+        + Norms.ELEMENT_SEPARATOR
+        + state
+        + Norms.ELEMENT_SEPARATOR
+        + players.size()
+        + Norms.ELEMENT_SEPARATOR
+        + round
+        + Norms.ELEMENT_SEPARATOR
+        + rounds;
+  }
+
+  /**
+   * Returns the STANDINGS message, without the end of line: {@code STANDINGS id state round rounds
+   * username,points,wins,draws,losses,buchholz;...}.
+   *
+   * @return the message
+   */
+  public synchronized String standingsMessage() {
+    return Server.Message.STANDINGS
+        + " "
+        + id
+        + " "
+        + state
+        + " "
+        + round
+        + " "
+        + rounds
+        + " "
+        + standings.message();
+  }
+
+  /** Pairs the next round and starts its games. Called with the lock held. */
+  private void pairRound() {
+    long start = System.nanoTime();
+    round++;
+    List<Pairings.Pair> pairs =
+        switch (format) {
+          case SWISS -> Pairings.swiss(standings);
+          case ROBIN -> Pairings.roundRobin(standings, players, round);
+          case ELIMINATION -> Pairings.elimination(standings, bracket);
+        };
+    Server.metrics.roundPaired(start);
+    games.clear();
+    advancing = format == Format.ELIMINATION ? new ArrayList<>(pairs.size()) : null;
+    for (int slot = 0; slot < pairs.size(); slot++) {
+      Pairings.Pair pair = pairs.get(slot);
+      if (advancing != null) {
+        // a bye goes through at once, the winner of a game once it is over
+        advancing.add(pair.second() == null ? pair.first() : null);
+      }
+      if (pair.first() == null) {
+        continue;
+      }
+      if (pair.second() == null) {
+        standings.bye(pair.first());
+        continue;
+      }
+      Game game = new Game(player(pair.first()), player(pair.second()), rows, columns, k);
+      game.player1Starts = true;
+      game.isPlayer1Turn.set(true);
+      standings.get(pair.first()).firsts++;
+      GameSession session = GameSession.unclaimed(game);
+      Matchmaking.startGame(session);
+      games.add(session);
+      pending++;
+      int bracketSlot = slot;
+      session.ended.thenAccept(ended -> ended(ended, bracketSlot));
+      next.get(pair.first()).complete(session);
+      next.get(pair.second()).complete(session);
+    }
+    System.out.println(
+        "[Server] Tournament "
+            + id
+            + " round "
+            + round
+            + ": "
+            + games.size()
+            + " games paired in "
+            + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)
+            + " us");
+    if (pending == 0) {
+      // only byes
+      executor.execute(this::nextRound);
+    } else {
+      int paired = round;
+      executor.schedule(() -> forfeitUnclaimed(paired), roundTimeout, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Records the result of a game of the current round. Called under the lock of the game's session,
+   * before its players are sent GAMEOVER, so their next ROUND already waits for the next round.
+   */
+  private synchronized void ended(Game game, int slot) {
+    // the first player to move is player1
+    String first = game.player1.username;
+    String second = game.player2.username;
+    String through;
+    if (!game.isOver.get()) {
+      // dropped: nobody claimed the game
+      standings.forfeit(first, second);
+      Server.metrics.gameOver(game);
+      through = null;
+    } else if (game.winner == null) {
+      standings.draw(first, second);
+      // the player who moved second had the harder game
+      through = second;
+    } else {
+      String winner = game.winner.username;
+      String loser = winner.equals(first) ? second : first;
+      standings.win(winner, loser);
+      through = winner;
+    }
+    for (String username : new String[] {first, second}) {
+      boolean out = advancing != null && !username.equals(through);
+      next.put(
+          username,
+          out ? CompletableFuture.completedFuture(null) : new CompletableFuture<GameSession>());
+    }
+    if (advancing != null) {
+      advancing.set(slot, through);
+    }
+    if (--pending == 0) {
+      executor.execute(this::nextRound);
+    }
+  }
+
+  /** Pairs the next round once every game of the current one is over, or ends the tournament. */
+  private synchronized void nextRound() {
+    if (advancing != null) {
+      bracket = advancing;
+    }
+    if (round < rounds) {
+      pairRound();
+      return;
+    }
+    state = State.FINISHED;
+    games.clear();
+    for (CompletableFuture<GameSession> game : next.values()) {
+      game.complete(null);
+    }
+    // a final nobody showed up for has no winner
+    String winner = format == Format.ELIMINATION ? bracket.get(0) : standings.ranked().get(0);
+    System.out.println(
+        "[Server] Tournament " + id + " won by " + (winner == null ? "nobody" : winner));
+  }
+
+  /** Forfeits the games of a round whose players did not all claim them in time. */
+  private void forfeitUnclaimed(int paired) {
+    List<GameSession> current;
+    synchronized (this) {
+      if (round != paired) {
+        return;
+      }
+      current = new ArrayList<>(games);
+    }
+    // outside the lock, the sessions call back into the tournament
+    for (GameSession session : current) {
+      session.expire();
+    }
+  }
+
+  /** Returns the connected player of that name, or a stand-in until the player claims its game. */
+  private static Player player(String username) {
+    Player connected = Server.players.get(username);
+    return connected != null ? connected : Server.stats.load(username);
+  }
+}
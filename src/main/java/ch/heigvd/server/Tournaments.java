@@ -0,0 +1,96 @@
+package ch.heigvd.server;
+
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Norms;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tournaments of the server, created and started from the admin port.
+ *
+ * <p>Any number of tournaments run at the same time, each with its own lock. A single thread pairs
+ * their rounds and forfeits the games nobody claimed, while the games themselves are driven by
+ * their players' connections like any other game. Finished tournaments stay listed with their final
+ * standings.
+ */
+public class Tournaments {
+  private final ConcurrentSkipListMap<Integer, Tournament> tournaments =
+      new ConcurrentSkipListMap<>();
+  private final AtomicInteger lastId = new AtomicInteger();
+  private ScheduledExecutorService executor;
+  private int roundTimeout;
+
+  /**
+   * Starts the thread pairing the rounds.
+   *
+   * @param roundTimeout seconds the players of a round have to claim their game with ROUND
+   */
+  public void start(int roundTimeout) {
+    this.roundTimeout = roundTimeout;
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("tournaments").daemon().factory());
+  }
+
+  /**
+   * Creates a tournament open for registration.
+   *
+   * @param format pairing rules
+   * @param rounds number of rounds of a Swiss tournament, 0 for enough rounds to find a winner
+   * @param rows number of rows of the boards
+   * @param columns number of columns of the boards
+   * @param k number of aligned symbols needed to win
+   * @return the tournament, or null if the board size is invalid
+   */
+  public Tournament create(Tournament.Format format, int rounds, int rows, int columns, int k) {
+    if (!Game.isValidSize(rows, columns, k)) {
+      return null;
+    }
+    Tournament tournament =
+        new Tournament(
+            lastId.incrementAndGet(), format, rounds, rows, columns, k, executor, roundTimeout);
+    tournaments.put(tournament.id, tournament);
+    return tournament;
+  }
+
+  /**
+   * Returns a tournament.
+   *
+   * @param id id of the tournament
+   * @return the tournament, or null if there is none with that id
+   */
+  public Tournament get(int id) {
+    return tournaments.get(id);
+  }
+
+  /**
+   * Returns the number of tournaments being played.
+   *
+   * @return the number of running tournaments
+   */
+  public int running() {
+    int count = 0;
+    for (Tournament tournament : tournaments.values()) {
+      if (tournament.isRunning()) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Builds the TOURNAMENTS message listing every tournament as {@code
+   * id,format,state,players,round,rounds;...}, without the end of line.
+   *
+   * @return the message
+   */
+  public String tournamentsMessage() {
+    StringBuilder sb = new StringBuilder(Server.Message.TOURNAMENTS + " ");
+    for (Tournament tournament : tournaments.values()) {
+      sb.append(tournament.summary()).append(Norms.OBJECT_SEPARATOR);
+    }
+    return sb.toString();
+  }
+}
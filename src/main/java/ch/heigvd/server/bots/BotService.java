@@ -0,0 +1,124 @@
+package ch.heigvd.server.bots;
+
+import ch.heigvd.common.Challenge;
+import ch.heigvd.common.Game;
+import ch.heigvd.common.Player;
+import ch.heigvd.server.GameSession;
+import ch.heigvd.server.Server;
+import ch.heigvd.server.functions.GameFunctions;
+import ch.heigvd.server.functions.Matchmaking;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Players played by the server.
+ *
+ * <p>Bots are registered in {@link Server#players} like any connected player, so they appear in the
+ * PLAYERS list and can be challenged. They accept every challenge immediately and can play any
+ * number of games at once. Nothing runs for a game between two moves: its {@link GameSession} asks
+ * for a move when it is the bot's turn, and the move found is played through {@link
+ * GameSession#move(Player, int)}, the same path as a human move. Every bot shares one {@link
+ * Solver}.
+ */
+public class BotService {
+  /** Prefix of the bot usernames, followed by their number. */
+  public static final String NAME_PREFIX = "bot";
+
+  private final Solver solver;
+  private final long moveBudgetNanos;
+
+  /** Looks up the moves on the classic board, which are answered from the solved table. */
+  private final ExecutorService moves = Executors.newVirtualThreadPerTaskExecutor();
+
+  /**
+   * Runs the searches on the boards larger than 3x3. Searches are CPU bound: on virtual threads
+   * they would hold every carrier thread and starve the players' handlers, so they get one platform
+   * thread per core and queue for it. The deadline is set when the move is requested, so a queued
+   * search spends less time searching instead of answering late.
+   */
+  private final ExecutorService searchers =
+      Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          Thread.ofPlatform().name("bot-search-", 0).daemon().factory());
+
+  private BotService(Solver solver, long moveBudgetMillis) {
+    this.solver = solver;
+    this.moveBudgetNanos = TimeUnit.MILLISECONDS.toNanos(moveBudgetMillis);
+  }
+
+  /**
+   * Solves the classic board and registers the bots.
+   *
+   * @param count number of bots to register
+   * @param moveBudgetMillis time a bot may think before answering a move on a large board
+   * @return the started service
+   */
+  public static BotService start(int count, long moveBudgetMillis) {
+    long start = System.nanoTime();
+    Solver solver = new Solver();
+    System.out.println(
+        "[Server] Solved "
+            + solver.size()
+            + " classic positions in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+            + " ms");
+    for (int i = 1; i <= count; i++) {
+      Player bot = Server.stats.load(NAME_PREFIX + i);
+      bot.isBot = true;
+      Server.players.add(bot);
+    }
+    return new BotService(solver, moveBudgetMillis);
+  }
+
+  /**
+   * Accepts a challenge sent to a bot and plays the first move if it is the bot's turn.
+   *
+   * @param challenge challenge whose challenged player is a bot
+   */
+  public void answer(Challenge challenge) {
+    Player bot = challenge.challenged;
+    bot.challenges.remove(challenge);
+    GameSession session =
+        new GameSession(
+            new Game(bot, challenge.challenger, challenge.rows, challenge.columns, challenge.k));
+    if (!challenge.accept(session)) {
+      return;
+    }
+    Matchmaking.startGame(session);
+    challenge.start();
+    if (GameFunctions.isMyTurn(session.game, bot.username)) {
+      requestMove(session, bot);
+    }
+  }
+
+  /**
+   * Looks for the bot's next move in the background and plays it. A bot that cannot move leaves the
+   * game.
+   *
+   * @param session game in which it is the bot's turn
+   * @param bot bot to play
+   */
+  public void requestMove(GameSession session, Player bot) {
+    Game game = session.game;
+    String mySymbol = game.player1 == bot ? game.player1Symbol : game.player2Symbol;
+    String theirSymbol = game.player1 == bot ? game.player2Symbol : game.player1Symbol;
+    long deadline = System.nanoTime() + moveBudgetNanos;
+    long[] mine = game.getCells(mySymbol);
+    long[] theirs = game.getCells(theirSymbol);
+    CompletableFuture.supplyAsync(
+            () -> solver.bestMove(game, mine, theirs, deadline),
+            game.isClassic() ? moves : searchers)
+        .whenComplete(
+            (move, e) -> {
+              if (e != null) {
+                System.out.println("[Server] Bot " + bot.username + " exception: " + e);
+              }
+              if (e != null || move < 0 || !session.move(bot, move)) {
+                // the opponent left meanwhile, or the bot is stuck
+                session.leave(bot);
+              }
+            });
+  }
+}
@@ -0,0 +1,477 @@
+package ch.heigvd.server.bots;
+
+import ch.heigvd.common.Game;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Negamax solver with alpha-beta pruning used by the server bots.
+ *
+ * <p>The classic 3x3 game is small enough to be solved completely: {@link #Solver()} evaluates
+ * every reachable position once and stores the exact scores in a table indexed by the two 9-bit
+ * masks. Afterwards a move on the classic board is a handful of table lookups.
+ *
+ * <p>Larger boards are searched by iterative deepening under a deadline, which bounds the time a
+ * bot takes to answer no matter how many bot games run at once: a search that runs out of time
+ * returns the best move of the last depth it completed. The first depth, one move ahead, always
+ * completes, so a search started after its deadline still answers a sensible move. Evaluated
+ * positions are stored in a transposition table shared by every game, so positions reached again,
+ * in the same game or in another one, are not searched twice.
+ *
+ * <p>Scores are always from the point of view of the player about to move.
+ */
+public class Solver {
+  /** Score of a won position, decreased by the number of moves needed to win. */
+  static final int WIN = 1_000_000_000;
+
+  /** Largest weight of a window in the evaluation, keeps every evaluation far below WIN. */
+  static final int MAX_LINE_WEIGHT = 10_000;
+
+  /** Maximum number of positions kept for the larger boards before the table is cleared. */
+  static final int MAX_TABLE_SIZE = 1 << 20;
+
+  /** Row and column steps of the four line directions. */
+  private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+  /** Marker of a classic position not evaluated (unreachable positions). */
+  private static final byte UNKNOWN = Byte.MIN_VALUE;
+
+  /**
+   * Exact scores of the classic positions, indexed by {@code mover << 9 | opponent}: 1 for a win, 0
+   * for a draw and -1 for a loss of the player about to move.
+   */
+  private final byte[] classic = new byte[1 << 18];
+
+  /** Positions of the larger boards already searched, shared by every game. */
+  private final ConcurrentHashMap<Position, Entry> table = new ConcurrentHashMap<>();
+
+  /** Solves the classic 3x3 game. */
+  public Solver() {
+    Arrays.fill(classic, UNKNOWN);
+    solveClassic(0, 0);
+  }
+
+  /**
+   * Returns the number of positions currently known by the solver.
+   *
+   * @return number of classic positions plus the size of the transposition table
+   */
+  public int size() {
+    int solved = 0;
+    for (byte score : classic) {
+      if (score != UNKNOWN) {
+        solved++;
+      }
+    }
+    return solved + table.size();
+  }
+
+  /**
+   * Chooses a move for the player about to move.
+   *
+   * @param game game being played
+   * @param mine cells of the player about to move
+   * @param theirs cells of the opponent
+   * @param deadline value of {@link System#nanoTime()} after which the search must stop
+   * @return the chosen position, or -1 if the board is full
+   */
+  public int bestMove(Game game, long[] mine, long[] theirs, long deadline) {
+    if (game.isClassic()) {
+      return bestClassicMove((int) mine[0], (int) theirs[0]);
+    }
+    Search search = new Search(game.rows, game.columns, game.k, mine, theirs, deadline);
+    return search.run();
+  }
+
+  /** Fills the classic table below the given position and returns its score. */
+  private int solveClassic(int mover, int opponent) {
+    int index = mover << 9 | opponent;
+    if (classic[index] != UNKNOWN) {
+      return classic[index];
+    }
+    int best = -1;
+    boolean full = true;
+    for (int cell = 0; cell < 9 && best < 1; cell++) {
+      int bit = 1 << cell;
+      if (((mover | opponent) & bit) != 0) {
+        continue;
+      }
+      full = false;
+      int after = mover | bit;
+      int score =
+          Game.completesLine(new long[] {after}, cell, 3, 3, 3)
+              ? 1
+              : -solveClassic(opponent, after);
+      best = Math.max(best, score);
+    }
+    if (full) {
+      best = 0;
+    }
+    // only exact scores are stored: the loop stops early on a win, which is exact as well
+    classic[index] = (byte) best;
+    return best;
+  }
+
+  /** Picks at random one of the moves with the best exact score. */
+  private int bestClassicMove(int mover, int opponent) {
+    List<Integer> bestMoves = new ArrayList<>();
+    int best = Integer.MIN_VALUE;
+    for (int cell = 0; cell < 9; cell++) {
+      int bit = 1 << cell;
+      if (((mover | opponent) & bit) != 0) {
+        continue;
+      }
+      int after = mover | bit;
+      int score =
+          Game.completesLine(new long[] {after}, cell, 3, 3, 3)
+              ? 1
+              : -solveClassic(opponent, after);
+      if (score > best) {
+        best = score;
+        bestMoves.clear();
+      }
+      if (score == best) {
+        bestMoves.add(cell);
+      }
+    }
+    if (bestMoves.isEmpty()) {
+      return -1;
+    }
+    return bestMoves.get(ThreadLocalRandom.current().nextInt(bestMoves.size()));
+  }
+
+  /** Thrown to unwind a search that ran out of time. */
+  private static class OutOfTime extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    OutOfTime() {
+      super(null, null, false, false);
+    }
+  }
+
+  /** Key of a position in the transposition table, the player about to move being "mine". */
+  private record Position(int rows, int columns, int k, long[] mine, long[] theirs) {
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Position that
+          && rows == that.rows
+          && columns == that.columns
+          && k == that.k
+          && Arrays.equals(mine, that.mine)
+          && Arrays.equals(theirs, that.theirs);
+    }
+
+    @Override
+    public int hashCode() {
+      return (31 * (31 * rows + columns) + k) * 961
+          + 31 * Arrays.hashCode(mine)
+          + Arrays.hashCode(theirs);
+    }
+  }
+
+  /** Result of a search: the score is exact, a lower bound or an upper bound. */
+  private record Entry(int depth, int score, Bound bound, int move) {}
+
+  private enum Bound {
+    EXACT,
+    LOWER,
+    UPPER
+  }
+
+  /** One iterative deepening search on a board larger than the classic one. */
+  private class Search {
+    private final int rows, columns, k, cells;
+    private final long[] mine, theirs;
+    private final long deadline;
+    private final int[] lineWeights;
+
+    /** Lowest score of a forced win, reached on the last cell. Evaluations stay far below it. */
+    private final int mate;
+
+    /** Evaluation of the current position from the point of view of "mine". */
+    private int score;
+
+    /** Depth of the current iteration. The first one always completes so there is a move. */
+    private int depthLimit;
+
+    Search(int rows, int columns, int k, long[] mine, long[] theirs, long deadline) {
+      this.rows = rows;
+      this.columns = columns;
+      this.k = k;
+      this.cells = rows * columns;
+      this.mate = WIN - cells - 1;
+      this.mine = mine.clone();
+      this.theirs = theirs.clone();
+      this.deadline = deadline;
+      this.lineWeights = new int[k + 1];
+      for (int i = 1; i <= k; i++) {
+        lineWeights[i] = (int) Math.min(MAX_LINE_WEIGHT, Math.pow(10, i - 1));
+      }
+      this.score = evaluate();
+    }
+
+    int run() {
+      List<Integer> moves = candidates(mine, theirs);
+      if (moves.isEmpty()) {
+        return -1;
+      }
+      int best = moves.get(0);
+      int emptyCells = cells - count(mine) - count(theirs);
+      for (int depth = 1; depth <= emptyCells; depth++) {
+        if (depth > 1 && System.nanoTime() > deadline) {
+          break;
+        }
+        depthLimit = depth;
+        try {
+          best = root(moves, depth);
+        } catch (OutOfTime e) {
+          break;
+        }
+        Entry entry = table.get(key(mine, theirs));
+        if (entry != null && Math.abs(entry.score) >= WIN - cells) {
+          break; // forced result found, deeper searches cannot change it
+        }
+      }
+      return best;
+    }
+
+    /** Searches every root move at the given depth, best move of the previous depth first. */
+    private int root(List<Integer> moves, int depth) {
+      Entry previous = table.get(key(mine, theirs));
+      if (previous != null && moves.remove((Integer) previous.move)) {
+        moves.add(0, previous.move);
+      }
+      int best = moves.get(0);
+      int alpha = -WIN - 1;
+      for (int move : moves) {
+        int score = scoreMove(mine, theirs, move, depth, alpha, WIN + 1, 1);
+        if (score > alpha) {
+          alpha = score;
+          best = move;
+        }
+      }
+      store(mine, theirs, depth, alpha, Bound.EXACT, best, 1);
+      return best;
+    }
+
+    /** Plays a move for "mover" and returns its score from the point of view of "mover". */
+    private int scoreMove(
+        long[] mover, long[] opponent, int move, int depth, int alpha, int beta, int ply) {
+      int gain = placementGain(mover, opponent, move);
+      int signedGain = mover == mine ? gain : -gain;
+      set(mover, move);
+      score += signedGain;
+      try {
+        if (Game.completesLine(mover, move, rows, columns, k)) {
+          return WIN - ply;
+        }
+        return -negamax(opponent, mover, depth - 1, -beta, -alpha, ply + 1);
+      } finally {
+        score -= signedGain;
+        clear(mover, move);
+      }
+    }
+
+    private int negamax(long[] mover, long[] opponent, int depth, int alpha, int beta, int ply) {
+      if (depthLimit > 1 && System.nanoTime() > deadline) {
+        throw new OutOfTime();
+      }
+      if (count(mover) + count(opponent) == cells) {
+        return 0;
+      }
+      if (depth == 0) {
+        return mover == mine ? score : -score;
+      }
+      int originalAlpha = alpha;
+      Position key = key(mover, opponent);
+      Entry entry = table.get(key);
+      if (entry != null && entry.depth >= depth) {
+        int stored = fromTable(entry.score, ply);
+        if (entry.bound == Bound.EXACT) {
+          return stored;
+        } else if (entry.bound == Bound.LOWER) {
+          alpha = Math.max(alpha, stored);
+        } else {
+          beta = Math.min(beta, stored);
+        }
+        if (alpha >= beta) {
+          return stored;
+        }
+      }
+      List<Integer> moves = candidates(mover, opponent);
+      if (entry != null && moves.remove((Integer) entry.move)) {
+        moves.add(0, entry.move);
+      }
+      int best = -WIN - 1;
+      int bestMove = moves.get(0);
+      for (int move : moves) {
+        int score = scoreMove(mover, opponent, move, depth, alpha, beta, ply);
+        if (score > best) {
+          best = score;
+          bestMove = move;
+        }
+        alpha = Math.max(alpha, score);
+        if (alpha >= beta) {
+          break;
+        }
+      }
+      Bound bound = best <= originalAlpha ? Bound.UPPER : best >= beta ? Bound.LOWER : Bound.EXACT;
+      store(mover, opponent, depth, best, bound, bestMove, ply);
+      return best;
+    }
+
+    /**
+     * Scores every window of k cells from the point of view of "mine": a window holding the cells
+     * of a single player is worth more the more cells it holds. Only computed once per search, the
+     * moves then update the score through {@link #placementGain}.
+     */
+    private int evaluate() {
+      int total = 0;
+      for (int[] direction : DIRECTIONS) {
+        for (int row = 0; row < rows; row++) {
+          for (int column = 0; column < columns; column++) {
+            total += windowValue(row, column, direction, mine, theirs, -1);
+          }
+        }
+      }
+      return total;
+    }
+
+    /**
+     * Returns how much the evaluation changes, from the point of view of "mover", when mover takes
+     * the given empty cell. Only the windows going through the cell change.
+     */
+    private int placementGain(long[] mover, long[] opponent, int position) {
+      int row = position / columns;
+      int column = position % columns;
+      int gain = 0;
+      for (int[] direction : DIRECTIONS) {
+        for (int offset = 0; offset < k; offset++) {
+          int startRow = row - offset * direction[0];
+          int startColumn = column - offset * direction[1];
+          gain -= windowValue(startRow, startColumn, direction, mover, opponent, -1);
+          gain += windowValue(startRow, startColumn, direction, mover, opponent, position);
+        }
+      }
+      return gain;
+    }
+
+    /**
+     * Value of the window of k cells starting at (row, column) for "own", 0 if the window does not
+     * fit on the board. The cell {@code extra}, if not -1, is counted as owned.
+     */
+    private int windowValue(
+        int row, int column, int[] direction, long[] own, long[] other, int extra) {
+      int endRow = row + (k - 1) * direction[0];
+      int endColumn = column + (k - 1) * direction[1];
+      if (row < 0
+          || column < 0
+          || column >= columns
+          || endRow >= rows
+          || endColumn < 0
+          || endColumn >= columns) {
+        return 0;
+      }
+      int owned = 0, others = 0;
+      for (int i = 0; i < k; i++) {
+        int position = (row + i * direction[0]) * columns + column + i * direction[1];
+        if (position == extra || Game.isSet(own, position)) {
+          owned++;
+        } else if (Game.isSet(other, position)) {
+          others++;
+        }
+      }
+      if (others == 0) {
+        return lineWeights[owned];
+      }
+      return owned == 0 ? -lineWeights[others] : 0;
+    }
+
+    /** Empty cells next to a taken cell, or the center of an empty board. */
+    private List<Integer> candidates(long[] mover, long[] opponent) {
+      List<Integer> moves = new ArrayList<>();
+      boolean empty = true;
+      for (int position = 0; position < cells; position++) {
+        if (Game.isSet(mover, position) || Game.isSet(opponent, position)) {
+          empty = false;
+          continue;
+        }
+        if (hasNeighbour(mover, opponent, position)) {
+          moves.add(position);
+        }
+      }
+      if (empty) {
+        moves.add((rows / 2) * columns + columns / 2);
+      }
+      return moves;
+    }
+
+    private boolean hasNeighbour(long[] mover, long[] opponent, int position) {
+      int row = position / columns;
+      int column = position % columns;
+      for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+        for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+          int neighbour = r * columns + c;
+          if (Game.isSet(mover, neighbour) || Game.isSet(opponent, neighbour)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    private Position key(long[] mover, long[] opponent) {
+      return new Position(rows, columns, k, mover.clone(), opponent.clone());
+    }
+
+    /** Stores the result of the node at the given ply, which moves first with {@code WIN - ply}. */
+    private void store(
+        long[] mover, long[] opponent, int depth, int score, Bound bound, int move, int ply) {
+      if (table.size() >= MAX_TABLE_SIZE) {
+        table.clear();
+      }
+      table.merge(
+          key(mover, opponent),
+          new Entry(depth, toTable(score, ply), bound, move),
+          (old, fresh) -> fresh.depth >= old.depth ? fresh : old);
+    }
+
+    /**
+     * Turns a win or a loss counted from the root of this search into one counted from the node, as
+     * the table is shared by searches started from other roots. Evaluations are stored as is.
+     */
+    private int toTable(int score, int ply) {
+      if (score >= mate) {
+        return score + ply;
+      }
+      return score <= -mate ? score - ply : score;
+    }
+
+    /** Turns a score of the table back into one counted from the root of this search. */
+    private int fromTable(int score, int ply) {
+      if (score >= mate) {
+        return score - ply;
+      }
+      return score <= -mate ? score + ply : score;
+    }
+  }
+
+  private static int count(long[] cells) {
+    int count = 0;
+    for (long word : cells) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  private static void set(long[] cells, int position) {
+    cells[position >>> 6] |= 1L << position;
+  }
+
+  private static void clear(long[] cells, int position) {
+    cells[position >>> 6] &= ~(1L << position);
+  }
+}
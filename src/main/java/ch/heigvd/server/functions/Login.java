@@ -3,15 +3,21 @@ package ch.heigvd.server.functions;
 import ch.heigvd.client.Client;
 import ch.heigvd.common.Norms;
 import ch.heigvd.common.Player;
+import ch.heigvd.server.Command;
+import ch.heigvd.server.CredentialStore;
+import ch.heigvd.server.GameSession;
 import ch.heigvd.server.Server;
-import java.io.*;
+import ch.heigvd.server.Sessions;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.net.Socket;
 
 /**
  * Class containing the login logic for players.
  *
  * <p>The login system uses a simple text file named logins.txt to store pairs of username and
- * password.
+ * password. The file is indexed in memory by {@link CredentialStore} when the server starts. The
+ * statistics of a returning player are restored from the {@link ch.heigvd.server.StatsStore}.
  *
  * <p>Note: For this project, we intentionally use a basic text file login system because
  * authentication is not the main objective here. In a real application, a more advanced and secure
@@ -20,107 +26,114 @@ import java.net.Socket;
  * <p>General behavior: - If the user exists and the password is correct: login is successful - If
  * the user exists but the password is incorrect: error - If the user does not exist: the account is
  * created - If the user is already logged in: error
+ *
+ * <p>A player whose connection was lost can take its place back with the token of its login, see
+ * {@link Sessions}.
  */
 public class Login {
   public static final String LOGIN_FILE = "logins.txt";
 
   /**
-   * Handles a player's login request.
+   * Handles one line of a client that has not logged in yet.
    *
    * <p>The expected format from the client is: LOGIN username password
    *
    * <p>This method verifies if the user exists, checks the correctness of the password, creates a
-   * new account if needed, and prevents multiple logins with the same username.
+   * new account if needed, and prevents multiple logins with the same username. A player still
+   * parked by a lost connection is logged out first, so a client that lost its token can log in
+   * again. A successful login is answered with {@code OK token}, the token to give to {@link
+   * #resume RESUME} after a lost connection. Any other command closes the connection.
    *
    * @param socket the client's socket
-   * @param in the client's input stream
+   * @param command line received from the client
    * @param out the client's output stream
+   * @param connection closes the client's connection, used if its session is resumed elsewhere
    * @return a Player object if login succeeds, null otherwise
    */
-  public static Player login(Socket socket, BufferedReader in, BufferedWriter out) {
-    // making sure the file exists
-    File loginsFile = new File(LOGIN_FILE);
+  public static Player login(
+      Socket socket, Command command, BufferedWriter out, Runnable connection) {
+    Player player = null;
     try {
-      if (loginsFile.createNewFile()) {
-        System.out.println("[Server] Created new login file: " + LOGIN_FILE);
+      long start = System.nanoTime();
+      if (command.verb() != Client.Message.LOGIN) {
+        socket.close();
+        return null;
+      }
+      if (command.argumentCount() < 2) {
+        out.write(Server.Message.ERROR + " 2" + Norms.END_OF_LINE); // missing password
+        out.flush();
+        Server.metrics.login.recordSince(start);
+        return null;
+      }
+      String username = command.argument(0);
+      String password = command.rest(1);
+
+      // returns messages according to the situation
+      CredentialStore.Result result = Server.credentials.authenticate(username, password);
+      if (result == CredentialStore.Result.WRONG_PASSWORD) {
+        out.write(Server.Message.ERROR + " 2" + Norms.END_OF_LINE);
+        out.flush();
+        Server.metrics.login.recordSince(start);
+        return null;
+      }
+      Server.sessions.expire(username);
+      Player loaded = Server.stats.load(username);
+      if (!Server.players.add(loaded)) {
+        out.write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE); // user already logged in
+        out.flush();
+        Server.metrics.login.recordSince(start);
+        return null;
       }
+      // registered from now on, so that a lost connection logs the player out
+      player = loaded;
+      Server.lobby.changed(player);
+      String token = Server.sessions.issue(player, connection);
+      out.write(Server.Message.OK + " " + token + Norms.END_OF_LINE);
+      out.flush();
+      Server.metrics.login.recordSince(start);
     } catch (IOException e) {
-      System.out.println("[Server] Could not create login file: " + e);
+      System.out.println("[Server] exception: " + e);
     }
+    return player;
+  }
 
+  /**
+   * Handles a RESUME request, which takes back the place of a player whose connection was lost,
+   * without checking its credentials again.
+   *
+   * <p>The expected format from the client is: RESUME token
+   *
+   * <p>A player resuming its game is answered with the BOARD line of the game, whose moves go on as
+   * usual. A player resuming in the lobby is answered with OK. An unknown or expired token is
+   * answered with {@code ERROR 1}, and the client may log in instead.
+   *
+   * @param command line received from the client
+   * @param out the client's output stream
+   * @param connection closes the client's connection, used if its session is resumed elsewhere
+   * @return the player and its game, null if there is no session to resume
+   */
+  public static Sessions.Resumed resume(Command command, BufferedWriter out, Runnable connection) {
+    Sessions.Resumed resumed = null;
     try {
-      while (!socket.isClosed()) {
-        String clientResponse = in.readLine();
-        if (clientResponse == null) {
-          socket.close();
-          return null;
-        }
-
-        String[] clientResponseParts = clientResponse.split(" ", 3);
-
-        Client.Message message = null;
-        try {
-          message = Client.Message.valueOf(clientResponseParts[0]);
-        } catch (IllegalArgumentException e) {
-          // Ignore unknown messages
-        }
-        if (message != Client.Message.LOGIN) {
-          socket.close();
-          return null;
-        }
-        String username = clientResponseParts[1];
-        String password = clientResponseParts[2];
-
-        // check if username is in logins.txt
-        loginsFile = new File(LOGIN_FILE);
-        BufferedReader loginsReader = new BufferedReader(new FileReader(loginsFile));
-        String line;
-        boolean found = false;
-        boolean passwordCorrect = false;
-        while ((line = loginsReader.readLine()) != null) {
-          String[] loginParts = line.split(" ", 2);
-          if (loginParts[0].equals(username)) {
-            found = true;
-            if (loginParts[1].equals(password)) {
-              passwordCorrect = true;
-            }
-            break;
-          }
-        }
-        // returns messages according to the situation
-        if (found) {
-          if (passwordCorrect) {
-            if (Server.players.stream().anyMatch(p -> p.username.equals(username))) {
-              out.write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE); // user already logged in
-              out.flush();
-            } else {
-              Player player = new Player(username);
-              Server.players.add(player);
-              out.write(Server.Message.OK + Norms.END_OF_LINE);
-              out.flush();
-              loginsReader.close();
-              return player;
-            }
-          } else { // wrong password
-            out.write(Server.Message.ERROR + " 2" + Norms.END_OF_LINE);
-            out.flush();
-          }
-        } else {
-          // creates new user
-          BufferedWriter loginsWriter = new BufferedWriter(new FileWriter(loginsFile, true));
-          loginsWriter.write(username + " " + password + "\n");
-          loginsWriter.close();
-          Player player = new Player(username);
-          Server.players.add(player);
-          out.write(Server.Message.OK + Norms.END_OF_LINE);
-          out.flush();
-          loginsReader.close();
-          return player;
-        }
+      resumed =
+          command.argumentCount() == 1
+              ? Server.sessions.resume(command.argument(0), connection)
+              : null;
+      if (resumed == null) {
+        out.write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE); // no session to resume
+        out.flush();
+        return null;
+      }
+      GameSession game = resumed.game();
+      if (game == null || !game.resume(resumed.player(), out)) {
+        // the game may have ended while the player was away, its result is in the statistics
+        out.write(Server.Message.OK + Norms.END_OF_LINE);
+        out.flush();
       }
     } catch (IOException e) {
+      // the player is parked again by the handler of the lost connection
       System.out.println("[Server] exception: " + e);
     }
-    return null;
+    return resumed;
   }
 }
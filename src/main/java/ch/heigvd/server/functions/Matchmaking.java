@@ -4,98 +4,160 @@ import ch.heigvd.common.Challenge;
 import ch.heigvd.common.Game;
 import ch.heigvd.common.Norms;
 import ch.heigvd.common.Player;
+import ch.heigvd.server.GameSession;
+import ch.heigvd.server.MatchQueue;
+import ch.heigvd.server.PlayerRegistry;
 import ch.heigvd.server.Server;
-import java.io.BufferedReader;
+import ch.heigvd.server.Tournament;
 import java.io.BufferedWriter;
+import java.io.IOException;
 import java.net.Socket;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Class containing all matchmaking-related functions. This class centralizes the logic that manages
  * interactions between players.
  */
 public class Matchmaking {
+  /** Number of players returned by a PLAYERS query without a limit. */
+  public static final int DEFAULT_PAGE_SIZE = 20;
+
+  /** Maximum number of players returned by one PLAYERS query. */
+  public static final int MAX_PAGE_SIZE = 100;
+
   /**
    * Sends the list of pending challenges to the player.
    *
-   * <p>The message format is: CHALLENGES challengerName1;challengerName2;
+   * <p>The message format is: CHALLENGES challengerName1;challengerName2; where a challenge on a
+   * board other than the classic one is sent as challengerName,rows,columns,k;
    *
    * @param out output stream associated with the client
    * @param player player whose pending challenges must be retrieved
    */
   public static void getChallenges(BufferedWriter out, Player player) {
     try {
-      StringBuilder sb = new StringBuilder(Server.Message.CHALLENGES + " ");
-      for (Challenge challenge : player.challenges) {
-        if (challenge.status == Challenge.Status.PENDING) {
-          sb.append(challenge.challenger.username).append(Norms.OBJECT_SEPARATOR);
-        }
-      }
-      out.write(sb.toString() + Norms.END_OF_LINE);
+      out.write(challengesMessage(player) + Norms.END_OF_LINE);
       out.flush();
     } catch (Exception e) {
       System.out.println("[Server] Exception while fetching challenges: " + e);
     }
   }
 
+  /**
+   * Builds the CHALLENGES message listing the player's pending challenges, without the end of line.
+   * Also pushed to the lobby subscribers by {@link ch.heigvd.server.LobbyFeed}.
+   *
+   * @param player player whose pending challenges must be listed
+   * @return the message
+   */
+  public static String challengesMessage(Player player) {
+    StringBuilder sb = new StringBuilder(Server.Message.CHALLENGES + " ");
+    for (Challenge challenge : player.challenges) {
+      if (challenge.status == Challenge.Status.PENDING) {
+        sb.append(challenge.challenger.username);
+        if (!isClassic(challenge)) {
+          sb.append(Norms.ELEMENT_SEPARATOR)
+              .append(challenge.rows)
+              .append(Norms.ELEMENT_SEPARATOR)
+              .append(challenge.columns)
+              .append(Norms.ELEMENT_SEPARATOR)
+              .append(challenge.k);
+        }
+        sb.append(Norms.OBJECT_SEPARATOR);
+      }
+    }
+    return sb.toString();
+  }
+
   /**
    * Sends a challenge to a specific player.
    *
    * <p>This function performs the following steps: - checks that the target player exists - ensures
    * the target player is not already in a game - adds a challenge to the target player's list -
-   * waits for the target player to accept or refuse
+   * waits for the target player to accept or refuse, at most {@code Server.challengeTimeout}
+   * seconds after which the challenge is refused automatically
+   *
+   * <p>The arguments are the username of the targeted player, optionally followed by the board size
+   * as {@code rows columns k}. The classic 3x3 board is used when no size is given.
    *
-   * <p>Error codes sent: ERROR 1 : player not found ERROR 2 : target player already in game
+   * <p>Error codes sent: ERROR 1 : player not found ERROR 2 : target player already in game ERROR 3
+   * : invalid board size
    *
    * @param socket sender's socket
    * @param out sender's output stream
    * @param challenger player sending the challenge
-   * @param players list of all connected players
-   * @param username username of the targeted player
-   * @return a Game instance if the challenge is accepted, or null otherwise
+   * @param players registry of all connected players
+   * @param arguments username of the targeted player and optional board size
+   * @return the session of the game, joined by the challenger, if the challenge is accepted, or
+   *     null otherwise
    */
-  public static Game challengePlayer(
+  public static GameSession challengePlayer(
       Socket socket,
       BufferedWriter out,
       Player challenger,
-      CopyOnWriteArrayList<Player> players,
-      String username) {
+      PlayerRegistry players,
+      String arguments) {
+    GameSession session = null;
     try {
-      boolean found = false;
-      Player challenged = null;
-      for (Player player : players) {
-        if (player.username.equals(username)) {
-          found = true;
-          challenged = player;
-          if (player.status == Player.Status.IN_GAME) {
-            out.write(Server.Message.ERROR + " " + 2 + Norms.END_OF_LINE);
-            out.flush();
-            return null;
-          }
-        }
+      String[] argumentParts = arguments.split(" ");
+      String username = argumentParts[0];
+      int[] board = parseBoard(argumentParts, 1);
+      if (board == null) {
+        out.write(Server.Message.ERROR + " " + 3 + Norms.END_OF_LINE);
+        out.flush();
+        return null;
       }
-      if (!found) {
+      int rows = board[0], columns = board[1], k = board[2];
+      Player challenged = players.get(username);
+      if (challenged == null) {
         String response = Server.Message.ERROR + " " + 1 + Norms.END_OF_LINE;
         out.write(response);
         out.flush();
         return null;
       }
-      Challenge challenge = new Challenge(challenger.username);
+      if (challenged.status == Player.Status.IN_GAME) {
+        out.write(Server.Message.ERROR + " " + 2 + Norms.END_OF_LINE);
+        out.flush();
+        return null;
+      }
+      Challenge challenge = new Challenge(challenger.username, rows, columns, k);
+      challenge.challenged = challenged;
+      challenger.sentChallenge = challenge;
       challenged.challenges.add(challenge);
-      while (challenge.status == Challenge.Status.PENDING) {
-        Thread.sleep(100);
+      if (challenged.isBot) {
+        Server.bots.answer(challenge);
+      } else {
+        Server.lobby.challengesChanged(challenged);
       }
-      if (challenge.status == Challenge.Status.ACCEPTED) {
+      try {
+        session = challenge.result.get(Server.challengeTimeout, TimeUnit.SECONDS);
+      } catch (TimeoutException e) {
+        // nobody answered in time, unless the target accepted at the last moment
+        session = challenge.refuse() ? null : challenge.result.join();
+      } finally {
+        challenger.sentChallenge = null;
+      }
+      if (session != null) {
         challenger.status = Player.Status.IN_GAME;
-        int firstPlayer = challenge.game.isPlayer1Turn.get() ? 2 : 1;
-        out.write(Server.Message.GAMESTART + " " + firstPlayer + Norms.END_OF_LINE);
+        Server.lobby.changed(challenger);
+        // the opponent may already have played, the current turn says nothing about who started
+        int firstPlayer = session.game.player1Starts ? 2 : 1;
+        out.write(gameStart(session.game, firstPlayer));
         out.flush();
-        return challenge.game;
+        // the moves played meanwhile are relayed once GAMESTART has been sent
+        session.join(challenger, out);
+        return session;
       }
       out.write(Server.Message.REFUSE + Norms.END_OF_LINE);
       out.flush();
     } catch (Exception e) {
       System.out.println("[Server] Exception while challenging player: " + e);
+      if (session != null) {
+        // the challenger left right after the challenge was accepted
+        session.leave(challenger);
+      }
       try {
         socket.close();
       } catch (Exception ee) {
@@ -105,37 +167,242 @@ public class Matchmaking {
     return null;
   }
 
+  /**
+   * Puts the player in the matchmaking queue until an opponent of a similar rating is found.
+   *
+   * <p>The arguments are empty for the classic 3x3 board, or the board size as {@code rows columns
+   * k}: only players queued for the same size are matched. The player waits at most {@code
+   * Server.queueTimeout} seconds, after which it leaves the queue and REFUSE is sent. Once matched,
+   * GAMESTART is sent as for an accepted challenge.
+   *
+   * <p>Error codes sent: ERROR 3 : invalid board size
+   *
+   * @param socket player's socket
+   * @param out player's output stream
+   * @param player player looking for an opponent
+   * @param arguments optional board size
+   * @return the session of the game, joined by the player, if an opponent was found, or null
+   *     otherwise
+   */
+  public static GameSession queuePlayer(
+      Socket socket, BufferedWriter out, Player player, String arguments) {
+    GameSession session = null;
+    try {
+      int[] board = parseBoard(arguments.isEmpty() ? new String[0] : arguments.split(" "), 0);
+      if (board == null) {
+        out.write(Server.Message.ERROR + " " + 3 + Norms.END_OF_LINE);
+        out.flush();
+        return null;
+      }
+      MatchQueue.Ticket ticket = Server.queue.enqueue(player, board[0], board[1], board[2]);
+      try {
+        session = ticket.result.get(Server.queueTimeout, TimeUnit.SECONDS);
+      } catch (TimeoutException e) {
+        // nobody matched in time, unless the player was matched at the last moment
+        session = ticket.cancel() ? null : ticket.result.join();
+      }
+      if (session != null) {
+        Game game = session.game;
+        int firstPlayer = (game.player1 == player) == game.player1Starts ? 1 : 2;
+        out.write(gameStart(game, firstPlayer));
+        out.flush();
+        // the moves played meanwhile are relayed once GAMESTART has been sent
+        session.join(player, out);
+        return session;
+      }
+      out.write(Server.Message.REFUSE + Norms.END_OF_LINE);
+      out.flush();
+    } catch (Exception e) {
+      System.out.println("[Server] Exception while queuing player: " + e);
+      if (session != null) {
+        // the player left right after being matched
+        session.leave(player);
+      }
+      try {
+        socket.close();
+      } catch (Exception ee) {
+        System.out.println("[Server] Exception while closing socket: " + ee);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Seats the player back in its game interrupted by a restart of the server. The answer is the
+   * BOARD line of the game, after which the game goes on as usual.
+   *
+   * <p>Error codes sent: ERROR 1 : the player has no interrupted game
+   *
+   * @param out player's output stream
+   * @param player player rejoining its game
+   * @return the session of the game, joined by the player, or null if there is none
+   * @throws IOException if the player cannot be reached
+   */
+  public static GameSession rejoinGame(BufferedWriter out, Player player) throws IOException {
+    GameSession session = Server.journal.interrupted(player.username);
+    if (session == null || !session.rejoin(player, out)) {
+      out.write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE);
+      out.flush();
+      return null;
+    }
+    player.status = Player.Status.IN_GAME;
+    Server.lobby.changed(player);
+    return session;
+  }
+
+  /**
+   * Registers the player in a tournament open for registration.
+   *
+   * <p>Error codes sent: ERROR 1 : no such tournament, its registration is closed or the player is
+   * already registered
+   *
+   * @param out player's output stream
+   * @param player player registering
+   * @param arguments id of the tournament
+   * @throws IOException if the player cannot be reached
+   */
+  public static void registerPlayer(BufferedWriter out, Player player, String arguments)
+      throws IOException {
+    Tournament tournament = tournament(arguments);
+    if (tournament == null || !tournament.register(player)) {
+      out.write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE);
+    } else {
+      out.write(Server.Message.OK + Norms.END_OF_LINE);
+    }
+    out.flush();
+  }
+
+  /**
+   * Seats the player in its game of the current round of a tournament, waiting for the next round
+   * to be paired if the player has already played this one or had a bye. The answer is the BOARD
+   * line of the game, as for REJOIN, after which the game goes on as usual. A game the player did
+   * not claim in time is lost, and the player waits for the next round instead.
+   *
+   * <p>Error codes sent: ERROR 1 : no such tournament or the player is not registered in it. REFUSE
+   * is sent when the player has no game left: it has been eliminated or the tournament is over.
+   *
+   * @param socket player's socket
+   * @param out player's output stream
+   * @param player player claiming its game
+   * @param arguments id of the tournament
+   * @return the session of the game, joined by the player, or null if there is none
+   */
+  public static GameSession playRound(
+      Socket socket, BufferedWriter out, Player player, String arguments) {
+    GameSession session = null;
+    try {
+      Tournament tournament = tournament(arguments);
+      CompletableFuture<GameSession> next =
+          tournament == null ? null : tournament.next(player.username);
+      while (next != null) {
+        session = next.get();
+        if (session == null) {
+          out.write(Server.Message.REFUSE + Norms.END_OF_LINE);
+          out.flush();
+          return null;
+        }
+        if (session.rejoin(player, out)) {
+          player.status = Player.Status.IN_GAME;
+          Server.lobby.changed(player);
+          return session;
+        }
+        // a game that ended meanwhile has already been replaced by the next one
+        CompletableFuture<GameSession> replaced = tournament.next(player.username);
+        session = null;
+        next = replaced != next ? replaced : null;
+      }
+      out.write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE);
+      out.flush();
+    } catch (Exception e) {
+      System.out.println("[Server] Exception while joining a tournament round: " + e);
+      if (session != null) {
+        // the player left right after being seated
+        session.leave(player);
+      }
+      try {
+        socket.close();
+      } catch (Exception ee) {
+        System.out.println("[Server] Exception while closing socket: " + ee);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Sends the standings of a tournament, from the first player to the last.
+   *
+   * <p>Error codes sent: ERROR 1 : no such tournament
+   *
+   * @param out player's output stream
+   * @param arguments id of the tournament
+   * @throws IOException if the player cannot be reached
+   */
+  public static void sendStandings(BufferedWriter out, String arguments) throws IOException {
+    Tournament tournament = tournament(arguments);
+    if (tournament == null) {
+      out.write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE);
+    } else {
+      out.write(tournament.standingsMessage() + Norms.END_OF_LINE);
+    }
+    out.flush();
+  }
+
   /**
    * Accepts a challenge sent by another player.
    *
    * <p>This method: - finds the pending challenge corresponding to the given username - sets its
-   * status to ACCEPTED - sets the player status to IN_GAME
+   * status to ACCEPTED - sets the player status to IN_GAME - refuses the other pending challenges
+   *
+   * <p>Error codes sent: ERROR 1 : the challenge is no longer available
    *
    * @param socket socket of the player accepting the challenge
-   * @param in input stream
    * @param out output stream
    * @param player player accepting the challenge
    * @param username challenger username
-   * @return a Game instance when the challenge is accepted, or null otherwise
+   * @return the session of the game, joined by the player, when the challenge is accepted, or null
+   *     otherwise
    */
-  public static Game acceptChallenge(
-      Socket socket, BufferedReader in, BufferedWriter out, Player player, String username) {
+  public static GameSession acceptChallenge(
+      Socket socket, BufferedWriter out, Player player, String username) {
+    GameSession session = null;
     try {
       for (Challenge challenge : player.challenges) {
-        if (challenge.challenger.username.equals(username)
-            && challenge.status == Challenge.Status.PENDING) {
-          challenge.game = new ch.heigvd.common.Game(player, challenge.challenger);
-          challenge.status = Challenge.Status.ACCEPTED;
+        if (challenge.challenger.username.equals(username)) {
+          Game game =
+              new Game(
+                  player, challenge.challenger, challenge.rows, challenge.columns, challenge.k);
+          session = new GameSession(game);
+          if (!challenge.accept(session)) {
+            // refused meanwhile: timed out or the challenger left
+            session = null;
+            continue;
+          }
+          // set up before the challenger can relay a move
+          startGame(session);
+          challenge.start();
           player.status = Player.Status.IN_GAME;
+          Server.lobby.changed(player);
+          // the other challengers are told immediately instead of waiting for their timeout
+          for (Challenge other : player.challenges) {
+            other.refuse();
+          }
           player.challenges.clear();
-          int firstPlayer = challenge.game.isPlayer1Turn.get() ? 1 : 2;
-          out.write(Server.Message.GAMESTART + " " + firstPlayer + Norms.END_OF_LINE);
+          Server.lobby.challengesChanged(player);
+          int firstPlayer = game.player1Starts ? 1 : 2;
+          out.write(gameStart(game, firstPlayer));
           out.flush();
-          return challenge.game;
+          session.join(player, out);
+          return session;
         }
       }
+      out.write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE); // user isn't available
+      out.flush();
     } catch (Exception e) {
       System.out.println("[Server] Exception while accepting challenge: " + e);
+      if (session != null) {
+        // the player left right after accepting
+        session.leave(player);
+      }
       try {
         socket.close();
       } catch (Exception ee) {
@@ -152,21 +419,17 @@ public class Matchmaking {
    * REFUSED - removes the challenge from the player's list - notifies the client
    *
    * @param socket socket of the player refusing the challenge
-   * @param in input stream
    * @param out output stream
    * @param player player refusing the challenge
    * @param username challenger username
    */
   public static void refuseChallenge(
-      Socket socket, BufferedReader in, BufferedWriter out, Player player, String username) {
+      Socket socket, BufferedWriter out, Player player, String username) {
     try {
       for (Challenge challenge : player.challenges) {
-        if (challenge.challenger.username.equals(username)
-            && challenge.status == Challenge.Status.PENDING) {
-          challenge.status = Challenge.Status.REFUSED;
+        if (challenge.challenger.username.equals(username) && challenge.refuse()) {
           out.write(Server.Message.REFUSE + Norms.END_OF_LINE);
           out.flush();
-          player.challenges.remove(challenge);
           return;
         }
       }
@@ -181,20 +444,114 @@ public class Matchmaking {
   }
 
   /**
-   * Sends a comma-separated representation of all connected players to the provided writer.
+   * Cancels every pending challenge involving the player, sent or received. Called when the player
+   * disconnects so that nobody keeps waiting for an answer that will never come.
+   *
+   * @param player player leaving the server
+   */
+  public static void cancelChallenges(Player player) {
+    Challenge sent = player.sentChallenge;
+    if (sent != null) {
+      sent.refuse();
+    }
+    for (Challenge challenge : player.challenges) {
+      challenge.refuse();
+    }
+    player.challenges.clear();
+  }
+
+  /**
+   * Builds the GAMESTART message: GAMESTART firstPlayer rows columns k
+   *
+   * @param game game about to start
+   * @param firstPlayer 1 if the receiver plays first, 2 otherwise
+   * @return the message, end of line included
+   */
+  private static String gameStart(Game game, int firstPlayer) {
+    return Server.Message.GAMESTART
+        + " "
+        + firstPlayer
+        + " "
+        + game.rows
+        + " "
+        + game.columns
+        + " "
+        + game.k
+        + Norms.END_OF_LINE;
+  }
+
+  /**
+   * Counts a new game, lists it for the spectators and journals its start. Must be called before
+   * any of its players can move.
+   *
+   * @param session session of the new game
+   */
+  public static void startGame(GameSession session) {
+    Server.metrics.gameStarted(session.game);
+    Server.games.add(session);
+    Server.journal.started(session);
+  }
+
+  /**
+   * Finds the tournament whose id is the only argument of a command.
+   *
+   * @param arguments arguments of the command
+   * @return the tournament, or null if the id is invalid or unknown
+   */
+  private static Tournament tournament(String arguments) {
+    try {
+      return Server.tournaments.get(Integer.parseInt(arguments.trim()));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the board size given as {@code rows columns k} at the end of a command's arguments.
+   *
+   * @param arguments arguments of the command
+   * @param first index of the rows, the classic board is used if there are no more arguments
+   * @return the rows, columns and k, or null if the size is invalid
+   */
+  private static int[] parseBoard(String[] arguments, int first) {
+    if (arguments.length <= first) {
+      return new int[] {Game.DEFAULT_SIZE, Game.DEFAULT_SIZE, Game.DEFAULT_SIZE};
+    }
+    int rows, columns, k;
+    try {
+      rows = Integer.parseInt(arguments[first]);
+      columns = Integer.parseInt(arguments[first + 1]);
+      k = Integer.parseInt(arguments[first + 2]);
+    } catch (RuntimeException e) {
+      return null;
+    }
+    if (arguments.length > first + 3 || !Game.isValidSize(rows, columns, k)) {
+      return null;
+    }
+    return new int[] {rows, columns, k};
+  }
+
+  private static boolean isClassic(Challenge challenge) {
+    return challenge.rows == Game.DEFAULT_SIZE
+        && challenge.columns == Game.DEFAULT_SIZE
+        && challenge.k == Game.DEFAULT_SIZE;
+  }
+
+  /**
+   * Sends a comma-separated representation of all connected players to the provided writer. The
+   * line is written at once so that it never interleaves with a push from the lobby feed.
    *
    * @param socket client socket used for error handling (may be closed on exception)
    * @param out writer communicating with the client
-   * @param players list of connected players
+   * @param players registry of connected players
    */
-  public static void sendListPlayers(
-      Socket socket, BufferedWriter out, CopyOnWriteArrayList<Player> players) {
+  public static void sendListPlayers(Socket socket, BufferedWriter out, PlayerRegistry players) {
     try {
+      StringBuilder sb = new StringBuilder();
       for (Player p : players) {
-        out.write(p.toString());
-        out.write(Norms.ELEMENT_SEPARATOR);
+        sb.append(p).append(Norms.ELEMENT_SEPARATOR);
       }
-      out.write(Norms.END_OF_LINE);
+      out.write(sb.append(Norms.END_OF_LINE).toString());
       out.flush();
     } catch (Exception e) {
       System.out.println("[Server] Exception while sending list player: " + e);
@@ -205,4 +562,68 @@ public class Matchmaking {
       }
     }
   }
+
+  /**
+   * Sends one page of the connected players matching the query.
+   *
+   * <p>The arguments are space separated key=value filters, all optional: offset=n, limit=n (at
+   * most {@link #MAX_PAGE_SIZE}), prefix=text, status=ONLINE|IN_GAME and sort=name|wins|winstreak.
+   *
+   * <p>The message format is: PLAYERS next name,wins,losses,draws,winStreak,rating,status;... where
+   * next is the offset of the next page, -1 if there is none.
+   *
+   * <p>Error codes sent: ERROR 1 : invalid filter
+   *
+   * @param socket client socket used for error handling (may be closed on exception)
+   * @param out writer communicating with the client
+   * @param players registry of connected players
+   * @param arguments filters of the query
+   */
+  public static void queryPlayers(
+      Socket socket, BufferedWriter out, PlayerRegistry players, String arguments) {
+    try {
+      int offset = 0, limit = DEFAULT_PAGE_SIZE;
+      String prefix = "";
+      Player.Status status = null;
+      PlayerRegistry.Sort sort = PlayerRegistry.Sort.NAME;
+      try {
+        for (String argument : arguments.trim().split(" +")) {
+          String[] keyValue = argument.split("=", 2);
+          switch (keyValue[0].toLowerCase()) {
+            case "offset" -> offset = Integer.parseInt(keyValue[1]);
+            case "limit" -> limit = Integer.parseInt(keyValue[1]);
+            case "prefix" -> prefix = keyValue[1];
+            case "status" -> status = Player.Status.valueOf(keyValue[1].toUpperCase());
+            case "sort" -> sort = PlayerRegistry.Sort.valueOf(keyValue[1].toUpperCase());
+            default -> throw new IllegalArgumentException(argument);
+          }
+        }
+      } catch (RuntimeException e) {
+        offset = -1;
+      }
+      if (offset < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+        out.write(Server.Message.ERROR + " 1" + Norms.END_OF_LINE);
+        out.flush();
+        return;
+      }
+      PlayerRegistry.Page page = players.query(prefix, status, sort, offset, limit);
+      StringBuilder sb =
+          new StringBuilder(Server.Message.PLAYERS + " ").append(page.next()).append(' ');
+      for (Player p : page.players()) {
+        sb.append(p)
+            .append(Norms.ELEMENT_SEPARATOR)
+            .append(p.status)
+            .append(Norms.OBJECT_SEPARATOR);
+      }
+      out.write(sb.append(Norms.END_OF_LINE).toString());
+      out.flush();
+    } catch (Exception e) {
+      System.out.println("[Server] Exception while querying players: " + e);
+      try {
+        socket.close();
+      } catch (Exception ee) {
+        System.out.println("[Server] Exception while closing socket: " + ee);
+      }
+    }
+  }
 }
@@ -0,0 +1,38 @@
+package ch.heigvd.server.functions;
+
+/**
+ * Elo ratings of the players.
+ *
+ * <p>The expected score of a player against an opponent is {@code 1 / (1 + 10^((opponent - rating)
+ * / 400))}: 0.5 between equal ratings, about 0.76 for a player rated 200 points above. At the end
+ * of a game, the rating moves by {@link #K_FACTOR} times the difference between the actual score (1
+ * for a win, 0.5 for a draw, 0 for a loss) and the expected one. Beating a stronger player thus
+ * earns more points than beating a weaker one.
+ */
+public class Ratings {
+  /** Largest change of a rating after one game. */
+  public static final int K_FACTOR = 32;
+
+  /**
+   * Returns the expected score of a player against an opponent.
+   *
+   * @param rating rating of the player
+   * @param opponentRating rating of the opponent
+   * @return the expected score, between 0 and 1
+   */
+  public static double expectedScore(int rating, int opponentRating) {
+    return 1 / (1 + Math.pow(10, (opponentRating - rating) / 400.0));
+  }
+
+  /**
+   * Returns the rating of a player after a game.
+   *
+   * @param rating rating of the player before the game
+   * @param opponentRating rating of the opponent before the game
+   * @param score 1 for a win, 0.5 for a draw, 0 for a loss
+   * @return the new rating
+   */
+  public static int updated(int rating, int opponentRating, double score) {
+    return (int) Math.round(rating + K_FACTOR * (score - expectedScore(rating, opponentRating)));
+  }
+}
@@ -0,0 +1,131 @@
+package ch.heigvd.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FramesTest {
+  /** Lines of every kind: fixed-width, text, out of range integers and unknown messages. */
+  static final List<String> LINES =
+      List.of(
+          "OK",
+          "PLAY 10 12",
+          "PLAY 0 255",
+          "PLAY 256 1",
+          "PLAY 01 2",
+          "PLAY a b",
+          "PLAY 1",
+          "GAMESTART 1 15 15 5",
+          "GAMEOVER",
+          "GAMEOVER 2",
+          "ERROR 1",
+          "ERROR 1 2",
+          "LOGIN élodie pässwörd",
+          "CHALLENGE bob 15 15 5",
+          "STANDINGS 1 RUNNING 2 3 alice,1,1,0,0,0;bob,0,0,0,1,2;",
+          "CHAT hello",
+          "OK ",
+          "",
+          "PLAYERS  two  spaces",
+          "x".repeat(1000));
+
+  private static byte[] encode(List<String> lines) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (String line : lines) {
+      Frames.encode(line, out);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  void everyLineSurvivesTheRoundTrip() throws IOException {
+    FrameReader reader = new FrameReader(new ByteArrayInputStream(encode(LINES)));
+    for (String line : LINES) {
+      assertEquals(line, reader.readLine());
+    }
+    assertNull(reader.readLine());
+  }
+
+  @Test
+  void readHandsOutOneLineAtMost() throws IOException {
+    FrameReader reader =
+        new FrameReader(new ByteArrayInputStream(encode(List.of("PLAY 1 2", "OK"))));
+    char[] chars = new char[64];
+    assertEquals("PLAY 1 2\n", new String(chars, 0, reader.read(chars, 0, chars.length)));
+    assertEquals("OK\n", new String(chars, 0, reader.read(chars, 0, chars.length)));
+    assertEquals(-1, reader.read(chars, 0, chars.length));
+  }
+
+  @Test
+  void fixedWidthMessagesTakeOneBytePerInteger() throws IOException {
+    assertEquals(4, encode(List.of("PLAY 10 12")).length);
+    assertEquals(6, encode(List.of("GAMESTART 1 15 15 5")).length);
+    assertEquals(3, encode(List.of("GAMEOVER 2")).length);
+    assertEquals(2, encode(List.of("OK")).length);
+  }
+
+  @Test
+  void writerEncodesCompleteLines() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    FrameWriter writer = new FrameWriter(bytes);
+    writer.write("PLAY 1 2" + Norms.END_OF_LINE + "GAME");
+    writer.flush();
+    writer.write("OVER 1" + Norms.END_OF_LINE);
+    writer.flush();
+    FrameReader reader = new FrameReader(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals("PLAY 1 2", reader.readLine());
+    assertEquals("GAMEOVER 1", reader.readLine());
+    assertNull(reader.readLine());
+  }
+
+  @Test
+  void encodeLinesLeavesTheIncompleteLine() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    String text = "OK" + Norms.END_OF_LINE + "PLAY 1";
+    assertEquals(3, Frames.encodeLines(text, out));
+    assertEquals(2, out.size());
+  }
+
+  @Test
+  void lengthWaitsForTheWholeFrame() throws IOException {
+    byte[] frame = encode(List.of("LOGIN alice secret"));
+    for (int available = 0; available < frame.length; available++) {
+      assertEquals(-1, Frames.length(ByteBuffer.wrap(frame, 0, available), Frames.MAX_PAYLOAD));
+    }
+    assertEquals(frame.length, Frames.length(ByteBuffer.wrap(frame), Frames.MAX_PAYLOAD));
+  }
+
+  @Test
+  void rejectsPayloadsAboveTheLimit() throws IOException {
+    byte[] frame = encode(List.of("x".repeat(Frames.MAX_PAYLOAD + 1)));
+    assertThrows(
+        ProtocolException.class,
+        () -> Frames.length(ByteBuffer.wrap(frame, 0, 4), Frames.MAX_PAYLOAD));
+    FrameReader reader = new FrameReader(new ByteArrayInputStream(frame));
+    assertThrows(ProtocolException.class, reader::readLine);
+    // a server's frames may be larger
+    reader = new FrameReader(new ByteArrayInputStream(frame), Frames.MAX_SERVER_PAYLOAD);
+    assertEquals(Frames.MAX_PAYLOAD + 1, reader.readLine().length());
+  }
+
+  @Test
+  void rejectsInvalidFrames() {
+    // unknown opcode, then PLAY with three integers
+    assertThrows(ProtocolException.class, () -> readLine(new byte[] {(byte) 200, 0}));
+    assertThrows(ProtocolException.class, () -> readLine(new byte[] {6, 3, 1, 2, 3}));
+  }
+
+  private static String readLine(byte[] bytes) throws IOException {
+    InputStream in = new ByteArrayInputStream(bytes);
+    return new FrameReader(in).readLine();
+  }
+}
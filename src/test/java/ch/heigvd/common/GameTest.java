@@ -0,0 +1,164 @@
+package ch.heigvd.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class GameTest {
+  private final Player alice = new Player("alice");
+  private final Player bob = new Player("bob");
+
+  /** Creates a game where alice, player1, moves first. */
+  private Game game(int rows, int columns, int k) {
+    Game game = new Game(alice, bob, rows, columns, k);
+    game.player1Starts = true;
+    game.isPlayer1Turn.set(true);
+    return game;
+  }
+
+  /** Plays the positions in turn, starting with the player whose turn it is. */
+  private static void play(Game game, int... positions) {
+    for (int position : positions) {
+      Player mover = game.isPlayer1Turn.get() ? game.player1 : game.player2;
+      assertTrue(game.makeMove(position, mover.username), "move " + position);
+    }
+  }
+
+  @Test
+  void classicRowWins() {
+    Game game = game(3, 3, 3);
+    play(game, 0, 3, 1, 4);
+    assertFalse(game.isOver.get());
+    play(game, 2);
+    assertTrue(game.isOver.get());
+    assertSame(alice, game.winner);
+  }
+
+  @Test
+  void classicFullBoardIsADraw() {
+    Game game = game(3, 3, 3);
+    // X O X / X O O / O X X
+    play(game, 0, 1, 2, 4, 3, 5, 7, 6, 8);
+    assertTrue(game.isOver.get());
+    assertNull(game.winner);
+  }
+
+  @Test
+  void horizontalLineOfK() {
+    Game game = game(7, 7, 5);
+    // alice on row 3, bob on row 0
+    play(game, 21, 0, 22, 1, 24, 2, 25, 3);
+    assertFalse(game.isOver.get());
+    // the last move fills the middle of the line
+    play(game, 23);
+    assertSame(alice, game.winner);
+  }
+
+  @Test
+  void verticalLineOfK() {
+    Game game = game(6, 8, 4);
+    // bob in column 5, alice scattered
+    play(game, 0, 5, 2, 13, 7, 21, 47);
+    assertFalse(game.isOver.get());
+    play(game, 29);
+    assertTrue(game.isOver.get());
+    assertSame(bob, game.winner);
+  }
+
+  @Test
+  void bothDiagonals() {
+    Game down = game(5, 5, 4);
+    play(down, 0, 4, 6, 9, 12, 14);
+    assertFalse(down.isOver.get());
+    play(down, 18);
+    assertSame(alice, down.winner);
+
+    Game up = game(5, 5, 4);
+    // 4, 8, 12 and 16 go down to the left
+    play(up, 4, 0, 8, 1, 16, 2);
+    assertFalse(up.isOver.get());
+    play(up, 12);
+    assertSame(alice, up.winner);
+  }
+
+  @Test
+  void lineDoesNotWrapAroundRows() {
+    Game game = game(5, 5, 4);
+    // row 0 columns 3 and 4, then row 1 columns 0 and 1: consecutive positions, not a line
+    play(game, 3, 10, 4, 11, 5, 20, 6);
+    assertFalse(game.isOver.get());
+  }
+
+  @Test
+  void oneShortOfKIsNotAWin() {
+    Game game = game(7, 7, 5);
+    play(game, 0, 48, 1, 47, 2, 46, 3);
+    assertFalse(game.isOver.get());
+    // bob blocks the line
+    play(game, 4);
+    play(game, 5, 6);
+    assertFalse(game.isOver.get());
+  }
+
+  @Test
+  void lineAcrossBitsetWords() {
+    Game game = game(9, 9, 5);
+    // a diagonal from position 40 to 80 spans the two words of the bitset
+    play(game, 40, 0, 50, 1, 60, 2, 70, 3);
+    assertFalse(game.isOver.get());
+    play(game, 80);
+    assertSame(alice, game.winner);
+  }
+
+  @Test
+  void largestBoard() {
+    Game game = game(Game.MAX_SIZE, Game.MAX_SIZE, 3);
+    int last = Game.MAX_SIZE * Game.MAX_SIZE - 1;
+    play(game, last, 0, last - 1, 1);
+    assertFalse(game.isOver.get());
+    play(game, last - 2);
+    assertSame(alice, game.winner);
+  }
+
+  @Test
+  void rejectsInvalidMoves() {
+    Game game = game(4, 4, 3);
+    assertFalse(game.makeMove(0, "bob"), "out of turn");
+    assertTrue(game.makeMove(0, "alice"));
+    assertFalse(game.makeMove(0, "bob"), "taken cell");
+    assertFalse(game.makeMove(-1, "bob"), "before the board");
+    assertFalse(game.makeMove(16, "bob"), "after the board");
+    assertEquals(1, game.moveCount.get());
+  }
+
+  @Test
+  void noMoveAfterTheEnd() {
+    Game game = game(3, 3, 3);
+    play(game, 0, 3, 1, 4, 2);
+    assertFalse(game.makeMove(5, "bob"));
+  }
+
+  @Test
+  void abandonCreditsTheOpponent() {
+    Game game = game(3, 3, 3);
+    play(game, 4);
+    game.abandon("alice");
+    assertTrue(game.isOver.get());
+    assertSame(bob, game.winner);
+  }
+
+  @Test
+  void validatesTheSize() {
+    assertTrue(Game.isValidSize(3, 3, 3));
+    assertTrue(Game.isValidSize(3, Game.MAX_SIZE, Game.MAX_SIZE));
+    assertFalse(Game.isValidSize(2, 3, 3));
+    assertFalse(Game.isValidSize(3, Game.MAX_SIZE + 1, 3));
+    assertFalse(Game.isValidSize(4, 4, 5));
+    assertThrows(IllegalArgumentException.class, () -> new Game(3, 3, 4));
+  }
+}
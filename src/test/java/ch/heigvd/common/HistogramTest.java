@@ -0,0 +1,67 @@
+package ch.heigvd.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+  @Test
+  void smallValuesAreExact() {
+    Histogram histogram = new Histogram();
+    for (int value = 0; value < Histogram.SUB_BUCKETS; value++) {
+      histogram.record(value);
+    }
+    assertEquals(Histogram.SUB_BUCKETS, histogram.count());
+    for (int value = 0; value < Histogram.SUB_BUCKETS; value++) {
+      double quantile = (value + 1) / (double) Histogram.SUB_BUCKETS;
+      assertEquals(value, histogram.percentile(quantile));
+    }
+  }
+
+  @Test
+  void percentilesStayWithinTheBucketWidth() {
+    Histogram histogram = new Histogram();
+    for (long value = 1; value <= 100_000; value++) {
+      histogram.record(value * 1000);
+    }
+    for (double quantile : new double[] {0.1, 0.5, 0.9, 0.99, 0.999}) {
+      long exact = Math.round(quantile * 100_000) * 1000;
+      long reported = histogram.percentile(quantile);
+      assertTrue(reported >= exact, quantile + ": " + reported + " below " + exact);
+      assertTrue(reported <= exact + exact / Histogram.SUB_BUCKETS, quantile + ": " + reported);
+    }
+    assertEquals(100_000_000, histogram.percentile(1));
+  }
+
+  @Test
+  void bucketBoundariesAcrossPowersOfTwo() {
+    for (int exponent = 4; exponent < 62; exponent++) {
+      long power = 1L << exponent;
+      for (long value : new long[] {power - 1, power, power + 1}) {
+        Histogram histogram = new Histogram();
+        histogram.record(value);
+        histogram.record(Long.MAX_VALUE / 2);
+        long reported = histogram.percentile(0.5);
+        assertTrue(reported >= value, value + " reported as " + reported);
+        assertTrue(reported - value <= value / Histogram.SUB_BUCKETS, value + " as " + reported);
+      }
+    }
+  }
+
+  @Test
+  void meanMaxAndReset() {
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.percentile(0.5));
+    assertEquals(0, histogram.mean());
+    histogram.record(10);
+    histogram.record(30);
+    histogram.record(-5);
+    assertEquals(3, histogram.count());
+    assertEquals(40 / 3.0, histogram.mean(), 1e-9);
+    assertEquals(30, histogram.max());
+    histogram.reset();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.max());
+  }
+}
@@ -0,0 +1,122 @@
+package ch.heigvd.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.heigvd.client.Client;
+import ch.heigvd.common.Frames;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ChannelReaderTest {
+  private static final List<String> LINES =
+      List.of("LOGIN élodie pw", "PLAY 10 12", "PLAY 300 1", "", "GAMES", "x".repeat(1000));
+
+  /** Hands the bytes to the reader in reads of the given size, as the selector thread does. */
+  private static void receive(ChannelReader reader, byte[] bytes, int chunk) throws IOException {
+    for (int i = 0; i < bytes.length; i += chunk) {
+      ByteBuffer read = ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i));
+      boolean binary = reader.binary();
+      reader.receive(read);
+      if (!binary && reader.binary()) {
+        // the bytes after the negotiation are received again once it is answered
+        reader.receive(read);
+      }
+      assertFalse(read.hasRemaining());
+    }
+  }
+
+  private static byte[] text(List<String> lines) {
+    return (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] frames(List<String> lines) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write((Frames.NEGOTIATION + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    for (String line : lines) {
+      Frames.encode(line, out);
+    }
+    return out.toByteArray();
+  }
+
+  /** Reads every line through the command decoder, as the NIO workers do. */
+  private static void assertLines(ChannelReader reader, List<String> lines) throws IOException {
+    reader.end();
+    CommandReader commands = new CommandReader(reader);
+    for (String line : lines) {
+      Command command = commands.next();
+      assertEquals(line, command.toString());
+    }
+    assertNull(commands.next());
+  }
+
+  @Test
+  void textLinesInAnyChunks() throws IOException {
+    for (int chunk : new int[] {1, 2, 7, 64, 4096}) {
+      ChannelReader reader = new ChannelReader();
+      receive(reader, text(LINES), chunk);
+      assertFalse(reader.binary());
+      assertLines(reader, LINES);
+    }
+  }
+
+  @Test
+  void framesInAnyChunks() throws IOException {
+    for (int chunk : new int[] {1, 2, 7, 64, 4096}) {
+      ChannelReader reader = new ChannelReader();
+      receive(reader, frames(LINES), chunk);
+      assertTrue(reader.binary());
+      assertLines(reader, LINES);
+    }
+  }
+
+  @Test
+  void readStopsAtTheEndOfTheLine() throws IOException {
+    ChannelReader reader = new ChannelReader();
+    assertFalse(reader.ready());
+    assertTrue(reader.receive(ByteBuffer.wrap(text(List.of("PING", "QUIT")))));
+    assertFalse(reader.receive(ByteBuffer.wrap("PLA".getBytes(StandardCharsets.US_ASCII))));
+    char[] chars = new char[64];
+    assertTrue(reader.ready());
+    assertEquals("PING\n", new String(chars, 0, reader.read(chars, 0, chars.length)));
+    assertEquals("QUIT\n", new String(chars, 0, reader.read(chars, 0, chars.length)));
+    // the incomplete line is not handed out
+    assertFalse(reader.ready());
+    assertTrue(reader.receive(ByteBuffer.wrap("Y 1 2\n".getBytes(StandardCharsets.US_ASCII))));
+    CommandReader commands = new CommandReader(reader);
+    assertEquals(Client.Message.PLAY, commands.next().verb());
+    reader.end();
+    assertTrue(reader.ready());
+    assertNull(commands.next());
+  }
+
+  @Test
+  void onlyTheFirstLineNegotiates() throws IOException {
+    ChannelReader reader = new ChannelReader();
+    receive(reader, text(List.of("OK", Frames.NEGOTIATION)), 4096);
+    assertFalse(reader.binary());
+    assertLines(reader, List.of("OK", Frames.NEGOTIATION));
+  }
+
+  @Test
+  void rejectsLinesAboveTheLimit() {
+    ChannelReader reader = new ChannelReader();
+    byte[] line = new byte[NioServer.MAX_LINE_LENGTH + 1];
+    assertThrows(ProtocolException.class, () -> receive(reader, line, 1000));
+  }
+
+  @Test
+  void rejectsFramesAboveTheLimit() throws IOException {
+    ChannelReader reader = new ChannelReader();
+    byte[] frame = frames(List.of("x".repeat(Frames.MAX_PAYLOAD + 1)));
+    assertThrows(ProtocolException.class, () -> receive(reader, frame, 64));
+  }
+}
@@ -0,0 +1,135 @@
+package ch.heigvd.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.heigvd.client.Client;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.ProtocolException;
+import org.junit.jupiter.api.Test;
+
+class CommandReaderTest {
+  @Test
+  void decodesVerbsAndArguments() throws IOException {
+    CommandReader reader = new CommandReader(new StringReader("PLAY 10 12\nLOGIN bob pw\r\n"));
+    Command command = reader.next();
+    assertEquals(Client.Message.PLAY, command.verb());
+    assertEquals(2, command.argumentCount());
+    assertEquals(10, command.intArgument(0));
+    assertEquals(12, command.intArgument(1));
+    assertEquals(Command.INVALID, command.intArgument(2));
+
+    command = reader.next();
+    assertEquals(Client.Message.LOGIN, command.verb());
+    assertEquals("bob", command.argument(0));
+    // the carriage return is not part of the last argument
+    assertEquals("pw", command.argument(1));
+    assertTrue(command.argumentEquals(1, "pw"));
+    assertNull(reader.next());
+  }
+
+  @Test
+  void everyVerbIsKnown() throws IOException {
+    StringBuilder lines = new StringBuilder();
+    for (Client.Message message : Client.Message.values()) {
+      lines.append(message.name()).append('\n');
+    }
+    CommandReader reader = new CommandReader(new StringReader(lines.toString()));
+    for (Client.Message message : Client.Message.values()) {
+      assertEquals(message, reader.next().verb());
+    }
+  }
+
+  @Test
+  void unknownVerbsAndEmptyLines() throws IOException {
+    CommandReader reader = new CommandReader(new StringReader("play 1 2\n\nPLAYS\nPLA\n"));
+    for (int i = 0; i < 4; i++) {
+      Command command = reader.next();
+      assertNull(command.verb(), command.toString());
+    }
+    assertNull(reader.next());
+  }
+
+  @Test
+  void malformedIntegers() throws IOException {
+    CommandReader reader =
+        new CommandReader(new StringReader("PLAY -3 x\nPLAY 2147483647 2147483648\nPLAY - 1a\n"));
+    Command command = reader.next();
+    assertEquals(-3, command.intArgument(0));
+    assertEquals(Command.INVALID, command.intArgument(1));
+    command = reader.next();
+    assertEquals(Integer.MAX_VALUE, command.intArgument(0));
+    assertEquals(Command.INVALID, command.intArgument(1));
+    command = reader.next();
+    assertEquals(Command.INVALID, command.intArgument(0));
+    assertEquals(Command.INVALID, command.intArgument(1));
+  }
+
+  @Test
+  void restKeepsTheSpaces() throws IOException {
+    CommandReader reader =
+        new CommandReader(new StringReader("PLAYERS a  b c\nCHALLENGES   \nCHALLENGES\n"));
+    Command command = reader.next();
+    assertEquals(4, command.argumentCount());
+    assertEquals("", command.argument(1));
+    assertEquals("a  b c", command.rest(0));
+    assertEquals(" b c", command.rest(1));
+    assertTrue(command.hasArguments());
+    assertFalse(reader.next().hasArguments());
+    assertFalse(reader.next().hasArguments());
+  }
+
+  @Test
+  void lastLineWithoutEndOfLine() throws IOException {
+    CommandReader reader = new CommandReader(new StringReader("QUIT\nPLAY 1 2"));
+    assertEquals(Client.Message.QUIT, reader.next().verb());
+    Command command = reader.next();
+    assertEquals(Client.Message.PLAY, command.verb());
+    assertEquals(2, command.intArgument(1));
+    assertNull(reader.next());
+  }
+
+  @Test
+  void linesSplitAcrossReads() throws IOException {
+    // hands out one character per read
+    Reader trickle =
+        new StringReader("PLAY 3 4\nLOGIN alice pw\n") {
+          @Override
+          public int read(char[] chars, int offset, int length) throws IOException {
+            return super.read(chars, offset, Math.min(length, 1));
+          }
+        };
+    CommandReader reader = new CommandReader(trickle);
+    assertEquals(4, reader.next().intArgument(1));
+    assertEquals("alice", reader.next().argument(0));
+    assertNull(reader.next());
+  }
+
+  @Test
+  void manyLinesReuseTheBuffer() throws IOException {
+    StringBuilder lines = new StringBuilder();
+    for (int i = 0; i < 10_000; i++) {
+      lines.append("PLAY ").append(i).append(' ').append(i % 7).append('\n');
+    }
+    CommandReader reader = new CommandReader(new StringReader(lines.toString()));
+    for (int i = 0; i < 10_000; i++) {
+      Command command = reader.next();
+      assertEquals(i, command.intArgument(0));
+      assertEquals(i % 7, command.intArgument(1));
+    }
+    assertNull(reader.next());
+  }
+
+  @Test
+  void rejectsLinesAboveTheLimit() throws IOException {
+    String longest = "LOGIN " + "a".repeat(CommandReader.MAX_LENGTH - 6);
+    CommandReader reader = new CommandReader(new StringReader(longest + "\n" + longest + "a\n"));
+    assertEquals(CommandReader.MAX_LENGTH, reader.next().rest(0).length() + 6);
+    assertThrows(ProtocolException.class, reader::next);
+  }
+}
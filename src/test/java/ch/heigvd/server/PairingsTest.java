@@ -0,0 +1,151 @@
+package ch.heigvd.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class PairingsTest {
+  private static Standings standings(int players) {
+    Standings standings = new Standings();
+    for (int i = 0; i < players; i++) {
+      standings.add("p" + i, 1200 + 10 * i);
+    }
+    return standings;
+  }
+
+  /** Plays a round with random results, returning the games as unordered pairs of usernames. */
+  private static List<Set<String>> play(Standings standings, List<Pairings.Pair> pairs, Random r) {
+    List<Set<String>> games = new ArrayList<>();
+    for (Pairings.Pair pair : pairs) {
+      if (pair.second() == null) {
+        standings.bye(pair.first());
+        continue;
+      }
+      switch (r.nextInt(3)) {
+        case 0 -> standings.win(pair.first(), pair.second());
+        case 1 -> standings.win(pair.second(), pair.first());
+        default -> standings.draw(pair.first(), pair.second());
+      }
+      games.add(Set.of(pair.first(), pair.second()));
+    }
+    return games;
+  }
+
+  /** Checks that every player is paired exactly once in a round. */
+  private static void assertEveryoneOnce(Standings standings, List<Pairings.Pair> pairs) {
+    Set<String> seen = new HashSet<>();
+    for (Pairings.Pair pair : pairs) {
+      assertTrue(seen.add(pair.first()), pair.first() + " paired twice");
+      if (pair.second() != null) {
+        assertTrue(seen.add(pair.second()), pair.second() + " paired twice");
+      }
+    }
+    assertEquals(standings.size(), seen.size());
+  }
+
+  @Test
+  void swissAvoidsRematches() {
+    for (int players : new int[] {8, 9, 16, 33, 100}) {
+      Random random = new Random(players);
+      Standings standings = standings(players);
+      Set<Set<String>> played = new HashSet<>();
+      // as many rounds as a Swiss tournament usually plays, enough to find a single winner
+      int rounds = 32 - Integer.numberOfLeadingZeros(players - 1);
+      for (int round = 0; round < rounds; round++) {
+        List<Pairings.Pair> pairs = Pairings.swiss(standings);
+        assertEveryoneOnce(standings, pairs);
+        for (Set<String> game : play(standings, pairs, random)) {
+          assertTrue(played.add(game), "rematch " + game + " in round " + (round + 1));
+        }
+      }
+    }
+  }
+
+  @Test
+  void swissGivesEachByeToADifferentPlayer() {
+    Random random = new Random(7);
+    Standings standings = standings(7);
+    Set<String> byes = new HashSet<>();
+    for (int round = 0; round < 7; round++) {
+      List<Pairings.Pair> pairs = Pairings.swiss(standings);
+      assertEveryoneOnce(standings, pairs);
+      long count = pairs.stream().filter(pair -> pair.second() == null).count();
+      assertEquals(1, count);
+      for (Pairings.Pair pair : pairs) {
+        if (pair.second() == null) {
+          assertTrue(byes.add(pair.first()), pair.first() + " had two byes");
+        }
+      }
+      play(standings, pairs, random);
+    }
+  }
+
+  @Test
+  void swissPairsEqualScoresFirst() {
+    Standings standings = standings(4);
+    standings.win("p0", "p1");
+    standings.win("p2", "p3");
+    List<Set<String>> pairs = new ArrayList<>();
+    for (Pairings.Pair pair : Pairings.swiss(standings)) {
+      pairs.add(Set.of(pair.first(), pair.second()));
+    }
+    assertTrue(pairs.contains(Set.of("p0", "p2")), pairs.toString());
+    assertTrue(pairs.contains(Set.of("p1", "p3")), pairs.toString());
+  }
+
+  @Test
+  void roundRobinMeetsEveryoneOnce() {
+    for (int players : new int[] {2, 5, 8}) {
+      Standings standings = standings(players);
+      List<String> registered = standings.ranked();
+      Set<Set<String>> played = new HashSet<>();
+      for (int round = 1; round <= Pairings.roundRobinRounds(players); round++) {
+        List<Pairings.Pair> pairs = Pairings.roundRobin(standings, registered, round);
+        assertEveryoneOnce(standings, pairs);
+        for (Pairings.Pair pair : pairs) {
+          if (pair.second() != null) {
+            assertTrue(played.add(Set.of(pair.first(), pair.second())));
+          }
+        }
+      }
+      assertEquals(players * (players - 1) / 2, played.size());
+    }
+  }
+
+  @Test
+  void seedKeepsTheBestSeedsApart() {
+    // p7 has the best rating
+    List<String> bracket = Pairings.seed(standings(8));
+    assertEquals(Arrays.asList("p7", "p0", "p4", "p3", "p6", "p1", "p5", "p2"), bracket);
+  }
+
+  @Test
+  void seedGivesByesToTheBestSeeds() {
+    List<String> bracket = Pairings.seed(standings(5));
+    assertEquals(8, bracket.size());
+    // seeds 1 8 4 5 2 7 3 6, seeds 6 to 8 being empty slots
+    assertEquals(Arrays.asList("p4", null, "p1", "p0", "p3", null, "p2", null), bracket);
+    List<Pairings.Pair> pairs = Pairings.elimination(standings(5), bracket);
+    assertEquals(4, pairs.size());
+    assertNull(pairs.get(0).second());
+    assertNotNull(pairs.get(1).second());
+    assertNull(pairs.get(2).second());
+    assertNull(pairs.get(3).second());
+  }
+
+  @Test
+  void seedFillsUpToAPowerOfTwo() {
+    assertEquals(List.of("p0"), Pairings.seed(standings(1)));
+    assertEquals(2, Pairings.seed(standings(2)).size());
+    assertEquals(4, Pairings.seed(standings(3)).size());
+  }
+}
@@ -0,0 +1,74 @@
+package ch.heigvd.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TimerWheelTest {
+  private static final long TICK_MILLIS = 5;
+
+  @Test
+  void firesAfterTheDelayAndInOrder() throws InterruptedException {
+    TimerWheel wheel = new TimerWheel("test-wheel", TICK_MILLIS, 8);
+    long[] delays = {60, 0, 25, 5, 120};
+    List<Long> fired = new CopyOnWriteArrayList<>();
+    List<Long> early = new CopyOnWriteArrayList<>();
+    CountDownLatch done = new CountDownLatch(delays.length);
+    long start = System.nanoTime();
+    for (long delay : delays) {
+      long deadline = start + TimeUnit.MILLISECONDS.toNanos(delay);
+      wheel.schedule(
+          () -> {
+            if (System.nanoTime() < deadline) {
+              early.add(delay);
+            }
+            fired.add(delay);
+            done.countDown();
+          },
+          deadline - System.nanoTime());
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(List.of(0L, 5L, 25L, 60L, 120L), fired);
+    assertEquals(List.of(), early);
+  }
+
+  @Test
+  void delaysLongerThanOneTurnWaitForTheirRound() throws InterruptedException {
+    // 4 slots of 5 ms: one turn of the wheel covers 20 ms
+    TimerWheel wheel = new TimerWheel("test-wheel", TICK_MILLIS, 4);
+    CountDownLatch done = new CountDownLatch(1);
+    long start = System.nanoTime();
+    wheel.schedule(done::countDown, TimeUnit.MILLISECONDS.toNanos(100));
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+  }
+
+  @Test
+  void aFailingTaskDoesNotStopTheOthers() throws InterruptedException {
+    TimerWheel wheel = new TimerWheel("test-wheel", TICK_MILLIS, 8);
+    CountDownLatch done = new CountDownLatch(1);
+    wheel.schedule(
+        () -> {
+          throw new IllegalStateException("expected by the test");
+        },
+        0);
+    wheel.schedule(done::countDown, 0);
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void manyTimers() throws InterruptedException {
+    TimerWheel wheel = new TimerWheel("test-wheel", TICK_MILLIS, 64);
+    int timers = 10_000;
+    CountDownLatch done = new CountDownLatch(timers);
+    for (int i = 0; i < timers; i++) {
+      wheel.schedule(done::countDown, TimeUnit.MILLISECONDS.toNanos(i % 200));
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,73 @@
+package ch.heigvd.server.bots;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import ch.heigvd.common.Game;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class SolverTest {
+  private static final Solver solver = new Solver();
+
+  /** Returns the bitset of the given cells. */
+  private static long[] cells(Game game, int... positions) {
+    long[] cells = new long[(game.cells() + Long.SIZE - 1) / Long.SIZE];
+    for (int position : positions) {
+      cells[position >>> 6] |= 1L << position;
+    }
+    return cells;
+  }
+
+  private static int bestMove(Game game, long[] mine, long[] theirs) {
+    return solver.bestMove(game, mine, theirs, System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test
+  void classicTakesTheWin() {
+    Game game = new Game();
+    // X X . / O O . / . . .
+    assertEquals(2, bestMove(game, cells(game, 0, 1), cells(game, 3, 4)));
+  }
+
+  @Test
+  void classicBlocksTheOnlyThreat() {
+    Game game = new Game();
+    // X . . / O O . / . . X
+    assertEquals(5, bestMove(game, cells(game, 0, 8), cells(game, 3, 4)));
+  }
+
+  @Test
+  void wins5x5AtOnceRatherThanLater() {
+    Game game = new Game(5, 5, 4);
+    // three in a row on row 0 with an open end, and an open three of the opponent on row 2
+    assertEquals(3, bestMove(game, cells(game, 0, 1, 2), cells(game, 10, 11, 12)));
+  }
+
+  @Test
+  void blocksAMateInOne() {
+    Game game = new Game(5, 5, 4);
+    // the opponent's three on row 0 can only be completed at 3
+    assertEquals(3, bestMove(game, cells(game, 20, 24), cells(game, 0, 1, 2)));
+  }
+
+  @Test
+  void findsTheMateInTwo() {
+    Game game = new Game(6, 6, 4);
+    // 14 and 15 on row 2: 13 or 16 makes a three open at both ends, which cannot be stopped
+    int move = bestMove(game, cells(game, 14, 15), cells(game, 0, 35));
+    assertTrue(move == 13 || move == 16, "open two extended at " + move);
+  }
+
+  @Test
+  void fullBoardHasNoMove() {
+    Game game = new Game();
+    assertEquals(-1, bestMove(game, cells(game, 0, 2, 3, 7, 8), cells(game, 1, 4, 5, 6)));
+    Game large = new Game(4, 4, 4);
+    int[] all = new int[16];
+    for (int i = 0; i < all.length; i++) {
+      all[i] = i;
+    }
+    assertEquals(-1, bestMove(large, cells(large, all), new long[1]));
+  }
+}